@@ -0,0 +1,98 @@
+package com.cropapp.benchmark;
+
+import com.cropapp.Service.HistoryService;
+import com.cropapp.dto.AnalysisResponse;
+import com.cropapp.dto.CropRequest;
+import com.cropapp.dto.CropResponse;
+import com.cropapp.dto.DiseaseBatchResult;
+import com.cropapp.dto.DiseaseResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The history summaries written for every prediction a signed-in user makes.
+ * They used to be built inline in PredictionController and now live in
+ * HistoryService; the crop input is the one that goes through String.format.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HistorySummaryBenchmark {
+
+    private CropRequest cropRequest;
+    private CropResponse cropResponse;
+    private DiseaseResponse diseaseResponse;
+    private List<String> fileNames;
+    private AnalysisResponse analysisResponse;
+
+    @Setup
+    public void setUp() {
+        cropRequest = new CropRequest();
+        cropRequest.setN(90);
+        cropRequest.setP(42);
+        cropRequest.setK(43);
+        cropRequest.setPh(6.5);
+
+        CropResponse.Recommendation top = new CropResponse.Recommendation();
+        top.setCrop("rice");
+        top.setConfidence("31.50%");
+        cropResponse = new CropResponse();
+        cropResponse.setTop_crops(List.of(top));
+
+        diseaseResponse = new DiseaseResponse();
+        diseaseResponse.setDisease("Tomato___Late_blight");
+        diseaseResponse.setConfidence("97.42%");
+
+        fileNames = List.of("leaf-1.jpg", "leaf-2.jpg", "leaf-3.jpg");
+        List<DiseaseBatchResult> diseases = new ArrayList<>();
+        for (String fileName : fileNames) {
+            diseases.add(new DiseaseBatchResult(fileName, "Tomato___Late_blight", "97.42%", null));
+        }
+        analysisResponse = new AnalysisResponse(cropResponse.getTop_crops(), null, diseases);
+    }
+
+    @Benchmark
+    public String cropInput() {
+        return HistoryService.cropInputSummary(cropRequest);
+    }
+
+    @Benchmark
+    public String cropResult() {
+        return HistoryService.cropResultSummary(cropResponse);
+    }
+
+    @Benchmark
+    public String diseaseInput() {
+        return HistoryService.diseaseInputSummary("leaf-1.jpg");
+    }
+
+    @Benchmark
+    public String diseaseResult() {
+        return HistoryService.diseaseResultSummary(diseaseResponse);
+    }
+
+    @Benchmark
+    public String analysisInput() {
+        return HistoryService.analysisInputSummary(cropRequest, fileNames);
+    }
+
+    @Benchmark
+    public String analysisResult() {
+        return HistoryService.analysisResultSummary(analysisResponse);
+    }
+}
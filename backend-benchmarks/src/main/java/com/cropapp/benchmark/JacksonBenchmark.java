@@ -0,0 +1,105 @@
+package com.cropapp.benchmark;
+
+import com.cropapp.dto.CropRequest;
+import com.cropapp.dto.CropResponse;
+import com.cropapp.dto.DiseaseResponse;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON binding of the prediction DTOs with an ObjectMapper configured the way
+ * Spring Boot configures its own: the request body coming in, the model
+ * server's answer coming back and the response going out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JacksonBenchmark {
+
+    private static final String CROP_REQUEST_JSON =
+            "{\"N\":90,\"P\":42,\"K\":43,\"temperature\":20.88,\"humidity\":82.0,\"ph\":6.5,\"rainfall\":202.94}";
+    private static final String DISEASE_RESPONSE_JSON =
+            "{\"disease\":\"Tomato___Late_blight\",\"confidence\":\"97.42%\"}";
+
+    private ObjectReader cropRequestReader;
+    private ObjectReader cropResponseReader;
+    private ObjectReader diseaseResponseReader;
+    private ObjectWriter writer;
+
+    private CropRequest cropRequest;
+    private CropResponse cropResponse;
+    private DiseaseResponse diseaseResponse;
+    private String cropResponseJson;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+        cropRequestReader = mapper.readerFor(CropRequest.class);
+        cropResponseReader = mapper.readerFor(CropResponse.class);
+        diseaseResponseReader = mapper.readerFor(DiseaseResponse.class);
+        writer = mapper.writer();
+
+        cropRequest = cropRequestReader.readValue(CROP_REQUEST_JSON);
+        diseaseResponse = diseaseResponseReader.readValue(DISEASE_RESPONSE_JSON);
+        cropResponse = new CropResponse();
+        List<CropResponse.Recommendation> topCrops = new ArrayList<>();
+        for (String crop : List.of("rice", "jute", "coconut")) {
+            CropResponse.Recommendation recommendation = new CropResponse.Recommendation();
+            recommendation.setCrop(crop);
+            recommendation.setConfidence("31.50%");
+            topCrops.add(recommendation);
+        }
+        cropResponse.setTop_crops(topCrops);
+        cropResponseJson = writer.writeValueAsString(cropResponse);
+    }
+
+    @Benchmark
+    public CropRequest readCropRequest() throws JsonProcessingException {
+        return cropRequestReader.readValue(CROP_REQUEST_JSON);
+    }
+
+    @Benchmark
+    public String writeCropRequest() throws JsonProcessingException {
+        return writer.writeValueAsString(cropRequest);
+    }
+
+    @Benchmark
+    public CropResponse readCropResponse() throws JsonProcessingException {
+        return cropResponseReader.readValue(cropResponseJson);
+    }
+
+    @Benchmark
+    public String writeCropResponse() throws JsonProcessingException {
+        return writer.writeValueAsString(cropResponse);
+    }
+
+    @Benchmark
+    public DiseaseResponse readDiseaseResponse() throws JsonProcessingException {
+        return diseaseResponseReader.readValue(DISEASE_RESPONSE_JSON);
+    }
+
+    @Benchmark
+    public String writeDiseaseResponse() throws JsonProcessingException {
+        return writer.writeValueAsString(diseaseResponse);
+    }
+}
@@ -0,0 +1,106 @@
+package com.cropapp.benchmark;
+
+import com.cropapp.util.AuthenticatedUser;
+import com.cropapp.util.CustomUserDetailsService;
+import com.cropapp.util.JwtFilter;
+import com.cropapp.util.JwtAuthenticationCache;
+import com.cropapp.util.JwtUtil;
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request cost of turning a bearer token into UserDetails in JwtFilter.
+ *
+ * legacy: the old path, validateJwtToken + getUsernameFromJwtToken (two HMAC
+ * checks) + a user lookup. singleParse: one verified parse + lookup (a cache
+ * miss). cached: a cache hit. The lookup is an in-memory stand-in, so the DB
+ * round trip the cache also saves is not part of these numbers.
+ *
+ * filter: the whole JwtFilter pass for a request with a cached token, metrics,
+ * JFR event and security context included, as it runs in front of every call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtFilterBenchmark {
+
+    private JwtUtil jwtUtil;
+    private JwtAuthenticationCache cache;
+    private String token;
+    private JwtFilter filter;
+    private MockHttpServletRequest request;
+    private final FilterChain chain = (req, res) -> { };
+
+    @Setup
+    public void setUp() {
+        jwtUtil = new JwtUtil(JwtUtilBenchmark.SECRET);
+        cache = new JwtAuthenticationCache(10_000, new SimpleMeterRegistry());
+        token = jwtUtil.generateToken(1L, "farmer@example.com");
+        Claims claims = jwtUtil.parseVerified(token);
+        cache.put(token, lookup(claims.getSubject()), claims.getExpiration());
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        // The token is already cached, so the repository is never reached
+        filter = new JwtFilter(jwtUtil, new CustomUserDetailsService(null, registry), cache, registry);
+        request = new MockHttpServletRequest("POST", "/api/recommend");
+        request.addHeader("Authorization", "Bearer " + token);
+    }
+
+    @Benchmark
+    public UserDetails legacy() {
+        if (!jwtUtil.validateJwtToken(token)) {
+            return null;
+        }
+        return lookup(jwtUtil.getUsernameFromJwtToken(token));
+    }
+
+    @Benchmark
+    public UserDetails singleParse() {
+        Claims claims = jwtUtil.parseVerified(token);
+        return claims != null ? lookup(claims.getSubject()) : null;
+    }
+
+    @Benchmark
+    public UserDetails cached() {
+        return cache.get(token);
+    }
+
+    @Benchmark
+    public Object filter() throws ServletException, IOException {
+        // OncePerRequestFilter marks the request as filtered, so every call needs a fresh attribute map
+        request.clearAttributes();
+        try {
+            filter.doFilter(request, new MockHttpServletResponse(), chain);
+            return SecurityContextHolder.getContext().getAuthentication();
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+
+    private static AuthenticatedUser lookup(String email) {
+        return new AuthenticatedUser(1L, email, "{noop}password");
+    }
+
+}
@@ -0,0 +1,116 @@
+package com.cropapp.benchmark;
+
+import com.cropapp.Service.DiseaseImagePreprocessor;
+import com.cropapp.Service.MLGateway;
+import com.cropapp.dto.DiseaseResponse;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One MLGateway.predictDisease call: building the multipart body, encoding it
+ * and sending it over a pooled loopback connection to a stand-in model server
+ * that reads the body and answers a fixed diagnosis. upload is a ~200 KB photo
+ * sent as is; tensor is the 224x224x3 payload DiseaseImagePreprocessor sends
+ * instead. The stand-in does no inference, so the difference between the two
+ * is what the smaller body saves on the way out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MultipartBodyBenchmark {
+
+    private static final byte[] DIAGNOSIS =
+            "{\"disease\":\"Tomato___healthy\",\"confidence\":\"97.00%\"}".getBytes(StandardCharsets.UTF_8);
+
+    private HttpServer server;
+    private ExecutorService serverThreads;
+    private MLGateway gateway;
+
+    private Resource upload;
+    private Resource tensor;
+
+    @Setup
+    public void setUp() throws IOException {
+        // Otherwise the stand-in's small writes wait out delayed ACKs (~40 ms a call)
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        serverThreads = Executors.newFixedThreadPool(4);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(serverThreads);
+        server.createContext("/predict_disease", exchange -> {
+            try (InputStream in = exchange.getRequestBody()) {
+                in.transferTo(OutputStream.nullOutputStream());
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, DIAGNOSIS.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(DIAGNOSIS);
+            }
+        });
+        server.start();
+
+        gateway = new MLGateway(List.of("http://127.0.0.1:" + server.getAddress().getPort()),
+                Duration.ofMillis(500), Duration.ofSeconds(30), Duration.ofSeconds(60),
+                10, 10, Duration.ofSeconds(1), Duration.ofSeconds(2), Duration.ofSeconds(3),
+                10, 10, Duration.ofSeconds(1), Duration.ofSeconds(15), Duration.ofSeconds(20),
+                false, false, 0.95, Duration.ofMillis(50),
+                new SimpleMeterRegistry());
+
+        // Random bytes, like compressed image data; nothing on the way looks inside
+        byte[] photo = new byte[200 * 1024];
+        new Random(42).nextBytes(photo);
+        upload = new ByteArrayResource(photo) {
+            @Override
+            public String getFilename() {
+                return "leaf.jpg";
+            }
+        };
+        byte[] rgb = new byte[DiseaseImagePreprocessor.SIZE * DiseaseImagePreprocessor.SIZE * 3];
+        new Random(7).nextBytes(rgb);
+        tensor = new DiseaseImagePreprocessor.Tensor(rgb, "leaf.jpg");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        gateway.destroy();
+        server.stop(0);
+        serverThreads.shutdownNow();
+    }
+
+    @Benchmark
+    public DiseaseResponse upload() {
+        return gateway.predictDisease(upload).getBody();
+    }
+
+    @Benchmark
+    public DiseaseResponse tensor() {
+        return gateway.predictDisease(tensor).getBody();
+    }
+}
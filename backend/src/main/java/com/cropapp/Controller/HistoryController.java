@@ -1,13 +1,27 @@
 package com.cropapp.Controller;
 
-import com.cropapp.model.PredictionHistory;
+import com.cropapp.dto.HistoryItem;
+import com.cropapp.dto.HistoryPage;
+import com.cropapp.dto.HistorySync;
+import com.cropapp.Service.HistoryExporter;
 import com.cropapp.Service.HistoryService;
+import com.cropapp.util.AuthenticatedUser;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.WebAsyncUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.security.Principal; 
+import java.time.Duration;
 import java.util.List;
+import java.util.Locale;
 
 @RestController
 @RequestMapping("/api/history")
@@ -17,16 +31,91 @@ public class HistoryController {
     @Autowired
     private HistoryService historyService;
 
+    @Autowired
+    private HistoryExporter historyExporter;
+
+    // Long exports need longer than other async requests; applied to this endpoint only
+    @Value("${history.export.timeout:30m}")
+    private Duration exportTimeout;
+
     @GetMapping
-    // ✅ 2. Add 'Principal principal' here
-    public ResponseEntity<List<PredictionHistory>> getMyHistory(Principal principal) {
+    // The principal carries the user id, so no user lookup is needed
+    public ResponseEntity<List<HistoryItem>> getMyHistory(@AuthenticationPrincipal AuthenticatedUser user) {
         
-        if (principal == null) {
+        if (user == null) {
             // Handle case where user is not logged in (or token invalid)
             return ResponseEntity.status(401).build(); 
         }
 
-        // ✅ 3. Pass the actual username instead of null
-        return ResponseEntity.ok(historyService.getUserHistory(principal.getName()));
+        return ResponseEntity.ok(historyService.getUserHistory(user.getId()));
+    }
+
+    // Keyset-paginated history: ?size=20, then ?cursor=<nextCursor> for each following page
+    @GetMapping("/page")
+    public ResponseEntity<HistoryPage> getMyHistoryPage(@AuthenticationPrincipal AuthenticatedUser user,
+                                                        @RequestParam(required = false) String cursor,
+                                                        @RequestParam(defaultValue = "20") int size) {
+        if (user == null) {
+            return ResponseEntity.status(401).build();
+        }
+        try {
+            return ResponseEntity.ok(historyService.getUserHistoryPage(user.getId(), cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    // Delta sync for offline clients: ?since=<syncToken>; If-None-Match with the last ETag gets 304 when nothing is new
+    @GetMapping("/sync")
+    public ResponseEntity<HistorySync> syncMyHistory(@AuthenticationPrincipal AuthenticatedUser user,
+                                                     @RequestParam(required = false) String since,
+                                                     WebRequest request) {
+        if (user == null) {
+            return ResponseEntity.status(401).build();
+        }
+        try {
+            long latestId = historyService.getLatestHistoryId(user.getId());
+            String eTag = historyService.getSyncETag(since, latestId);
+            if (request.checkNotModified(eTag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+            }
+            return ResponseEntity.ok()
+                    .eTag(eTag)
+                    // Clients must revalidate, but may keep the body to replay on 304
+                    .cacheControl(CacheControl.noCache().cachePrivate())
+                    .body(historyService.getUserHistorySince(user.getId(), since, latestId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    // Full history as a download: ?format=ndjson|csv, &gzip=true for a compressed file
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportMyHistory(@AuthenticationPrincipal AuthenticatedUser user,
+                                                                 @RequestParam(defaultValue = "ndjson") String format,
+                                                                 @RequestParam(defaultValue = "false") boolean gzip,
+                                                                 WebRequest request) {
+        if (user == null) {
+            return ResponseEntity.status(401).build();
+        }
+        HistoryExporter.Format exportFormat;
+        try {
+            exportFormat = HistoryExporter.Format.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        Long userId = user.getId();
+        String fileName = "history." + exportFormat.name().toLowerCase(Locale.ROOT) + (gzip ? ".gz" : "");
+        MediaType contentType = gzip ? MediaType.parseMediaType("application/gzip")
+                : exportFormat == HistoryExporter.Format.CSV ? MediaType.parseMediaType("text/csv;charset=UTF-8")
+                : MediaType.parseMediaType("application/x-ndjson");
+        // Rows are written as they are read; the body is never buffered
+        WebAsyncUtils.getAsyncManager(request).getAsyncWebRequest().setTimeout(exportTimeout.toMillis());
+        StreamingResponseBody body = out -> historyExporter.export(userId, exportFormat, gzip, out);
+        return ResponseEntity.ok()
+                .contentType(contentType)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+                .body(body);
     }
-}
\ No newline at end of file
+}
@@ -1,18 +1,39 @@
 
 package com.cropapp.Controller;
 
+import com.cropapp.dto.AnalysisResponse;
 import com.cropapp.dto.CropRequest;
 import com.cropapp.dto.CropResponse;
 import com.cropapp.dto.DiseaseResponse;
+import com.cropapp.Service.AnalysisService;
+import com.cropapp.Service.CropBatchService;
+import com.cropapp.Service.DiseaseBatchService;
 import com.cropapp.Service.MLService;
 import com.cropapp.Service.HistoryService;
+import com.cropapp.exception.MLServiceUnavailableException;
+import com.cropapp.exception.TooManyImagesException;
+import com.cropapp.util.AuthenticatedUser;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.WebAsyncUtils;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import jakarta.servlet.http.HttpServletRequest;
 import java.io.IOException;
-import java.security.Principal; // 👈 IMPORT THIS
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @RestController
 @RequestMapping("/api")
@@ -25,50 +46,189 @@ public class PredictionController {
     @Autowired
     private HistoryService historyService;
 
-    @PostMapping("/recommend")
-    // 👇 ADD Principal principal here
-    public ResponseEntity<CropResponse> recommendCrop(@RequestBody CropRequest request, Principal principal) {
-        CropResponse response = mlService.getCropRecommendation(request);
-
-        // ✅ SAVE HISTORY (Only if user is logged in)
-        if (principal != null) {
-            String inputSummary = String.format("N:%d P:%d K:%d pH:%.1f", 
-                request.getN(), request.getP(), request.getK(), request.getPh());
-                
-            String resultSummary = response.getTop_crops().isEmpty() ? "No Result" : 
-                response.getTop_crops().get(0).getCrop();
-
-            // Pass the username (principal.getName()) to your service
-            historyService.saveHistory(principal.getName(), "CROP", inputSummary, resultSummary);
-            System.out.println("✅ Crop history saved for: " + principal.getName());
-        } else {
-            System.out.println("⚠️ User not found. History NOT saved.");
-        }
+    @Autowired
+    private AnalysisService analysisService;
+
+    @Autowired
+    private CropBatchService cropBatchService;
+
+    @Autowired
+    private DiseaseBatchService diseaseBatchService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // Async timeouts, per endpoint rather than one spring.mvc.async.request-timeout for everything
+    @Value("${ml.async.crop.timeout:5s}")
+    private Duration cropTimeout;
+
+    @Value("${ml.async.disease.timeout:30s}")
+    private Duration diseaseTimeout;
 
-        return ResponseEntity.ok(response);
+    @Value("${ml.upload.timeout:30m}")
+    private Duration uploadTimeout;
+
+    // The request thread is released while the model server works; the response is written on completion
+    @PostMapping("/recommend")
+    public DeferredResult<ResponseEntity<CropResponse>> recommendCrop(@RequestBody CropRequest request,
+                                                                      @AuthenticationPrincipal AuthenticatedUser user) {
+        CompletableFuture<ResponseEntity<CropResponse>> prediction = mlService.getCropRecommendationAsync(request)
+                .thenApply(response -> {
+                    // ✅ SAVE HISTORY (Only if user is logged in)
+                    if (user != null) {
+                        historyService.saveHistory(user.getId(), "CROP",
+                                HistoryService.cropInputSummary(request), HistoryService.cropResultSummary(response));
+                    }
+                    return ResponseEntity.ok(response);
+                });
+        return deferred(prediction, cropTimeout, "Crop recommendation");
     }
 
+    // An upload that can't be copied is answered by GlobalExceptionHandler like any other error
     @PostMapping("/detect")
-    // 👇 ADD Principal principal here
-    public ResponseEntity<DiseaseResponse> detectDisease(@RequestParam("file") MultipartFile file, Principal principal) {
-        try {
-            DiseaseResponse response = mlService.detectDisease(file);
-
+    public DeferredResult<ResponseEntity<DiseaseResponse>> detectDisease(@RequestParam("file") MultipartFile file,
+                                                                         @AuthenticationPrincipal AuthenticatedUser user)
+            throws IOException {
+        recordUpload("detect", file.getSize());
+        CompletableFuture<ResponseEntity<DiseaseResponse>> prediction = mlService.detectDiseaseAsync(file).thenApply(response -> {
             // ✅ SAVE HISTORY (Only if user is logged in)
-            if (principal != null) {
-                String inputSummary = "Image: " + file.getOriginalFilename();
-                String resultSummary = response.getDisease() + " (" + response.getConfidence() + ")";
+            if (user != null) {
+                historyService.saveHistory(user.getId(), "DISEASE",
+                        HistoryService.diseaseInputSummary(file.getOriginalFilename()),
+                        HistoryService.diseaseResultSummary(response));
+            }
+            return ResponseEntity.ok(response);
+        });
+        return deferred(prediction, diseaseTimeout, "Disease detection");
+    }
 
-                // Pass the username (principal.getName()) to your service
-                historyService.saveHistory(principal.getName(), "DISEASE", inputSummary, resultSummary);
-                System.out.println("✅ Disease history saved for: " + principal.getName());
+    // Soil readings (JSON part "readings") and leaf photos ("images") of one plot, analysed in one round trip
+    @PostMapping(value = "/analyze", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public DeferredResult<ResponseEntity<AnalysisResponse>> analyze(@RequestPart("readings") CropRequest readings,
+                                                                    @RequestPart(value = "images", required = false) List<MultipartFile> images,
+                                                                    @AuthenticationPrincipal AuthenticatedUser user) {
+        List<MultipartFile> leaves = images != null ? images : List.of();
+        leaves.forEach(image -> recordUpload("analyze", image.getSize()));
+        if (leaves.size() > analysisService.getMaxImages()) {
+            throw new TooManyImagesException(analysisService.getMaxImages());
+        }
+        // Partial results come back at the deadline; the extra time only covers writing them
+        CompletableFuture<ResponseEntity<AnalysisResponse>> analysis = analysisService
+                .analyze(readings, leaves, user != null ? user.getId() : null)
+                .thenApply(ResponseEntity::ok);
+        return deferred(analysis, analysisService.getDeadline().plusSeconds(5), "Field analysis");
+    }
+
+    // Past the timeout the client gets a 503; the prediction still finishes and is cached and saved
+    private static <T> DeferredResult<T> deferred(CompletableFuture<T> prediction, Duration timeout, String what) {
+        DeferredResult<T> result = new DeferredResult<>(timeout.toMillis(), () -> new MLServiceUnavailableException(
+                what + " is taking too long, please retry shortly", Duration.ofSeconds(1), null));
+        prediction.whenComplete((response, failure) -> {
+            if (failure != null) {
+                result.setErrorResult(failure instanceof CompletionException && failure.getCause() != null
+                        ? failure.getCause() : failure);
             } else {
-                System.out.println("⚠️ User not found. History NOT saved.");
+                result.setResult(response);
+            }
+        });
+        return result;
+    }
+
+    // Lab files: a CSV (Crop_recommendation.csv columns) or JSON array upload, answered with one NDJSON line per row
+    @PostMapping(value = "/recommend/batch", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<StreamingResponseBody> recommendCropBatch(@RequestParam("file") MultipartFile file,
+                                                                    @AuthenticationPrincipal AuthenticatedUser user,
+                                                                    HttpServletRequest request) {
+        recordUpload("recommend_batch", file.getSize());
+        CropBatchService.Format format = CropBatchService.formatOf(file.getContentType(), file.getOriginalFilename());
+        return cropBatch(request, file::getInputStream, format, user);
+    }
+
+    // Same, with the file as the request body (Content-Type text/csv or application/json)
+    @PostMapping(value = "/recommend/batch", consumes = {"text/csv", MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<StreamingResponseBody> recommendCropBatch(HttpServletRequest request,
+                                                                    @AuthenticationPrincipal AuthenticatedUser user) {
+        recordUpload("recommend_batch", request.getContentLengthLong());
+        CropBatchService.Format format = CropBatchService.formatOf(request.getContentType(), null);
+        return cropBatch(request, request::getInputStream, format, user);
+    }
+
+    private ResponseEntity<StreamingResponseBody> cropBatch(HttpServletRequest request, InputSource input,
+                                                            CropBatchService.Format format, AuthenticatedUser user) {
+        if (user == null) {
+            return ResponseEntity.status(401).build();
+        }
+        extendTimeout(request);
+        Long userId = user.getId();
+        // Rows are parsed and answered while the upload is still being read
+        StreamingResponseBody body = out -> {
+            try (InputStream in = input.open()) {
+                cropBatchService.recommend(in, format, userId, out);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Batch recommendation interrupted");
             }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(body);
+    }
 
-            return ResponseEntity.ok(response);
-        } catch (IOException e) {
-            return ResponseEntity.internalServerError().build();
+    // A ZIP of leaf photos, answered with one NDJSON line per image
+    @PostMapping(value = "/detect/batch", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<StreamingResponseBody> detectDiseaseBatch(@RequestParam("file") MultipartFile file,
+                                                                    @AuthenticationPrincipal AuthenticatedUser user,
+                                                                    HttpServletRequest request) {
+        recordUpload("detect_batch", file.getSize());
+        return diseaseBatch(request, file::getInputStream, user);
+    }
+
+    // Same, with the archive as the request body: not subject to the multipart size limit, for large archives
+    @PostMapping(value = "/detect/batch", consumes = {"application/zip", "application/x-zip-compressed"})
+    public ResponseEntity<StreamingResponseBody> detectDiseaseBatch(HttpServletRequest request,
+                                                                    @AuthenticationPrincipal AuthenticatedUser user) {
+        recordUpload("detect_batch", request.getContentLengthLong());
+        return diseaseBatch(request, request::getInputStream, user);
+    }
+
+    private ResponseEntity<StreamingResponseBody> diseaseBatch(HttpServletRequest request, InputSource input,
+                                                               AuthenticatedUser user) {
+        if (user == null) {
+            return ResponseEntity.status(401).build();
+        }
+        extendTimeout(request);
+        Long userId = user.getId();
+        // Images are sent for inference while the rest of the archive is still being read
+        StreamingResponseBody body = out -> {
+            try (InputStream in = input.open()) {
+                diseaseBatchService.detect(in, userId, out);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Batch detection interrupted");
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(body);
+    }
+
+    // A whole batch is answered in one streamed response, far longer than a single prediction
+    private void extendTimeout(HttpServletRequest request) {
+        WebAsyncUtils.getAsyncManager(request).getAsyncWebRequest().setTimeout(uploadTimeout.toMillis());
+    }
+
+    // upload.size{endpoint}; chunked request bodies of unknown length are not counted
+    private void recordUpload(String endpoint, long bytes) {
+        if (bytes >= 0) {
+            DistributionSummary.builder("upload.size")
+                    .baseUnit("bytes")
+                    .tag("endpoint", endpoint)
+                    .register(meterRegistry)
+                    .record(bytes);
         }
     }
-}
\ No newline at end of file
+
+    private interface InputSource {
+        InputStream open() throws IOException;
+    }
+}
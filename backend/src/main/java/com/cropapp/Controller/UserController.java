@@ -4,10 +4,10 @@ package com.cropapp.Controller;
 import com.cropapp.model.User;
 import com.cropapp.repository.UserRepository;
 import com.cropapp.dto.UserResponse;
+import com.cropapp.util.AuthenticatedUser;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -22,13 +22,10 @@ public class UserController {
     private final UserRepository userRepository;
 
     @GetMapping("/profile")
-    public ResponseEntity<UserResponse> getCurrentUserProfile() {
-        // This gets the user's email from the security context (via the token)
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        String userEmail = authentication.getName();
-
-        User user = userRepository.findByEmail(userEmail)
-                .orElseThrow(() -> new RuntimeException("User not found for email: " + userEmail));
+    public ResponseEntity<UserResponse> getCurrentUserProfile(@AuthenticationPrincipal AuthenticatedUser principal) {
+        // The principal (built from the token) carries the id, so this is a primary-key lookup
+        User user = userRepository.findById(principal.getId())
+                .orElseThrow(() -> new RuntimeException("User not found for email: " + principal.getUsername()));
 
         // Build the response object without the 'area' field
         UserResponse profile = UserResponse.builder()
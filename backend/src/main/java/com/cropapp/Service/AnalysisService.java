@@ -0,0 +1,134 @@
+package com.cropapp.Service;
+
+import com.cropapp.dto.AnalysisResponse;
+import com.cropapp.dto.CropRequest;
+import com.cropapp.dto.CropResponse;
+import com.cropapp.dto.DiseaseBatchResult;
+import com.cropapp.dto.DiseaseResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Field analysis of one plot: crop recommendation for the soil readings and
+ * disease detection for each leaf image, all started at once, so the answer
+ * takes as long as the slowest model call rather than the sum of them.
+ *
+ * Everything shares one deadline. Whatever has not answered by then, or failed,
+ * gets an error in the response while the rest is returned as usual; calls that
+ * finish late still fill the result caches.
+ */
+@Service
+public class AnalysisService {
+
+    private final MLService mlService;
+    private final HistoryService historyService;
+    private final Duration deadline;
+    private final int maxImages;
+
+    public AnalysisService(MLService mlService, HistoryService historyService,
+                           @Value("${ml.analyze.deadline:20s}") Duration deadline,
+                           @Value("${ml.analyze.max-images:5}") int maxImages) {
+        this.mlService = mlService;
+        this.historyService = historyService;
+        this.deadline = deadline;
+        this.maxImages = maxImages;
+    }
+
+    public Duration getDeadline() {
+        return deadline;
+    }
+
+    public int getMaxImages() {
+        return maxImages;
+    }
+
+    /**
+     * Completes by the deadline at the latest, never exceptionally. With a user id
+     * the analysis is saved as a single ANALYSIS history record.
+     */
+    public CompletableFuture<AnalysisResponse> analyze(CropRequest readings, List<MultipartFile> images, Long userId) {
+        CompletableFuture<CropResponse> crop = withDeadline(mlService.getCropRecommendationAsync(readings));
+
+        List<String> fileNames = new ArrayList<>(images.size());
+        List<CompletableFuture<DiseaseResponse>> diseases = new ArrayList<>(images.size());
+        for (MultipartFile image : images) {
+            fileNames.add(image.getOriginalFilename());
+            diseases.add(withDeadline(detect(image)));
+        }
+
+        List<CompletableFuture<?>> all = new ArrayList<>(diseases);
+        all.add(crop);
+        return CompletableFuture.allOf(all.toArray(CompletableFuture[]::new))
+                .handle((ignored, failure) -> {
+                    // Everything has completed by now, one way or the other
+                    AnalysisResponse response = new AnalysisResponse(null, null, new ArrayList<>(images.size()));
+                    Outcome<CropResponse> cropOutcome = outcome(crop);
+                    if (cropOutcome.error() != null) {
+                        response.setCrop_error(describe(cropOutcome.error()));
+                    } else {
+                        response.setTop_crops(cropOutcome.value().getTop_crops());
+                    }
+                    for (int i = 0; i < diseases.size(); i++) {
+                        Outcome<DiseaseResponse> disease = outcome(diseases.get(i));
+                        response.getDiseases().add(disease.error() != null
+                                ? new DiseaseBatchResult(fileNames.get(i), null, null, describe(disease.error()))
+                                : new DiseaseBatchResult(fileNames.get(i), disease.value().getDisease(),
+                                        disease.value().getConfidence(), disease.value().getError()));
+                    }
+                    if (userId != null && anySucceeded(response)) {
+                        historyService.saveHistory(userId, "ANALYSIS",
+                                HistoryService.analysisInputSummary(readings, fileNames),
+                                HistoryService.analysisResultSummary(response));
+                    }
+                    return response;
+                });
+    }
+
+    // An unreadable or oversized image fails only its own slot
+    private CompletableFuture<DiseaseResponse> detect(MultipartFile image) {
+        try {
+            return mlService.detectDiseaseAsync(image);
+        } catch (IOException | RuntimeException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+
+    // A copy, so the deadline never fails the shared future other callers may be waiting on
+    private <T> CompletableFuture<T> withDeadline(CompletableFuture<T> call) {
+        return call.copy().orTimeout(deadline.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private String describe(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof TimeoutException) {
+            return "No answer within " + deadline.toMillis() + " ms";
+        }
+        if (cause instanceof MaxUploadSizeExceededException tooLarge) {
+            return "Image is larger than " + tooLarge.getMaxUploadSize() + " bytes";
+        }
+        return cause.getMessage() != null ? cause.getMessage() : "Prediction failed";
+    }
+
+    private static <T> Outcome<T> outcome(CompletableFuture<T> done) {
+        return done.handle(Outcome::new).join();
+    }
+
+    private record Outcome<T>(T value, Throwable error) {
+    }
+
+    private static boolean anySucceeded(AnalysisResponse response) {
+        return response.getCrop_error() == null
+                || response.getDiseases().stream().anyMatch(disease -> disease.getError() == null);
+    }
+}
@@ -32,7 +32,7 @@ public class AuthService {
         
         user = userRepository.save(user);
 
-        String token = jwtUtil.generateToken(user.getEmail());
+        String token = jwtUtil.generateToken(user.getId(), user.getEmail());
 
         // ✅ FIXED: Added user.getLocation() to match the 5 fields in UserResponse
         return new UserResponse(
@@ -52,7 +52,7 @@ public class AuthService {
             throw new RuntimeException("Invalid credentials");
         }
 
-        String token = jwtUtil.generateToken(user.getEmail());
+        String token = jwtUtil.generateToken(user.getId(), user.getEmail());
 
         // ✅ FIXED: Added user.getLocation() here too
         return new UserResponse(
@@ -0,0 +1,95 @@
+package com.cropapp.Service;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * An always-on JDK Flight Recorder recording: GC, locks, I/O and the app's own
+ * com.cropapp.* events, kept in a rolling on-disk buffer bounded by max-age and
+ * max-size. When latency spikes, {@link #dump()} writes the recent past to a
+ * .jfr file for JDK Mission Control. With the default settings the overhead is
+ * around 1%.
+ */
+@Component
+public class ContinuousRecording implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(ContinuousRecording.class);
+
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final String settings;
+    private final Path dumpDir;
+    private final Recording recording;
+
+    public ContinuousRecording(@Value("${jfr.recording.enabled:false}") boolean enabled,
+                               @Value("${jfr.recording.settings:default}") String settings,
+                               @Value("${jfr.recording.max-age:30m}") Duration maxAge,
+                               @Value("${jfr.recording.max-size:250MB}") DataSize maxSize,
+                               @Value("${jfr.recording.dump-dir:}") String dumpDir) {
+        this.settings = settings;
+        this.dumpDir = Path.of(StringUtils.hasText(dumpDir) ? dumpDir : System.getProperty("java.io.tmpdir"));
+        this.recording = enabled ? start(settings, maxAge, maxSize) : null;
+    }
+
+    private static Recording start(String settings, Duration maxAge, DataSize maxSize) {
+        try {
+            Recording recording = new Recording(Configuration.getConfiguration(settings));
+            recording.setName("cropapp-continuous");
+            recording.setToDisk(true);
+            recording.setMaxAge(maxAge);
+            recording.setMaxSize(maxSize.toBytes());
+            recording.start();
+            logger.info("Continuous JFR recording started ({} settings, last {} / {})", settings, maxAge, maxSize);
+            return recording;
+        } catch (IOException | ParseException | RuntimeException ex) {
+            // Profiling is optional; the app runs the same without it
+            logger.warn("Could not start the continuous JFR recording: {}", ex.getMessage());
+            return null;
+        }
+    }
+
+    public boolean isRunning() {
+        return recording != null;
+    }
+
+    public String getSettings() {
+        return settings;
+    }
+
+    /**
+     * Writes what the recording currently holds to a new file in dump-dir and
+     * returns its path. The recording keeps running.
+     */
+    public synchronized Path dump() throws IOException {
+        if (recording == null) {
+            throw new IllegalStateException("The continuous recording is not running (jfr.recording.enabled)");
+        }
+        Files.createDirectories(dumpDir);
+        Path file = dumpDir.resolve("cropapp-" + LocalDateTime.now().format(FILE_TIME) + ".jfr");
+        recording.dump(file);
+        logger.info("Dumped continuous JFR recording to {}", file);
+        return file;
+    }
+
+    @Override
+    public void destroy() {
+        if (recording != null) {
+            recording.close();
+        }
+    }
+}
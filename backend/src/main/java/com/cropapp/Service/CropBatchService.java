@@ -0,0 +1,406 @@
+package com.cropapp.Service;
+
+import com.cropapp.dto.CropBatchResult;
+import com.cropapp.dto.CropRequest;
+import com.cropapp.dto.CropResponse;
+import com.cropapp.util.Bulkhead;
+import com.cropapp.util.InFlightWindow;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Crop recommendations for a whole lab file: CSV in the Crop_recommendation.csv
+ * layout or a JSON array of {@link CropRequest}s.
+ *
+ * The input is parsed row by row while earlier rows are still being scored on
+ * a bounded pool, chunk rows to a /predict_batch call and at most window rows
+ * in flight per upload. Results are written as NDJSON in completion order (each
+ * line carries its row number), and history is inserted in JDBC batches instead
+ * of one queued entry per row.
+ */
+@Service
+public class CropBatchService {
+
+    public enum Format { CSV, JSON }
+
+    private static final int HISTORY_CHUNK = 500;
+    // The Crop_recommendation.csv column names, which are also the JSON field names
+    private static final String[] COLUMNS = {"N", "P", "K", "temperature", "humidity", "ph", "rainfall"};
+
+    private final MLService mlService;
+    private final HistoryWriter historyWriter;
+    private final ObjectMapper objectMapper;
+    private final Bulkhead bulkhead;
+    private final int chunk;
+    private final int window;
+    private final long maxRows;
+
+    public CropBatchService(MLService mlService, HistoryWriter historyWriter, ObjectMapper objectMapper,
+                            MeterRegistry meterRegistry,
+                            @Value("${ml.upload.crop.threads:8}") int threads,
+                            @Value("${ml.upload.crop.chunk:32}") int chunk,
+                            @Value("${ml.upload.crop.window:256}") int window,
+                            @Value("${ml.upload.crop.max-rows:100000}") long maxRows) {
+        this.mlService = mlService;
+        this.historyWriter = historyWriter;
+        this.objectMapper = objectMapper;
+        this.bulkhead = new Bulkhead("crop-upload", threads, threads * 4, meterRegistry);
+        this.chunk = chunk;
+        // In chunks, but never less than one in flight
+        this.window = Math.max(1, window / chunk);
+        this.maxRows = maxRows;
+    }
+
+    /**
+     * Scores every row of in and writes one {@link CropBatchResult} line per row to out.
+     * A malformed row gets an error line; an unreadable file ends with a line that
+     * has an error and no row number.
+     */
+    public void recommend(InputStream in, Format format, Long userId, OutputStream out)
+            throws IOException, InterruptedException {
+        try (Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+             JsonGenerator generator = objectMapper.getFactory().createGenerator(writer)) {
+            // We write the newlines; Jackson would put a space before every value after the first
+            generator.setRootValueSeparator(null);
+            ResultSink sink = new ResultSink(writer, generator, userId);
+            InFlightWindow<List<CropResponse>> inFlight = new InFlightWindow<>(window);
+            try {
+                readAndScore(in, format, sink, inFlight);
+            } finally {
+                // Also when the client went away: those predictions were made
+                sink.saveHistory();
+            }
+        }
+    }
+
+    private void readAndScore(InputStream in, Format format, ResultSink sink, InFlightWindow<List<CropResponse>> inFlight)
+            throws IOException, InterruptedException {
+        long row = 0;
+        boolean cutOff = false;
+        Chunk rows = new Chunk(chunk);
+        try {
+            RowReader reader = format == Format.JSON ? new JsonRows(in) : new CsvRows(in);
+            Row next;
+            while ((next = reader.next()) != null) {
+                if (++row > maxRows) {
+                    cutOff = true;
+                    break;
+                }
+                if (next.error() != null) {
+                    sink.fail(row, next.error());
+                    continue;
+                }
+                rows.add(row, next.request());
+                if (rows.isFull()) {
+                    score(rows, sink, inFlight);
+                    rows = new Chunk(chunk);
+                }
+            }
+        } catch (UnreadableInputException ex) {
+            // Whatever was read so far still gets its results
+            score(rows, sink, inFlight);
+            inFlight.finish(sink);
+            sink.fail(null, "Could not read the file after row " + row + ": " + ex.getMessage());
+            return;
+        }
+        score(rows, sink, inFlight);
+        inFlight.finish(sink);
+        // Last, after the rows still in flight, like any other line without a row number
+        if (cutOff) {
+            sink.fail(null, "File has more than " + maxRows + " rows; the rest was not processed");
+        }
+    }
+
+    // JSON when the upload says so by content type or file name, CSV otherwise
+    public static Format formatOf(String contentType, String fileName) {
+        boolean json = (contentType != null && contentType.toLowerCase(Locale.ROOT).contains("json"))
+                || (fileName != null && fileName.toLowerCase(Locale.ROOT).endsWith(".json"));
+        return json ? Format.JSON : Format.CSV;
+    }
+
+    // Keyed by its first row. When every upload thread is busy the reading thread scores the chunk itself.
+    private void score(Chunk rows, ResultSink sink, InFlightWindow<List<CropResponse>> inFlight)
+            throws IOException, InterruptedException {
+        if (rows.rows().isEmpty()) {
+            return;
+        }
+        long first = rows.rows().get(0);
+        sink.chunks.put(first, rows);
+        inFlight.submit(first, () -> bulkhead.submitOrRun(() -> mlService.getCropRecommendations(rows.requests())), sink);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        bulkhead.close();
+    }
+
+    private final class ResultSink implements InFlightWindow.Sink<List<CropResponse>> {
+
+        private final Writer writer;
+        private final JsonGenerator generator;
+        private final Long userId;
+        // Chunks in flight by first row, so each row's line and history can be written when they come back
+        private final Map<Long, Chunk> chunks = new HashMap<>();
+        private final List<HistoryWriter.Entry> history = new ArrayList<>(HISTORY_CHUNK);
+
+        ResultSink(Writer writer, JsonGenerator generator, Long userId) {
+            this.writer = writer;
+            this.generator = generator;
+            this.userId = userId;
+        }
+
+        @Override
+        public void accept(long first, List<CropResponse> responses, Throwable failure) throws IOException {
+            Chunk rows = chunks.remove(first);
+            for (int i = 0; i < rows.rows().size(); i++) {
+                if (failure != null) {
+                    fail(rows.rows().get(i), failure.getMessage());
+                } else {
+                    scored(rows.rows().get(i), rows.requests().get(i), responses.get(i));
+                }
+            }
+        }
+
+        private void scored(long row, CropRequest request, CropResponse response) throws IOException {
+            write(new CropBatchResult(row, response.getTop_crops(), null));
+            if (userId != null) {
+                history.add(new HistoryWriter.Entry(userId, "CROP", HistoryService.cropInputSummary(request),
+                        HistoryService.cropResultSummary(response), LocalDateTime.now()));
+                if (history.size() >= HISTORY_CHUNK) {
+                    saveHistory();
+                }
+            }
+        }
+
+        void fail(Long row, String error) throws IOException {
+            write(new CropBatchResult(row, null, error != null ? error : "Prediction failed"));
+        }
+
+        private void write(CropBatchResult result) throws IOException {
+            objectMapper.writeValue(generator, result);
+            generator.flush();
+            writer.write('\n');
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writer.flush();
+        }
+
+        void saveHistory() {
+            if (!history.isEmpty()) {
+                historyWriter.writeAll(history);
+                history.clear();
+            }
+        }
+    }
+
+    // The input itself is broken (bad header, invalid JSON, ...), as opposed to one bad row
+    private static class UnreadableInputException extends IOException {
+        UnreadableInputException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    // A parsed row, or why it could not be parsed
+    private record Row(CropRequest request, String error) {
+    }
+
+    // Valid rows scored together, with their row numbers
+    private static final class Chunk {
+
+        private final int size;
+        private final List<Long> rows;
+        private final List<CropRequest> requests;
+
+        Chunk(int size) {
+            this.size = size;
+            this.rows = new ArrayList<>(size);
+            this.requests = new ArrayList<>(size);
+        }
+
+        void add(long row, CropRequest request) {
+            rows.add(row);
+            requests.add(request);
+        }
+
+        boolean isFull() {
+            return rows.size() >= size;
+        }
+
+        List<Long> rows() {
+            return rows;
+        }
+
+        List<CropRequest> requests() {
+            return requests;
+        }
+    }
+
+    private interface RowReader {
+        // null at the end of the input
+        Row next() throws IOException;
+    }
+
+    // Header row with the Crop_recommendation.csv column names, in any order; other columns (e.g. label) are ignored
+    private static final class CsvRows implements RowReader {
+
+        private final BufferedReader reader;
+        private final int[] positions = new int[COLUMNS.length];
+
+        CsvRows(InputStream in) throws IOException {
+            this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String header = reader.readLine();
+            if (header == null) {
+                throw new UnreadableInputException("The file is empty", null);
+            }
+            String[] names = split(header.startsWith("\uFEFF") ? header.substring(1) : header);
+            for (int c = 0; c < COLUMNS.length; c++) {
+                positions[c] = -1;
+                for (int i = 0; i < names.length; i++) {
+                    if (names[i].equalsIgnoreCase(COLUMNS[c])) {
+                        positions[c] = i;
+                    }
+                }
+                if (positions[c] < 0) {
+                    throw new UnreadableInputException("Missing column " + COLUMNS[c], null);
+                }
+            }
+        }
+
+        @Override
+        public Row next() throws IOException {
+            String line;
+            do {
+                line = reader.readLine();
+                if (line == null) {
+                    return null;
+                }
+            } while (line.isBlank());
+
+            String[] fields = split(line);
+            try {
+                CropRequest request = new CropRequest();
+                request.setN(integer(fields, 0));
+                request.setP(integer(fields, 1));
+                request.setK(integer(fields, 2));
+                request.setTemperature(number(fields, 3));
+                request.setHumidity(number(fields, 4));
+                request.setPh(number(fields, 5));
+                request.setRainfall(number(fields, 6));
+                return new Row(request, null);
+            } catch (RuntimeException ex) {
+                return new Row(null, "Invalid row: " + ex.getMessage());
+            }
+        }
+
+        private int integer(String[] fields, int column) {
+            // Some lab files write whole numbers as 90.0
+            return (int) Math.round(number(fields, column));
+        }
+
+        private double number(String[] fields, int column) {
+            int position = positions[column];
+            if (position >= fields.length || fields[position].isEmpty()) {
+                throw new IllegalArgumentException("missing " + COLUMNS[column]);
+            }
+            try {
+                return Double.parseDouble(fields[position]);
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException(COLUMNS[column] + " is not a number");
+            }
+        }
+
+        private static String[] split(String line) {
+            String[] fields = line.split(",", -1);
+            for (int i = 0; i < fields.length; i++) {
+                String field = fields[i].trim();
+                if (field.length() >= 2 && field.startsWith("\"") && field.endsWith("\"")) {
+                    field = field.substring(1, field.length() - 1).trim();
+                }
+                fields[i] = field;
+            }
+            return fields;
+        }
+    }
+
+    // A JSON array of CropRequest objects, read one element at a time
+    private final class JsonRows implements RowReader {
+
+        private final JsonParser parser;
+
+        JsonRows(InputStream in) throws IOException {
+            this.parser = objectMapper.getFactory().createParser(in);
+            try {
+                if (parser.nextToken() != JsonToken.START_ARRAY) {
+                    throw new UnreadableInputException("Expected a JSON array of crop requests", null);
+                }
+            } catch (JsonProcessingException ex) {
+                throw new UnreadableInputException(ex.getOriginalMessage(), ex);
+            }
+        }
+
+        @Override
+        public Row next() throws IOException {
+            JsonNode element;
+            try {
+                JsonToken token = parser.nextToken();
+                if (token == null || token == JsonToken.END_ARRAY) {
+                    return null;
+                }
+                if (token != JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    return new Row(null, "Invalid row: expected an object");
+                }
+                element = objectMapper.readTree(parser);
+            } catch (JsonProcessingException ex) {
+                // The parser can't resync mid-array, so this ends the file
+                throw new UnreadableInputException(ex.getOriginalMessage(), ex);
+            }
+            // Binding alone would score a missing field as 0
+            for (String field : COLUMNS) {
+                JsonNode value = element.get(field);
+                if (value == null || value.isNull()) {
+                    return new Row(null, "Invalid row: missing " + field);
+                }
+            }
+            try {
+                return new Row(objectMapper.treeToValue(element, CropRequest.class), null);
+            } catch (JsonProcessingException ex) {
+                // The element was read whole, so only this row is lost
+                return new Row(null, "Invalid row: " + notBindable(ex));
+            }
+        }
+
+        private static String notBindable(JsonProcessingException ex) {
+            if (ex instanceof MismatchedInputException mismatch && !mismatch.getPath().isEmpty()) {
+                return mismatch.getPath().get(0).getFieldName() + " is not a number";
+            }
+            return ex.getOriginalMessage();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.cropapp.Service;
+
+import com.cropapp.dto.CropRequest;
+import com.cropapp.dto.CropResponse;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+
+/**
+ * Bounded in-process cache of finished crop recommendations.
+ *
+ * Requests are canonicalized by rounding the continuous readings to a configurable
+ * step (e.g. pH to one decimal), so soil profiles that only differ in noise share
+ * one entry. Hit/miss/eviction counters are published under the
+ * "cropRecommendations" cache name in /actuator/metrics.
+ *
+ * Answers are also kept for a longer stale-ttl as a last-known-good copy, served
+ * only as a fallback while the model server is unavailable.
+ */
+@Component
+public class CropRecommendationCache {
+
+    private final Cache<Key, CropResponse> cache;
+    private final Cache<Key, CropResponse> lastKnownGood;
+
+    private final double temperatureStep;
+    private final double humidityStep;
+    private final double phStep;
+    private final double rainfallStep;
+
+    public CropRecommendationCache(
+            @Value("${ml.cache.crop.max-size:10000}") long maxSize,
+            @Value("${ml.cache.crop.ttl:1h}") Duration ttl,
+            @Value("${ml.cache.crop.stale-ttl:24h}") Duration staleTtl,
+            @Value("${ml.cache.crop.temperature-step:0.1}") double temperatureStep,
+            @Value("${ml.cache.crop.humidity-step:0.1}") double humidityStep,
+            @Value("${ml.cache.crop.ph-step:0.1}") double phStep,
+            @Value("${ml.cache.crop.rainfall-step:1}") double rainfallStep,
+            MeterRegistry meterRegistry) {
+        this.temperatureStep = temperatureStep;
+        this.humidityStep = humidityStep;
+        this.phStep = phStep;
+        this.rainfallStep = rainfallStep;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "cropRecommendations");
+        this.lastKnownGood = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(staleTtl)
+                .build();
+    }
+
+    /**
+     * Builds the canonical cache key for a request. The key doubles as the request
+     * sent upstream, so a cached answer is always the answer for its own key.
+     */
+    public Key keyFor(CropRequest request) {
+        return new Key(
+                request.getN(),
+                request.getP(),
+                request.getK(),
+                quantize(request.getTemperature(), temperatureStep),
+                quantize(request.getHumidity(), humidityStep),
+                quantize(request.getPh(), phStep),
+                quantize(request.getRainfall(), rainfallStep));
+    }
+
+    public CropResponse get(Key key) {
+        return cache.getIfPresent(key);
+    }
+
+    public void put(Key key, CropResponse response) {
+        // Never cache an empty answer, the next caller should get a fresh try
+        if (response != null && response.getTop_crops() != null && !response.getTop_crops().isEmpty()) {
+            cache.put(key, response);
+            lastKnownGood.put(key, response);
+        }
+    }
+
+    /**
+     * Last answer seen for the key, possibly older than the regular ttl. Only meant
+     * for degraded mode; returns null if there never was one or it is past stale-ttl.
+     */
+    public CropResponse getStale(Key key) {
+        return lastKnownGood.getIfPresent(key);
+    }
+
+    // A step of 0 (or less) keeps the reading exactly as sent
+    private static double quantize(double value, double step) {
+        if (step <= 0 || Double.isNaN(value) || Double.isInfinite(value)) {
+            return value;
+        }
+        long bucket = Math.round(value / step);
+        return BigDecimal.valueOf(bucket).multiply(BigDecimal.valueOf(step)).doubleValue();
+    }
+
+    public record Key(int n, int p, int k, double temperature, double humidity, double ph, double rainfall) {
+
+        public CropRequest toRequest() {
+            CropRequest request = new CropRequest();
+            request.setN(n);
+            request.setP(p);
+            request.setK(k);
+            request.setTemperature(temperature);
+            request.setHumidity(humidity);
+            request.setPh(ph);
+            request.setRainfall(rainfall);
+            return request;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.cropapp.Service;
+
+import com.cropapp.dto.DiseaseBatchResult;
+import com.cropapp.dto.DiseaseResponse;
+import com.cropapp.util.Bulkhead;
+import com.cropapp.util.InFlightWindow;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Disease detection for a ZIP archive of leaf photos.
+ *
+ * Entries are read one after the other straight from the upload stream, never
+ * extracted to disk. Each image is handed to disease inference as soon as it
+ * has been read, with at most window images in flight, so only those images
+ * are ever held in memory whatever the size of the archive, while the model
+ * server always has work queued. Results are written as NDJSON in completion
+ * order, one line per image, and history is inserted in JDBC batches.
+ */
+@Service
+public class DiseaseBatchService {
+
+    private static final int HISTORY_CHUNK = 500;
+
+    private final MLService mlService;
+    private final HistoryWriter historyWriter;
+    private final ObjectMapper objectMapper;
+    private final Bulkhead bulkhead;
+    private final int window;
+    private final int maxEntries;
+    private final long maxImageBytes;
+
+    public DiseaseBatchService(MLService mlService, HistoryWriter historyWriter, ObjectMapper objectMapper,
+                               MeterRegistry meterRegistry,
+                               @Value("${ml.upload.disease.threads:8}") int threads,
+                               @Value("${ml.upload.disease.window:16}") int window,
+                               @Value("${ml.upload.disease.max-entries:2000}") int maxEntries,
+                               @Value("${ml.upload.disease.max-image-size:15MB}") DataSize maxImageSize) {
+        this.mlService = mlService;
+        this.historyWriter = historyWriter;
+        this.objectMapper = objectMapper;
+        this.bulkhead = new Bulkhead("disease-upload", threads, threads * 2, meterRegistry);
+        this.window = window;
+        this.maxEntries = maxEntries;
+        this.maxImageBytes = maxImageSize.toBytes();
+    }
+
+    /**
+     * Runs every image in the archive through disease detection and writes one
+     * {@link DiseaseBatchResult} line per image to out. Entries that are not images
+     * are skipped; an unreadable or oversized image gets an error line; a corrupt
+     * archive ends with a line that has an error and no file name.
+     */
+    public void detect(InputStream zip, Long userId, OutputStream out) throws IOException, InterruptedException {
+        try (Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+             JsonGenerator generator = objectMapper.getFactory().createGenerator(writer)) {
+            // We write the newlines; Jackson would put a space before every value after the first
+            generator.setRootValueSeparator(null);
+            ResultSink sink = new ResultSink(writer, generator, userId);
+            try {
+                readAndDetect(new ZipInputStream(zip), sink);
+            } finally {
+                // Also when the client went away: those predictions were made
+                sink.saveHistory();
+            }
+        }
+    }
+
+    private void readAndDetect(ZipInputStream entries, ResultSink sink) throws IOException, InterruptedException {
+        InFlightWindow<DiseaseResponse> inFlight = new InFlightWindow<>(window);
+        long index = 0;
+        boolean cutOff = false;
+        try {
+            ZipEntry entry;
+            while ((entry = entries.getNextEntry()) != null) {
+                String name = entry.getName();
+                if (entry.isDirectory() || !isImage(name)) {
+                    continue;
+                }
+                if (++index > maxEntries) {
+                    cutOff = true;
+                    break;
+                }
+                byte[] image = readEntry(entries);
+                if (image == null) {
+                    sink.fail(name, "Image is larger than " + maxImageBytes + " bytes");
+                    continue;
+                }
+                sink.names.put(index, name);
+                String fileName = baseName(name);
+                inFlight.submit(index, () -> bulkhead.submitOrRun(() -> mlService.detectDisease(fileName, image)), sink);
+            }
+        } catch (ZipException | EOFException ex) {
+            // Whatever was read so far still gets its results
+            inFlight.finish(sink);
+            String reason = ex.getMessage() != null ? ex.getMessage() : "it ends unexpectedly";
+            sink.fail(null, "Could not read the archive: " + reason);
+            return;
+        }
+        inFlight.finish(sink);
+        // Last, after the images still in flight, like any other line without a file name
+        if (cutOff) {
+            sink.fail(null, "Archive has more than " + maxEntries + " images; the rest was not processed");
+        }
+    }
+
+    // The current entry, or null (with the rest of it skipped) if it is over the size limit
+    private byte[] readEntry(ZipInputStream entries) throws IOException {
+        // Sizes in the archive can't be trusted, so the limit is checked while reading
+        byte[] image = entries.readNBytes((int) Math.min(maxImageBytes + 1, Integer.MAX_VALUE - 8));
+        if (image.length > maxImageBytes) {
+            entries.closeEntry();
+            return null;
+        }
+        return image;
+    }
+
+    private static boolean isImage(String name) {
+        String baseName = baseName(name);
+        // Skip macOS resource forks (__MACOSX/._leaf.jpg) and other hidden files
+        if (baseName.startsWith(".") || name.startsWith("__MACOSX/")) {
+            return false;
+        }
+        String lower = baseName.toLowerCase(Locale.ROOT);
+        return lower.endsWith(".jpg") || lower.endsWith(".jpeg") || lower.endsWith(".png");
+    }
+
+    private static String baseName(String name) {
+        return name.substring(name.lastIndexOf('/') + 1);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        bulkhead.close();
+    }
+
+    private final class ResultSink implements InFlightWindow.Sink<DiseaseResponse> {
+
+        private final Writer writer;
+        private final JsonGenerator generator;
+        private final Long userId;
+        // Entry names of the images in flight
+        private final Map<Long, String> names = new HashMap<>();
+        private final List<HistoryWriter.Entry> history = new ArrayList<>(HISTORY_CHUNK);
+
+        ResultSink(Writer writer, JsonGenerator generator, Long userId) {
+            this.writer = writer;
+            this.generator = generator;
+            this.userId = userId;
+        }
+
+        @Override
+        public void accept(long index, DiseaseResponse response, Throwable failure) throws IOException {
+            String name = names.remove(index);
+            if (failure != null) {
+                fail(name, failure.getMessage());
+                return;
+            }
+            write(new DiseaseBatchResult(name, response.getDisease(), response.getConfidence(), response.getError()));
+            if (userId != null) {
+                history.add(new HistoryWriter.Entry(userId, "DISEASE", HistoryService.diseaseInputSummary(baseName(name)),
+                        HistoryService.diseaseResultSummary(response), LocalDateTime.now()));
+                if (history.size() >= HISTORY_CHUNK) {
+                    saveHistory();
+                }
+            }
+        }
+
+        void fail(String name, String error) throws IOException {
+            write(new DiseaseBatchResult(name, null, null, error != null ? error : "Detection failed"));
+        }
+
+        private void write(DiseaseBatchResult result) throws IOException {
+            objectMapper.writeValue(generator, result);
+            generator.flush();
+            writer.write('\n');
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writer.flush();
+        }
+
+        void saveHistory() {
+            if (!history.isEmpty()) {
+                historyWriter.writeAll(history);
+                history.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.cropapp.Service;
+
+import com.cropapp.util.BicubicResampler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Does the model server's image preprocessing (decode, convert to RGB, resize to
+ * 224x224 with Pillow's bicubic filter) in the JVM, so only the small result
+ * travels to the model server instead of the full-resolution photo.
+ *
+ * ml.disease.preprocess selects what is sent:
+ * off    - the original upload, as before;
+ * jpeg   - the 224x224 image re-encoded as JPEG (works with any model server version);
+ * tensor - the raw 224x224x3 RGB bytes, which app.py feeds to the model as is.
+ *
+ * With subsample=true large photos are decoded at a fraction of their resolution
+ * (still at least twice the target size), which cuts decode memory and time at a
+ * small cost in fidelity. At most concurrency images are decoded at once, which
+ * bounds the memory full-resolution decodes can take.
+ *
+ * Images whose header claims more than max-pixels pixels are never decoded here
+ * (a few KB of PNG can declare a 40000x40000 image); like anything else this
+ * class can't handle, they are sent unprocessed. The default is Pillow's
+ * MAX_IMAGE_PIXELS, so the model server applies its own bomb check to them.
+ */
+@Component
+public class DiseaseImagePreprocessor {
+
+    private static final Logger logger = LoggerFactory.getLogger(DiseaseImagePreprocessor.class);
+
+    public static final int SIZE = 224;
+    // Must match TENSOR_CONTENT_TYPE in ml-api/app.py
+    public static final String TENSOR_CONTENT_TYPE = "application/x-rgb-tensor";
+
+    public enum Mode { OFF, JPEG, TENSOR }
+
+    private final Mode mode;
+    private final boolean subsample;
+    private final float jpegQuality;
+    private final Semaphore decodes;
+    private final long maxPixels;
+
+    public DiseaseImagePreprocessor(@Value("${ml.disease.preprocess:off}") String mode,
+                                    @Value("${ml.disease.preprocess.subsample:false}") boolean subsample,
+                                    @Value("${ml.disease.preprocess.jpeg-quality:0.9}") float jpegQuality,
+                                    @Value("${ml.disease.preprocess.concurrency:4}") int concurrency,
+                                    @Value("${ml.disease.preprocess.max-pixels:89478485}") long maxPixels) {
+        this.mode = Mode.valueOf(mode.trim().toUpperCase(Locale.ROOT));
+        this.subsample = subsample;
+        this.jpegQuality = jpegQuality;
+        this.decodes = new Semaphore(concurrency);
+        this.maxPixels = maxPixels;
+    }
+
+    public boolean isEnabled() {
+        return mode != Mode.OFF;
+    }
+
+    /**
+     * What to send to the model server for this image: the preprocessed payload,
+     * or the image itself when preprocessing is off or the image can't be decoded
+     * here (the model server then handles it, or reports the error, as before).
+     */
+    public Resource prepare(Resource image) {
+        if (mode == Mode.OFF) {
+            return image;
+        }
+        try {
+            byte[] rgb = toModelInput(image);
+            String name = image.getFilename() != null ? image.getFilename() : "image";
+            return mode == Mode.TENSOR ? new Tensor(rgb, name) : named(encodeJpeg(rgb), name);
+        } catch (IOException | RuntimeException ex) {
+            logger.debug("Sending {} unprocessed: {}", image.getFilename(), ex.getMessage());
+            return image;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return image;
+        } catch (OutOfMemoryError ex) {
+            // Within the pixel limit but still too big for the heap left; the decode buffers are garbage now
+            logger.warn("Sending {} unprocessed: not enough memory to decode it", image.getFilename());
+            return image;
+        }
+    }
+
+    /**
+     * Decodes the image and returns its 224x224 RGB pixels, row by row.
+     *
+     * @throws IOException if the image can't be decoded or has more than max-pixels pixels
+     */
+    public byte[] toModelInput(Resource image) throws IOException, InterruptedException {
+        decodes.acquire();
+        try (InputStream in = image.getInputStream()) {
+            BufferedImage decoded = decode(in);
+            return BicubicResampler.resize(rgb(decoded), decoded.getWidth(), decoded.getHeight(), SIZE, SIZE);
+        } finally {
+            decodes.release();
+        }
+    }
+
+    private BufferedImage decode(InputStream in) throws IOException {
+        try (ImageInputStream stream = new MemoryCacheImageInputStream(in)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+            if (!readers.hasNext()) {
+                throw new IOException("Unsupported image format");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, true, true);
+                // Only the header has been read so far
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > maxPixels) {
+                    throw new IOException("Image is " + width + "x" + height + ", more than " + maxPixels + " pixels");
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (subsample) {
+                    // Keep at least 2x the target size so the resize still averages over pixels
+                    int step = Math.min(width, height) / (SIZE * 2);
+                    if (step > 1) {
+                        param.setSourceSubsampling(step, step, 0, 0);
+                    }
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // Like Pillow's convert("RGB"): grey is replicated, alpha is dropped (not composited)
+    private static byte[] rgb(BufferedImage image) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        long size = (long) width * height * 3;
+        // Only reachable with a max-pixels above ~715M
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IOException("Image is " + width + "x" + height + ", too large to convert");
+        }
+        byte[] rgb = new byte[(int) size];
+
+        Raster raster = image.getRaster();
+        if (image.getColorModel().getColorSpace().getType() == ColorSpace.TYPE_GRAY && raster.getSampleModel().getSampleSize(0) == 8) {
+            // getRGB would apply a gamma curve to grey images; Pillow copies the values
+            int[] row = new int[width];
+            for (int y = 0; y < height; y++) {
+                raster.getSamples(0, y, width, 1, 0, row);
+                for (int x = 0; x < width; x++) {
+                    int i = (y * width + x) * 3;
+                    rgb[i] = rgb[i + 1] = rgb[i + 2] = (byte) row[x];
+                }
+            }
+            return rgb;
+        }
+        if (image.getType() == BufferedImage.TYPE_3BYTE_BGR
+                && ((DataBufferByte) raster.getDataBuffer()).getData().length == rgb.length) {
+            // The usual JPEG case: just swap the bytes round
+            byte[] bgr = ((DataBufferByte) raster.getDataBuffer()).getData();
+            for (int i = 0; i < rgb.length; i += 3) {
+                rgb[i] = bgr[i + 2];
+                rgb[i + 1] = bgr[i + 1];
+                rgb[i + 2] = bgr[i];
+            }
+            return rgb;
+        }
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                int i = (y * width + x) * 3;
+                rgb[i] = (byte) (row[x] >> 16);
+                rgb[i + 1] = (byte) (row[x] >> 8);
+                rgb[i + 2] = (byte) row[x];
+            }
+        }
+        return rgb;
+    }
+
+    private byte[] encodeJpeg(byte[] rgb) throws IOException {
+        BufferedImage image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_3BYTE_BGR);
+        byte[] bgr = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        for (int i = 0; i < rgb.length; i += 3) {
+            bgr[i] = rgb[i + 2];
+            bgr[i + 1] = rgb[i + 1];
+            bgr[i + 2] = rgb[i];
+        }
+
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(32 * 1024);
+        try (MemoryCacheImageOutputStream stream = new MemoryCacheImageOutputStream(out)) {
+            writer.setOutput(stream);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    private static Resource named(byte[] bytes, String name) {
+        return new ByteArrayResource(bytes) {
+            @Override
+            public String getFilename() {
+                return name;
+            }
+        };
+    }
+
+    /**
+     * A preprocessed image as raw RGB bytes; sent with {@link #TENSOR_CONTENT_TYPE}.
+     */
+    public static class Tensor extends ByteArrayResource {
+
+        private final String name;
+
+        public Tensor(byte[] rgb, String name) {
+            super(rgb);
+            this.name = name;
+        }
+
+        @Override
+        public String getFilename() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.cropapp.Service;
+
+import com.cropapp.dto.DiseaseResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed cache of disease detection results.
+ *
+ * Entries are keyed by the SHA-256 of the uploaded image and kept in a
+ * memory-bounded tier, with an optional on-disk tier below it. Everything is
+ * scoped to the disease model version reported by the Python service, so a
+ * retrained model or a changed class_names.json starts from an empty cache.
+ *
+ * Each version gets a model-* directory under disk-dir. The version comes from
+ * a response header, so it is only used as a directory name when it is a
+ * plain token; anything else is stored under its SHA-256. Only model-*
+ * directories are ever purged.
+ */
+@Component
+public class DiseaseResultCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(DiseaseResultCache.class);
+
+    private static final String UNVERSIONED = "unversioned";
+    private static final String VERSION_DIR_PREFIX = "model-";
+    private static final Pattern PLAIN_VERSION = Pattern.compile("[A-Za-z0-9][A-Za-z0-9._-]{0,63}");
+
+    private final Cache<String, DiseaseResponse> memory;
+    private final Path diskDir;
+    private final ObjectMapper objectMapper;
+
+    // Replaced as a whole on every version change
+    private volatile Scope scope = new Scope(0, null, null);
+
+    public DiseaseResultCache(
+            @Value("${ml.cache.disease.max-memory:16MB}") DataSize maxMemory,
+            @Value("${ml.cache.disease.disk-dir:}") String diskDir,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry) {
+        this.objectMapper = objectMapper;
+        this.diskDir = StringUtils.hasText(diskDir) ? Path.of(diskDir) : null;
+        this.memory = Caffeine.newBuilder()
+                .maximumWeight(maxMemory.toBytes())
+                .weigher((String digest, DiseaseResponse response) -> weigh(digest, response))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, memory, "diseaseDetections");
+    }
+
+    /**
+     * SHA-256 of the stream, read in chunks so the image is never held in memory.
+     */
+    public static String sha256(InputStream in) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    public DiseaseResponse get(String digest) {
+        DiseaseResponse response = memory.getIfPresent(digest);
+        if (response == null && diskDir != null) {
+            response = readFromDisk(digest);
+            if (response != null) {
+                memory.put(digest, response);
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Taken when a detection starts and handed back to {@link #put}, so that a
+     * result from a model that was replaced while the call ran is not stored
+     * under the new one.
+     */
+    public long generation() {
+        return scope.generation();
+    }
+
+    public void put(String digest, DiseaseResponse response, long generation) {
+        // Errors from the model server must not stick
+        if (response == null || response.getError() != null || response.getDisease() == null) {
+            return;
+        }
+        Scope current = scope;
+        if (current.generation() != generation) {
+            return;
+        }
+        memory.put(digest, response);
+        if (scope != current) {
+            // The version changed in between and may have cleared the memory tier before our put
+            memory.invalidate(digest);
+            return;
+        }
+        if (current.dir() != null) {
+            writeToDisk(current.dir(), digest, response);
+        }
+    }
+
+    /**
+     * Called with the version the model server reports. A change drops both tiers.
+     */
+    public synchronized void onModelVersion(String version) {
+        String next = StringUtils.hasText(version) ? version : UNVERSIONED;
+        Scope previous = scope;
+        if (next.equals(previous.version())) {
+            return;
+        }
+        Scope current = new Scope(previous.generation() + 1, next, versionDir(next));
+        scope = current;
+        if (previous.version() != null) {
+            logger.info("Disease model version changed {} -> {}, clearing result cache", previous.version(), next);
+            memory.invalidateAll();
+        }
+        purgeOtherVersionsOnDisk(current.dir());
+    }
+
+    // Entries are only trusted once we know which model produced them
+    private Path versionDir(String version) {
+        if (diskDir == null) {
+            return null;
+        }
+        if (PLAIN_VERSION.matcher(version).matches()) {
+            return diskDir.resolve(VERSION_DIR_PREFIX + version);
+        }
+        logger.warn("Disease model version is not a plain token, caching it under its SHA-256");
+        try {
+            return diskDir.resolve(VERSION_DIR_PREFIX + sha256(new ByteArrayInputStream(version.getBytes(StandardCharsets.UTF_8))));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private DiseaseResponse readFromDisk(String digest) {
+        Path dir = scope.dir();
+        Path file = dir != null ? dir.resolve(digest + ".json") : null;
+        if (file == null || !Files.exists(file)) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(file.toFile(), DiseaseResponse.class);
+        } catch (IOException e) {
+            logger.warn("Dropping unreadable disease cache entry {}: {}", file, e.getMessage());
+            deleteQuietly(file);
+            return null;
+        }
+    }
+
+    private void writeToDisk(Path dir, String digest, DiseaseResponse response) {
+        Path file = dir.resolve(digest + ".json");
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmp = Files.createTempFile(file.getParent(), digest, ".tmp");
+            objectMapper.writeValue(tmp.toFile(), response);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Could not write disease cache entry {}: {}", file, e.getMessage());
+        }
+    }
+
+    // Only the directories this cache creates; anything else in disk-dir is left alone
+    private void purgeOtherVersionsOnDisk(Path keep) {
+        if (diskDir == null || !Files.isDirectory(diskDir)) {
+            return;
+        }
+        try (Stream<Path> versions = Files.list(diskDir)) {
+            versions.filter(dir -> dir.getFileName().toString().startsWith(VERSION_DIR_PREFIX))
+                    .filter(dir -> Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS))
+                    .filter(dir -> !dir.equals(keep))
+                    .forEach(DiseaseResultCache::deleteRecursively);
+        } catch (IOException e) {
+            logger.warn("Could not purge old disease cache versions: {}", e.getMessage());
+        }
+    }
+
+    private static void deleteRecursively(Path dir) {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted((a, b) -> b.getNameCount() - a.getNameCount())
+                    .forEach(DiseaseResultCache::deleteQuietly);
+        } catch (IOException e) {
+            logger.warn("Could not delete {}: {}", dir, e.getMessage());
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+            // Left for the next purge
+        }
+    }
+
+    // Rough heap footprint: key + two short strings + object headers
+    private static int weigh(String digest, DiseaseResponse response) {
+        int chars = digest.length()
+                + length(response.getDisease())
+                + length(response.getConfidence());
+        return 96 + chars * 2;
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    private record Scope(long generation, String version, Path dir) {
+    }
+}
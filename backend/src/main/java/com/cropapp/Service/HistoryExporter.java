@@ -0,0 +1,204 @@
+package com.cropapp.Service;
+
+import com.cropapp.dto.HistoryItem;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams a user's prediction history straight from a forward-only JDBC cursor
+ * to an output stream as NDJSON or CSV.
+ *
+ * Rows are read fetch-size at a time and written as they arrive; nothing is
+ * collected in memory, so a ten-million-row export needs the same heap as a
+ * hundred-row one.
+ *
+ * MySQL only honours the fetch size with useCursorFetch=true, a connection
+ * property that would turn every other query into a server-side cursor as
+ * well. So on MySQL exports get a small pool of their own with it set, at most
+ * history.export.max-connections wide; the application's pool is left alone.
+ */
+@Component
+public class HistoryExporter implements DisposableBean {
+
+    public enum Format { NDJSON, CSV }
+
+    private static final String EXPORT_SQL =
+            "SELECT id, type, input_details, result, timestamp FROM prediction_history "
+                    + "WHERE user_id = ? ORDER BY timestamp DESC, id DESC";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    // Only on MySQL; otherwise exports use the application's DataSource
+    private final HikariDataSource cursorPool;
+
+    @Autowired
+    public HistoryExporter(DataSource dataSource, DataSourceProperties dataSourceProperties, ObjectMapper objectMapper,
+                           @Value("${history.export.fetch-size:500}") int fetchSize,
+                           @Value("${history.export.max-connections:4}") int maxConnections) {
+        this(dataSource, cursorPool(dataSourceProperties, maxConnections), objectMapper, fetchSize);
+    }
+
+    public HistoryExporter(DataSource dataSource, ObjectMapper objectMapper, int fetchSize) {
+        this(dataSource, null, objectMapper, fetchSize);
+    }
+
+    private HistoryExporter(DataSource dataSource, HikariDataSource cursorPool, ObjectMapper objectMapper, int fetchSize) {
+        this.cursorPool = cursorPool;
+        // Own template: the fetch size should not apply to every other query
+        this.jdbcTemplate = new JdbcTemplate(cursorPool != null ? cursorPool : dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        this.objectMapper = objectMapper;
+    }
+
+    // Connects lazily, so an idle export pool costs nothing
+    private static HikariDataSource cursorPool(DataSourceProperties properties, int maxConnections) {
+        String url = properties.getUrl();
+        if (url == null || !url.startsWith("jdbc:mysql:")) {
+            return null;
+        }
+        HikariDataSource pool = properties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .url(url + (url.contains("?") ? "&" : "?") + "useCursorFetch=true")
+                .build();
+        pool.setPoolName("history-export");
+        pool.setMaximumPoolSize(maxConnections);
+        pool.setMinimumIdle(0);
+        pool.setReadOnly(true);
+        return pool;
+    }
+
+    @Override
+    public void destroy() {
+        if (cursorPool != null) {
+            cursorPool.close();
+        }
+    }
+
+    /**
+     * Writes every history row of the user to out, newest first. Closes out when done.
+     */
+    public void export(Long userId, Format format, boolean gzip, OutputStream out) throws IOException {
+        OutputStream target = gzip ? new GZIPOutputStream(out, 64 * 1024) : out;
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(target, StandardCharsets.UTF_8), 64 * 1024)) {
+            RowWriter rows = format == Format.CSV ? new CsvRows(writer) : new NdjsonRows(writer);
+            rows.header();
+            HistoryItem item = new HistoryItem();
+            jdbcTemplate.query(EXPORT_SQL, rs -> {
+                read(rs, item);
+                try {
+                    rows.write(item);
+                } catch (IOException e) {
+                    // Usually the client went away; stop reading the cursor
+                    throw new UncheckedIOException(e);
+                }
+            }, userId);
+            rows.finish();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // Reuses one item for every row, so the export allocates nothing per row beyond the column values
+    private static void read(ResultSet rs, HistoryItem item) throws SQLException {
+        item.setId(rs.getLong(1));
+        item.setType(rs.getString(2));
+        item.setInputDetails(rs.getString(3));
+        item.setResult(rs.getString(4));
+        Timestamp timestamp = rs.getTimestamp(5);
+        item.setTimestamp(timestamp != null ? timestamp.toLocalDateTime() : null);
+    }
+
+    private interface RowWriter {
+        default void header() throws IOException {
+        }
+
+        void write(HistoryItem item) throws IOException;
+
+        default void finish() throws IOException {
+        }
+    }
+
+    private final class NdjsonRows implements RowWriter {
+
+        private final Writer writer;
+        private final JsonGenerator generator;
+
+        NdjsonRows(Writer writer) throws IOException {
+            this.writer = writer;
+            this.generator = objectMapper.getFactory().createGenerator(writer);
+            // We write the newlines; Jackson would put a space before every value after the first
+            this.generator.setRootValueSeparator(null);
+        }
+
+        @Override
+        public void write(HistoryItem item) throws IOException {
+            objectMapper.writeValue(generator, item);
+            generator.flush();
+            writer.write('\n');
+        }
+    }
+
+    private static final class CsvRows implements RowWriter {
+
+        private final Writer writer;
+
+        CsvRows(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void header() throws IOException {
+            writer.write("id,type,inputDetails,result,timestamp\r\n");
+        }
+
+        @Override
+        public void write(HistoryItem item) throws IOException {
+            writer.write(String.valueOf(item.getId()));
+            writer.write(',');
+            field(item.getType());
+            writer.write(',');
+            field(item.getInputDetails());
+            writer.write(',');
+            field(item.getResult());
+            writer.write(',');
+            field(item.getTimestamp() != null ? item.getTimestamp().toString() : null);
+            writer.write("\r\n");
+        }
+
+        // RFC 4180: quote fields containing separators, quotes or line breaks
+        private void field(String value) throws IOException {
+            if (value == null) {
+                return;
+            }
+            boolean quote = value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                    || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+            if (!quote) {
+                writer.write(value);
+                return;
+            }
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        }
+    }
+}
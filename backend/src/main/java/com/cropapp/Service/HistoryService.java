@@ -1,55 +1,192 @@
  package com.cropapp.Service;
 
-import com.cropapp.model.PredictionHistory;
-import com.cropapp.model.User;
+import com.cropapp.dto.AnalysisResponse;
+import com.cropapp.dto.CropRequest;
+import com.cropapp.dto.CropResponse;
+import com.cropapp.dto.DiseaseBatchResult;
+import com.cropapp.dto.DiseaseResponse;
+import com.cropapp.dto.HistoryItem;
+import com.cropapp.dto.HistoryPage;
+import com.cropapp.dto.HistorySync;
+import com.cropapp.dto.HistorySyncItem;
 import com.cropapp.repository.HistoryRepository;
-import com.cropapp.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.Base64;
 import java.util.List;
+import java.util.StringJoiner;
 
 @Service
 public class HistoryService {
 
+    public static final int MAX_PAGE_SIZE = 100;
+    public static final int MAX_SYNC_SIZE = 500;
+
     @Autowired
     private HistoryRepository historyRepository;
 
     @Autowired
-    private UserRepository userRepository;
-
-    // ✅ UPDATED: Now accepts 'username' as an argument. 
-    // This is much more reliable than trying to fetch it from SecurityContext inside the service.
-    public void saveHistory(String username, String type, String input, String result) {
-        
-        // 1. Find User by Username (Email)
-        // We use the username passed from the Controller
-        User user = userRepository.findByEmail(username)
-                .orElseThrow(() -> new RuntimeException("User not found with email: " + username));
-
-        // 2. Build and Save History
-        if (user != null) {
-            PredictionHistory history = PredictionHistory.builder()
-                    .user(user)
-                    .type(type) // "CROP" or "DISEASE"
-                    .inputDetails(input)
-                    .result(result)
-                    .timestamp(LocalDateTime.now())
-                    .build();
-            
-            historyRepository.save(history);
-            System.out.println("Saved history for user: " + username);
+    private HistoryWriter historyWriter;
+
+    // Takes the user id from the authenticated principal. The row is written in the
+    // background by HistoryWriter, so this never waits on the database.
+    public void saveHistory(Long userId, String type, String input, String result) {
+        historyWriter.enqueue(new HistoryWriter.Entry(userId, type, input, result, LocalDateTime.now()));
+    }
+
+    // How requests and their answers are summarised in history, for single and batch requests alike
+    public static String cropInputSummary(CropRequest request) {
+        return String.format("N:%d P:%d K:%d pH:%.1f", request.getN(), request.getP(), request.getK(), request.getPh());
+    }
+
+    public static String cropResultSummary(CropResponse response) {
+        return response.getTop_crops() == null || response.getTop_crops().isEmpty()
+                ? "No Result" : response.getTop_crops().get(0).getCrop();
+    }
+
+    public static String diseaseInputSummary(String fileName) {
+        return "Image: " + fileName;
+    }
+
+    public static String diseaseResultSummary(DiseaseResponse response) {
+        return response.getDisease() + " (" + response.getConfidence() + ")";
+    }
+
+    // A field analysis is one record: the readings plus every image, and whatever came back for each
+    public static String analysisInputSummary(CropRequest request, List<String> fileNames) {
+        String input = cropInputSummary(request);
+        return fileNames.isEmpty() ? input : fitColumn(input + " | Images: " + String.join(", ", fileNames));
+    }
+
+    public static String analysisResultSummary(AnalysisResponse response) {
+        StringJoiner result = new StringJoiner(" | ");
+        result.add(response.getCrop_error() != null ? "Crop: " + response.getCrop_error()
+                : response.getTop_crops() == null || response.getTop_crops().isEmpty()
+                ? "Crop: No Result" : "Crop: " + response.getTop_crops().get(0).getCrop());
+        for (DiseaseBatchResult disease : response.getDiseases()) {
+            result.add(disease.getFile() + ": " + (disease.getError() != null ? disease.getError()
+                    : disease.getDisease() + " (" + disease.getConfidence() + ")"));
+        }
+        return fitColumn(result.toString());
+    }
+
+    // inputDetails and result are 1000 characters wide
+    private static String fitColumn(String summary) {
+        return summary.length() <= 1000 ? summary : summary.substring(0, 997) + "...";
+    }
+
+    // Helper to fetch history for a specific user (id from the authenticated principal)
+    public List<HistoryItem> getUserHistory(Long userId) {
+        return historyRepository.findItemsByUserId(userId, Limit.unlimited());
+    }
+
+    /**
+     * One keyset page, newest first. Each page is an index range scan from the
+     * cursor, so page 1000 costs the same as page 1.
+     *
+     * @param cursor nextCursor from the previous page, or null for the first page
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public HistoryPage getUserHistoryPage(Long userId, String cursor, int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        // One extra row tells us whether there is a next page
+        Limit limit = Limit.of(pageSize + 1);
+
+        List<HistoryItem> items;
+        if (cursor == null || cursor.isBlank()) {
+            items = historyRepository.findItemsByUserId(userId, limit);
+        } else {
+            HistoryItem after = decodeCursor(cursor);
+            items = historyRepository.findItemsByUserIdAfter(userId, after.getTimestamp(), after.getId(), limit);
+        }
+
+        if (items.size() <= pageSize) {
+            return new HistoryPage(items, null);
+        }
+        items = items.subList(0, pageSize);
+        return new HistoryPage(items, encodeCursor(items.get(pageSize - 1)));
+    }
+
+    // Newest history id of the user, 0 if there is none; one index lookup, returned once the
+    // history writes open at the time have finished, so that no lower id can still commit after it
+    public long getLatestHistoryId(Long userId) {
+        return historyWriter.settled(() -> historyRepository.findLatestIdByUserId(userId));
+    }
+
+    /**
+     * Strong ETag of the delta from the sync token up to latestId. It only changes
+     * when the user gets new history, so an unchanged history can be answered
+     * with 304 without loading any rows.
+     *
+     * @throws IllegalArgumentException if the sync token is malformed
+     */
+    public String getSyncETag(String syncToken, long latestId) {
+        return "\"" + decodeSyncToken(syncToken) + "-" + latestId + "\"";
+    }
+
+    /**
+     * History added after the sync token and up to latestId, oldest first and at
+     * most MAX_SYNC_SIZE rows per call. History is append-only and latestId comes
+     * from {@link #getLatestHistoryId}, below which every id has committed, so the
+     * highest id a client has seen is all the state a sync needs.
+     *
+     * @param syncToken syncToken from the previous sync, or null for everything
+     * @param latestId  upper bound, so the body matches the ETag computed for it
+     * @throws IllegalArgumentException if the sync token is malformed
+     */
+    public HistorySync getUserHistorySince(Long userId, String syncToken, long latestId) {
+        long sinceId = decodeSyncToken(syncToken);
+        List<HistorySyncItem> items = sinceId >= latestId ? List.of()
+                : historyRepository.findSyncItemsByUserIdBetween(userId, sinceId, latestId, Limit.of(MAX_SYNC_SIZE + 1));
+
+        boolean more = items.size() > MAX_SYNC_SIZE;
+        if (more) {
+            items = items.subList(0, MAX_SYNC_SIZE);
+        }
+        long lastId = items.isEmpty() ? sinceId : items.get(items.size() - 1).getId();
+        return new HistorySync(items, encodeSyncToken(lastId), more);
+    }
+
+    // Opaque to clients: base64url of the highest history id already synced
+    static String encodeSyncToken(long lastId) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(Long.toString(lastId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    static long decodeSyncToken(String syncToken) {
+        if (syncToken == null || syncToken.isBlank()) {
+            return 0;
+        }
+        try {
+            long lastId = Long.parseLong(new String(Base64.getUrlDecoder().decode(syncToken), StandardCharsets.UTF_8));
+            if (lastId < 0) {
+                throw new IllegalArgumentException("Negative sync position");
+            }
+            return lastId;
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid sync token", e);
         }
     }
 
-    // ✅ UPDATED: Helper to fetch history for a specific user (passed from Controller)
-    public List<PredictionHistory> getUserHistory(String username) {
-        User user = userRepository.findByEmail(username).orElse(null);
-        
-        if (user != null) {
-            return historyRepository.findByUserIdOrderByTimestampDesc(user.getId());
+    // Opaque to clients: base64url of "<timestamp>|<id>" of the last row served
+    static String encodeCursor(HistoryItem last) {
+        String raw = last.getTimestamp() + "|" + last.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static HistoryItem decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf('|');
+            HistoryItem position = new HistoryItem();
+            position.setTimestamp(LocalDateTime.parse(raw.substring(0, separator)));
+            position.setId(Long.parseLong(raw.substring(separator + 1)));
+            return position;
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid history cursor", e);
         }
-        return List.of(); // Return empty list if user not found
     }
 }
\ No newline at end of file
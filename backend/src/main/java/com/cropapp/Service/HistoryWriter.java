@@ -0,0 +1,239 @@
+package com.cropapp.Service;
+
+import com.cropapp.util.HistoryWriteEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Write-behind persistence for prediction history.
+ *
+ * Requests only enqueue an {@link Entry}; a background thread drains the queue
+ * and inserts everything waiting (up to batch-size rows) in one JDBC batch, so
+ * batches grow with load and no request ever waits on the database. If the
+ * queue is full the caller writes its own entry synchronously rather than
+ * losing it. Whatever is still queued is flushed on shutdown.
+ *
+ * Every write transaction holds a ticket while it is open, so {@link #settled}
+ * can wait for the ones that were open when it read; that is what keeps delta
+ * sync from skipping a row whose id was taken before, but committed after, a
+ * higher one. Neither side blocks the other's new work.
+ *
+ * Published as history.write.queue_depth, history.write.batch_size,
+ * history.write.flush (batch insert latency), history.write.overflow and
+ * history.write.failed. Each batch is also a com.cropapp.HistoryWrite JFR event.
+ */
+@Component
+public class HistoryWriter implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(HistoryWriter.class);
+
+    private static final String INSERT_SQL =
+            "INSERT INTO prediction_history (user_id, type, input_details, result, timestamp) VALUES (?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transaction;
+    private final int batchSize;
+    private final BlockingQueue<Entry> queue;
+    private final Thread writer;
+    // Tickets of the write transactions still open, in start order; also the monitor settled() waits on
+    private final TreeSet<Long> openWrites = new TreeSet<>();
+    private long lastTicket;
+
+    private final DistributionSummary batchSizes;
+    private final Timer flushTimer;
+    private final Counter overflow;
+    private final Counter failed;
+
+    private volatile boolean running = true;
+
+    public HistoryWriter(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                         @Value("${history.write.queue-capacity:10000}") int queueCapacity,
+                         @Value("${history.write.batch-size:100}") int batchSize,
+                         MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        this.batchSizes = DistributionSummary.builder("history.write.batch_size").register(meterRegistry);
+        this.flushTimer = Timer.builder("history.write.flush").register(meterRegistry);
+        this.overflow = Counter.builder("history.write.overflow").register(meterRegistry);
+        this.failed = Counter.builder("history.write.failed").register(meterRegistry);
+        meterRegistry.gauge("history.write.queue_depth", queue, BlockingQueue::size);
+
+        this.writer = new Thread(this::writeLoop, "history-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public void enqueue(Entry entry) {
+        if (running && queue.offer(entry)) {
+            return;
+        }
+        // Back-pressure instead of data loss: this caller pays for its own insert
+        overflow.increment();
+        write(List.of(entry));
+    }
+
+    /**
+     * Writes the entries right away in JDBC batches of batch-size rows, bypassing
+     * the queue. For bulk jobs, which would otherwise fill the queue and push
+     * every interactive request into overflow.
+     */
+    public void writeAll(List<Entry> entries) {
+        for (int from = 0; from < entries.size(); from += batchSize) {
+            write(entries.subList(from, Math.min(from + batchSize, entries.size())));
+        }
+    }
+
+    /**
+     * Runs the read, then waits until every write transaction that was open at
+     * that point has finished. IDENTITY ids are taken at insert but only become
+     * visible at commit, so a batch can commit id 11 while the one holding id 10
+     * is still open; such a batch was open when the read saw 11, so once it is
+     * done every id below the one returned has committed or rolled back.
+     *
+     * Writes started afterwards are not waited for and nothing is blocked, so the
+     * wait is at most the longest write transaction already in flight. Only
+     * writes made through this writer, in this process, are covered.
+     */
+    public long settled(LongSupplier read) {
+        long value = read.getAsLong();
+        synchronized (openWrites) {
+            long seen = lastTicket;
+            try {
+                while (!openWrites.isEmpty() && openWrites.first() <= seen) {
+                    openWrites.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for history writes to commit", e);
+            }
+        }
+        return value;
+    }
+
+    private long open() {
+        synchronized (openWrites) {
+            openWrites.add(++lastTicket);
+            return lastTicket;
+        }
+    }
+
+    private void close(long ticket) {
+        synchronized (openWrites) {
+            openWrites.remove(ticket);
+            openWrites.notifyAll();
+        }
+    }
+
+    private void writeLoop() {
+        List<Entry> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Entry first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                logger.error("History writer failed", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<Entry> batch) {
+        long start = System.nanoTime();
+        HistoryWriteEvent event = new HistoryWriteEvent();
+        event.begin();
+        try {
+            // One transaction, so a failed batch leaves nothing behind and can be retried row by row
+            // Taken before the insert takes its ids
+            long ticket = open();
+            try {
+                transaction.executeWithoutResult(status ->
+                        jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (ps, entry) -> {
+                            ps.setLong(1, entry.userId());
+                            ps.setString(2, entry.type());
+                            ps.setString(3, entry.inputDetails());
+                            ps.setString(4, entry.result());
+                            ps.setTimestamp(5, Timestamp.valueOf(entry.timestamp()));
+                        }));
+            } finally {
+                close(ticket);
+            }
+            batchSizes.record(batch.size());
+            event.succeeded = true;
+        } catch (DataAccessException | TransactionException e) {
+            if (batch.size() == 1) {
+                failed.increment();
+                logger.error("Could not save history entry for user {}", batch.get(0).userId(), e);
+            } else {
+                // One bad row (e.g. a deleted user) fails a multi-row INSERT; save the rest one by one
+                for (Entry entry : batch) {
+                    write(List.of(entry));
+                }
+            }
+        } finally {
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            event.rows = batch.size();
+            event.commit();
+        }
+    }
+
+    /**
+     * Stops accepting entries and waits for everything queued to be written.
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(30));
+        if (writer.isAlive()) {
+            writer.interrupt();
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        if (writer.isAlive()) {
+            // Still inside a write; draining now could save the same entries twice
+            logger.error("History writer did not stop; {} queued entries were not saved", queue.size());
+            return;
+        }
+        // Only left over if the writer died or was interrupted
+        List<Entry> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        if (!rest.isEmpty()) {
+            write(rest);
+        }
+    }
+
+    public record Entry(Long userId, String type, String inputDetails, String result, LocalDateTime timestamp) {
+    }
+}
@@ -0,0 +1,120 @@
+package com.cropapp.Service;
+
+import com.cropapp.dto.CropRequest;
+import com.cropapp.dto.CropResponse;
+import com.cropapp.util.RandomForestModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the crop RandomForest inside the JVM instead of calling Flask's /predict.
+ *
+ * Enabled with ml.crop.engine=local; the forest is exported from crop_model.pkl
+ * by ml-api/export_forest.py. Scoring works on per-thread scratch arrays, so the
+ * only allocations per request are the response objects themselves.
+ */
+@Component
+public class LocalCropEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalCropEngine.class);
+
+    private static final int TOP_N = 3;
+
+    private final RandomForestModel model;
+    private final ThreadLocal<Scratch> scratch;
+
+    public LocalCropEngine(@Value("${ml.crop.engine:remote}") String engine,
+                           @Value("${ml.crop.forest-path:../ml-api/crop_forest.bin}") String forestPath) throws IOException {
+        if (!"local".equalsIgnoreCase(engine)) {
+            this.model = null;
+            this.scratch = null;
+            return;
+        }
+        try (InputStream in = Files.newInputStream(Path.of(forestPath))) {
+            this.model = RandomForestModel.read(in);
+        }
+        if (model.featureCount() != 7) {
+            throw new IllegalStateException("Crop forest expects " + model.featureCount() + " features, not 7");
+        }
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(model.featureCount(), model.classCount()));
+        logger.info("Loaded crop forest from {} ({} trees, {} crops)", forestPath, model.treeCount(), model.classCount());
+    }
+
+    public boolean isEnabled() {
+        return model != null;
+    }
+
+    public CropResponse recommend(CropRequest request) {
+        Scratch s = scratch.get();
+        double[] x = s.features;
+        // Same column order as train_model.py
+        x[0] = request.getN();
+        x[1] = request.getP();
+        x[2] = request.getK();
+        x[3] = request.getTemperature();
+        x[4] = request.getHumidity();
+        x[5] = request.getPh();
+        x[6] = request.getRainfall();
+
+        double[] proba = s.proba;
+        model.predictProba(x, proba);
+        int[] top = s.top;
+        int found = topIndexes(proba, model.classCount(), top);
+
+        List<CropResponse.Recommendation> crops = new ArrayList<>(found);
+        for (int i = 0; i < found; i++) {
+            CropResponse.Recommendation recommendation = new CropResponse.Recommendation();
+            recommendation.setCrop(model.className(top[i]));
+            recommendation.setConfidence(formatConfidence(proba[top[i]]));
+            crops.add(recommendation);
+        }
+        CropResponse response = new CropResponse();
+        response.setTop_crops(crops);
+        return response;
+    }
+
+    // Highest first; ties keep class order, like Python's stable sort in app.py
+    static int topIndexes(double[] proba, int classCount, int[] top) {
+        int found = 0;
+        for (int c = 0; c < classCount; c++) {
+            int pos = found < top.length ? found : top.length;
+            while (pos > 0 && proba[c] > proba[top[pos - 1]]) {
+                pos--;
+            }
+            if (pos < top.length) {
+                int end = Math.min(found, top.length - 1);
+                System.arraycopy(top, pos, top, pos + 1, end - pos);
+                top[pos] = c;
+                found = Math.min(found + 1, top.length);
+            }
+        }
+        return found;
+    }
+
+    // Matches Python's f"{score * 100:.2f}%" (exact value, round half to even)
+    static String formatConfidence(double score) {
+        return new BigDecimal(score * 100).setScale(2, RoundingMode.HALF_EVEN).toPlainString() + "%";
+    }
+
+    private static final class Scratch {
+        final double[] features;
+        final double[] proba;
+        final int[] top = new int[TOP_N];
+
+        Scratch(int featureCount, int classCount) {
+            this.features = new double[featureCount];
+            this.proba = new double[classCount];
+        }
+    }
+}
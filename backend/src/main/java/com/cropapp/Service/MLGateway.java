@@ -0,0 +1,427 @@
+package com.cropapp.Service;
+
+import com.cropapp.dto.CropBatchResponse;
+import com.cropapp.dto.CropRequest;
+import com.cropapp.dto.CropResponse;
+import com.cropapp.dto.DiseaseBatchResponse;
+import com.cropapp.dto.DiseaseResponse;
+import com.cropapp.util.LatencyWindow;
+import com.cropapp.util.ReplicaBalancer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.hc.client5.http.classic.ExecChain;
+import org.apache.hc.client5.http.classic.ExecChainHandler;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.concurrent.Cancellable;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.util.TimeValue;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * HTTP client for the Python model server replicas (ml-api/app.py).
+ *
+ * Crop and disease endpoints each get their own pooled, keep-alive connection
+ * manager and their own connect/read/total timeouts, so a slow TensorFlow call
+ * can neither hold a Tomcat thread indefinitely nor use up the crop endpoint's
+ * connections. Pool usage is published as httpcomponents.httpclient.pool.*
+ * metrics (httpclient=ml-api-crop / ml-api-disease).
+ *
+ * Each call goes to the replica picked by {@link ReplicaBalancer}. Single-item
+ * predictions can be hedged: if no answer has arrived after the endpoint's recent
+ * p95 latency, the same request is sent to a second replica and whichever
+ * succeeds first wins. Batch calls are never hedged.
+ */
+@Component
+public class MLGateway implements DisposableBean {
+
+    private static final String TOTAL_TIMEOUT = MLGateway.class.getName() + ".totalTimeout";
+
+    private final ReplicaBalancer replicas;
+    private final ScheduledThreadPoolExecutor deadlines;
+
+    private final Endpoint crop;
+    private final Endpoint disease;
+
+    // Runs the hedged copies; null unless hedging is enabled for an endpoint
+    private final ThreadPoolExecutor hedgeExecutor;
+    private final double hedgePercentile;
+    private final Duration hedgeMinDelay;
+
+    public MLGateway(@Value("${ml.api.base-urls:${ml.api.base-url:http://127.0.0.1:5000}}") List<String> baseUrls,
+                     @Value("${ml.api.pool.acquire-timeout:500ms}") Duration acquireTimeout,
+                     @Value("${ml.api.pool.keep-alive:30s}") Duration keepAlive,
+                     @Value("${ml.api.pool.idle-eviction:60s}") Duration idleEviction,
+                     @Value("${ml.api.crop.pool.max-total:50}") int cropMaxTotal,
+                     @Value("${ml.api.crop.pool.max-per-route:25}") int cropMaxPerRoute,
+                     @Value("${ml.api.crop.connect-timeout:1s}") Duration cropConnectTimeout,
+                     @Value("${ml.api.crop.read-timeout:2s}") Duration cropReadTimeout,
+                     @Value("${ml.api.crop.total-timeout:3s}") Duration cropTotalTimeout,
+                     @Value("${ml.api.disease.pool.max-total:20}") int diseaseMaxTotal,
+                     @Value("${ml.api.disease.pool.max-per-route:10}") int diseaseMaxPerRoute,
+                     @Value("${ml.api.disease.connect-timeout:1s}") Duration diseaseConnectTimeout,
+                     @Value("${ml.api.disease.read-timeout:15s}") Duration diseaseReadTimeout,
+                     @Value("${ml.api.disease.total-timeout:20s}") Duration diseaseTotalTimeout,
+                     @Value("${ml.api.crop.hedge:false}") boolean cropHedge,
+                     @Value("${ml.api.disease.hedge:false}") boolean diseaseHedge,
+                     @Value("${ml.api.hedge.percentile:0.95}") double hedgePercentile,
+                     @Value("${ml.api.hedge.min-delay:50ms}") Duration hedgeMinDelay,
+                     MeterRegistry meterRegistry) {
+        this.replicas = new ReplicaBalancer(baseUrls, meterRegistry);
+        this.hedgePercentile = hedgePercentile;
+        this.hedgeMinDelay = hedgeMinDelay;
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("ml-api-deadline-");
+        threadFactory.setDaemon(true);
+        this.deadlines = new ScheduledThreadPoolExecutor(1, threadFactory);
+        this.deadlines.setRemoveOnCancelPolicy(true);
+
+        this.crop = new Endpoint("crop", cropHedge,
+                connectionManager("crop", cropMaxTotal, cropMaxPerRoute, keepAlive, meterRegistry),
+                keepAlive, idleEviction, acquireTimeout, cropConnectTimeout, cropReadTimeout, cropTotalTimeout,
+                meterRegistry);
+        this.disease = new Endpoint("disease", diseaseHedge,
+                connectionManager("disease", diseaseMaxTotal, diseaseMaxPerRoute, keepAlive, meterRegistry),
+                keepAlive, idleEviction, acquireTimeout, diseaseConnectTimeout, diseaseReadTimeout, diseaseTotalTimeout,
+                meterRegistry);
+
+        if ((cropHedge || diseaseHedge) && replicas.size() > 1) {
+            CustomizableThreadFactory hedgeThreads = new CustomizableThreadFactory("ml-api-hedge-");
+            hedgeThreads.setDaemon(true);
+            this.hedgeExecutor = new ThreadPoolExecutor(0, cropMaxTotal + diseaseMaxTotal, 60, TimeUnit.SECONDS,
+                    new SynchronousQueue<>(), hedgeThreads);
+        } else {
+            this.hedgeExecutor = null;
+        }
+    }
+
+    public CropResponse predictCrop(CropRequest request) {
+        return hedged(crop, base -> crop.client.postForObject(base + "/predict", request, CropResponse.class));
+    }
+
+    public List<CropResponse> predictCropBatch(List<CropRequest> requests) {
+        CropBatchResponse response = onReplica(crop, replicas.acquire(null),
+                base -> crop.client.postForObject(base + "/predict_batch", requests, CropBatchResponse.class));
+        return response != null ? response.getResults() : null;
+    }
+
+    public ResponseEntity<DiseaseResponse> predictDisease(Resource image) {
+        HttpEntity<MultiValueMap<String, Object>> request = imageUpload("file", List.of(image));
+        return hedged(disease, base -> disease.client.postForEntity(base + "/predict_disease", request, DiseaseResponse.class));
+    }
+
+    public ResponseEntity<DiseaseBatchResponse> predictDiseaseBatch(List<Resource> images) {
+        HttpEntity<MultiValueMap<String, Object>> request = imageUpload("files", images);
+        return onReplica(disease, replicas.acquire(null),
+                base -> disease.client.postForEntity(base + "/predict_disease_batch", request, DiseaseBatchResponse.class));
+    }
+
+    public Map<?, ?> modelInfo() {
+        return onReplica(crop, replicas.acquire(null), base -> crop.client.getForObject(base + "/model_info", Map.class));
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        if (hedgeExecutor != null) {
+            hedgeExecutor.shutdownNow();
+        }
+        deadlines.shutdownNow();
+        crop.httpClient.close();
+        disease.httpClient.close();
+    }
+
+    private <T> T hedged(Endpoint endpoint, Function<String, T> call) {
+        if (!endpoint.hedge || hedgeExecutor == null) {
+            return onReplica(endpoint, replicas.acquire(null), call);
+        }
+        // No hedging until there is enough history to know what "slow" means
+        long delayNanos = endpoint.latencies.percentile(hedgePercentile, 20);
+        if (delayNanos < 0) {
+            return onReplica(endpoint, replicas.acquire(null), call);
+        }
+        delayNanos = Math.max(delayNanos, hedgeMinDelay.toNanos());
+
+        ReplicaBalancer.Replica primary = replicas.acquire(null);
+        Attempt firstAttempt = new Attempt();
+        CompletableFuture<T> first;
+        try {
+            first = CompletableFuture.supplyAsync(() -> firstAttempt.run(() -> onReplica(endpoint, primary, call)), hedgeExecutor);
+        } catch (RejectedExecutionException saturated) {
+            return onReplica(endpoint, primary, call);
+        }
+        try {
+            return first.get(delayNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException slow) {
+            // fall through and hedge
+        } catch (ExecutionException ex) {
+            throw propagate(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for ML call", ex);
+        }
+
+        ReplicaBalancer.Replica secondary = replicas.acquire(primary);
+        Attempt secondAttempt = new Attempt();
+        CompletableFuture<T> second;
+        try {
+            second = CompletableFuture.supplyAsync(() -> secondAttempt.run(() -> onReplica(endpoint, secondary, call)), hedgeExecutor);
+        } catch (RejectedExecutionException saturated) {
+            secondary.release();
+            return await(first);
+        }
+        endpoint.hedgesSent.increment();
+
+        // First success wins and aborts the other copy; fail only once both copies have failed
+        CompletableFuture<T> winner = new CompletableFuture<>();
+        first.whenComplete((value, error) -> {
+            if (error == null) {
+                if (winner.complete(value)) {
+                    secondAttempt.cancel();
+                }
+            } else if (second.isCompletedExceptionally()) {
+                winner.completeExceptionally(error);
+            }
+        });
+        second.whenComplete((value, error) -> {
+            if (error == null) {
+                if (winner.complete(value)) {
+                    endpoint.hedgesWon.increment();
+                    firstAttempt.cancel();
+                }
+            } else if (first.isCompletedExceptionally()) {
+                winner.completeExceptionally(error);
+            }
+        });
+        return await(winner);
+    }
+
+    private <T> T onReplica(Endpoint endpoint, ReplicaBalancer.Replica replica, Function<String, T> call) {
+        long start = System.nanoTime();
+        try {
+            T result = call.apply(replica.baseUrl());
+            endpoint.latencies.record(System.nanoTime() - start);
+            return result;
+        } finally {
+            replica.release();
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            throw propagate(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for ML call", ex);
+        }
+    }
+
+    private static RuntimeException propagate(Throwable cause) {
+        if (cause instanceof ExecutionException || cause instanceof CompletionException) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof RuntimeException runtime) {
+            return runtime;
+        }
+        if (cause instanceof Error error) {
+            throw error;
+        }
+        return new IllegalStateException(cause);
+    }
+
+    private static PoolingHttpClientConnectionManager connectionManager(String name, int maxTotal, int maxPerRoute,
+                                                                        Duration keepAlive, MeterRegistry meterRegistry) {
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxTotal)
+                .setMaxConnPerRoute(maxPerRoute)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setTimeToLive(TimeValue.of(keepAlive))
+                        .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                        .build())
+                .build();
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, "ml-api-" + name).bindTo(meterRegistry);
+        return connectionManager;
+    }
+
+    private static HttpEntity<MultiValueMap<String, Object>> imageUpload(String partName, List<Resource> images) {
+        MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
+        for (Resource image : images) {
+            body.add(partName, part(image));
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.MULTIPART_FORM_DATA);
+        return new HttpEntity<>(body, headers);
+    }
+
+    // Preprocessed tensors are labelled so the model server skips its own decoding
+    private static Object part(Resource image) {
+        if (image instanceof DiseaseImagePreprocessor.Tensor) {
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.parseMediaType(DiseaseImagePreprocessor.TENSOR_CONTENT_TYPE));
+            return new HttpEntity<>(image, headers);
+        }
+        return image;
+    }
+
+    /**
+     * Everything one model endpoint owns: its own connection pool (so a flood of
+     * image uploads cannot take the crop endpoint's connections), timeouts and
+     * latency history.
+     */
+    private final class Endpoint {
+
+        final boolean hedge;
+        final CloseableHttpClient httpClient;
+        final RestTemplate client;
+        final LatencyWindow latencies = new LatencyWindow(256);
+        final Counter hedgesSent;
+        final Counter hedgesWon;
+
+        Endpoint(String name, boolean hedge, PoolingHttpClientConnectionManager connectionManager,
+                 Duration keepAlive, Duration idleEviction, Duration acquireTimeout,
+                 Duration connectTimeout, Duration readTimeout, Duration totalTimeout, MeterRegistry meterRegistry) {
+            this.hedge = hedge;
+            this.httpClient = HttpClients.custom()
+                    .setConnectionManager(connectionManager)
+                    .setKeepAliveStrategy((response, context) -> TimeValue.of(keepAlive))
+                    .evictExpiredConnections()
+                    .evictIdleConnections(TimeValue.of(idleEviction))
+                    .addExecInterceptorFirst("total-timeout", new TotalTimeoutHandler())
+                    .build();
+
+            HttpComponentsClientHttpRequestFactory factory = new HttpComponentsClientHttpRequestFactory(httpClient);
+            factory.setConnectionRequestTimeout(acquireTimeout);
+            factory.setConnectTimeout(connectTimeout);
+            factory.setReadTimeout(readTimeout);
+            factory.setHttpContextFactory((method, uri) -> {
+                HttpClientContext context = HttpClientContext.create();
+                context.setAttribute(TOTAL_TIMEOUT, totalTimeout);
+                return context;
+            });
+            this.client = new RestTemplate(factory);
+
+            this.hedgesSent = Counter.builder("ml.api.hedges").tag("endpoint", name).tag("outcome", "sent").register(meterRegistry);
+            this.hedgesWon = Counter.builder("ml.api.hedges").tag("endpoint", name).tag("outcome", "won").register(meterRegistry);
+        }
+    }
+
+    /**
+     * One copy of a hedged call. The exchange it starts on its thread is handed
+     * to it by {@link TotalTimeoutHandler}, so the copy that loses can be aborted,
+     * giving back its connection and thread instead of waiting for the answer.
+     */
+    private static final class Attempt {
+
+        private static final ThreadLocal<Attempt> CURRENT = new ThreadLocal<>();
+
+        private Cancellable exchange;
+        private boolean cancelled;
+
+        <T> T run(Supplier<T> call) {
+            CURRENT.set(this);
+            try {
+                return call.get();
+            } finally {
+                CURRENT.remove();
+            }
+        }
+
+        synchronized void started(Cancellable exchange) {
+            if (cancelled) {
+                exchange.cancel();
+            } else {
+                this.exchange = exchange;
+            }
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            if (exchange != null) {
+                exchange.cancel();
+            }
+        }
+    }
+
+    /**
+     * Aborts the exchange once the endpoint's total timeout has passed, covering
+     * pool wait, connect, upload and waiting for the response headers. Reading the
+     * (small JSON) body afterwards is bounded by the read timeout. Also hands the
+     * exchange to the hedged {@link Attempt} running on this thread, if any.
+     */
+    private class TotalTimeoutHandler implements ExecChainHandler {
+
+        @Override
+        public ClassicHttpResponse execute(ClassicHttpRequest request, ExecChain.Scope scope, ExecChain chain)
+                throws IOException, HttpException {
+            if (!(scope.originalRequest instanceof Cancellable cancellable)) {
+                return chain.proceed(request, scope);
+            }
+            Attempt attempt = Attempt.CURRENT.get();
+            if (attempt != null) {
+                attempt.started(cancellable);
+            }
+            Object total = scope.clientContext.getAttribute(TOTAL_TIMEOUT);
+            if (!(total instanceof Duration timeout)) {
+                return chain.proceed(request, scope);
+            }
+
+            AtomicBoolean expired = new AtomicBoolean();
+            ScheduledFuture<?> timer = deadlines.schedule(() -> {
+                expired.set(true);
+                cancellable.cancel();
+            }, timeout.toMillis(), TimeUnit.MILLISECONDS);
+            try {
+                return chain.proceed(request, scope);
+            } catch (IOException ex) {
+                if (expired.get()) {
+                    SocketTimeoutException timedOut = new SocketTimeoutException(
+                            "ML call to " + scope.route.getTargetHost() + " exceeded total timeout of " + timeout.toMillis() + " ms");
+                    timedOut.initCause(ex);
+                    throw timedOut;
+                }
+                throw ex;
+            } finally {
+                timer.cancel(false);
+            }
+        }
+    }
+}
@@ -1,45 +1,509 @@
- package com.cropapp.Service;
+package com.cropapp.Service;
 
 import com.cropapp.dto.CropRequest;
 import com.cropapp.dto.CropResponse;
+import com.cropapp.dto.DiseaseBatchResponse;
 import com.cropapp.dto.DiseaseResponse;
+import com.cropapp.exception.MLServiceUnavailableException;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ByteArrayResource;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.util.unit.DataSize;
 import org.springframework.stereotype.Service;
-import org.springframework.util.LinkedMultiValueMap;
-import org.springframework.util.MultiValueMap;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
 import org.springframework.web.multipart.MultipartFile;
+import com.cropapp.util.AdaptiveConcurrencyLimiter;
+import com.cropapp.util.Bulkhead;
+import com.cropapp.util.CircuitBreaker;
+import com.cropapp.util.LimitedInputStream;
+import com.cropapp.util.MLCallEvent;
+import com.cropapp.util.MicroBatcher;
+import com.cropapp.util.SingleFlight;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 @Service
 public class MLService {
 
-    private final String PYTHON_API_URL = "http://127.0.0.1:5000";
-    private final RestTemplate restTemplate = new RestTemplate();
+    private static final Logger logger = LoggerFactory.getLogger(MLService.class);
+
+    private final MLGateway gateway;
+    private final CropRecommendationCache cropCache;
+    private final DiseaseResultCache diseaseCache;
+    private final LocalCropEngine localCropEngine;
+    private final DiseaseImagePreprocessor imagePreprocessor;
+
+    // Identical requests in flight at the same time share one upstream call
+    private final SingleFlight<CropRecommendationCache.Key, CropResponse> cropFlights;
+    private final SingleFlight<String, DiseaseResponse> diseaseFlights;
+
+    // Crop and disease calls run on separate bounded pools, so a flood of image
+    // uploads can only block a fixed number of request threads and never crop calls.
+    // With batching on, calls go to the micro-batchers instead, which have their own.
+    private final Bulkhead cropBulkhead;
+    private final Bulkhead diseaseBulkhead;
+
+    // Shed load once upstream latency shows queueing, before the call is even queued
+    private final AdaptiveConcurrencyLimiter cropLimiter;
+    private final AdaptiveConcurrencyLimiter diseaseLimiter;
+
+    // Fail fast while the model server is down instead of tying up request threads
+    private final CircuitBreaker cropBreaker;
+    private final CircuitBreaker diseaseBreaker;
+    private final boolean cropStaleFallback;
+
+    private final long maxImageBytes;
+
+    // ml.predict{model, result}: each prediction as the caller sees it, cache hits included
+    private final PredictTimers cropTimers;
+    private final PredictTimers diseaseTimers;
+
+    // Only created when ml.batch.enabled=true; null means one HTTP call per item
+    private final MicroBatcher<CropRequest, CropResponse> cropBatcher;
+    private final MicroBatcher<Resource, DiseaseResponse> diseaseBatcher;
+
+    public MLService(MLGateway gateway, CropRecommendationCache cropCache, DiseaseResultCache diseaseCache, LocalCropEngine localCropEngine,
+                     DiseaseImagePreprocessor imagePreprocessor,
+                     MeterRegistry meterRegistry,
+                     @Value("${ml.batch.enabled:false}") boolean batchEnabled,
+                     @Value("${ml.batch.crop.max-size:32}") int cropBatchSize,
+                     @Value("${ml.batch.crop.linger-ms:5}") long cropLingerMs,
+                     @Value("${ml.batch.crop.max-queue:1000}") int cropMaxQueue,
+                     @Value("${ml.batch.crop.concurrency:4}") int cropConcurrency,
+                     @Value("${ml.batch.disease.max-size:8}") int diseaseBatchSize,
+                     @Value("${ml.batch.disease.linger-ms:20}") long diseaseLingerMs,
+                     @Value("${ml.batch.disease.max-queue:200}") int diseaseMaxQueue,
+                     @Value("${ml.batch.disease.concurrency:2}") int diseaseConcurrency,
+                     @Value("${ml.circuit.window-size:50}") int circuitWindowSize,
+                     @Value("${ml.circuit.minimum-calls:20}") int circuitMinimumCalls,
+                     @Value("${ml.circuit.failure-rate-threshold:50}") double failureRateThreshold,
+                     @Value("${ml.circuit.slow-call-rate-threshold:80}") double slowCallRateThreshold,
+                     @Value("${ml.circuit.open-duration:10s}") Duration openDuration,
+                     @Value("${ml.circuit.half-open-calls:5}") int halfOpenCalls,
+                     @Value("${ml.circuit.crop.slow-call:1s}") Duration cropSlowCall,
+                     @Value("${ml.circuit.disease.slow-call:10s}") Duration diseaseSlowCall,
+                     @Value("${ml.circuit.crop.fallback:stale}") String cropFallback,
+                     @Value("${ml.limit.crop.initial:20}") int cropInitialLimit,
+                     @Value("${ml.limit.crop.min:2}") int cropMinLimit,
+                     @Value("${ml.limit.crop.max:200}") int cropMaxLimit,
+                     @Value("${ml.limit.disease.initial:8}") int diseaseInitialLimit,
+                     @Value("${ml.limit.disease.min:1}") int diseaseMinLimit,
+                     @Value("${ml.limit.disease.max:64}") int diseaseMaxLimit,
+                     @Value("${ml.bulkhead.crop.threads:16}") int cropThreads,
+                     @Value("${ml.bulkhead.crop.queue:64}") int cropQueue,
+                     @Value("${ml.bulkhead.disease.threads:8}") int diseaseThreads,
+                     @Value("${ml.bulkhead.disease.queue:32}") int diseaseQueue,
+                     @Value("${ml.upload.disease.max-image-size:15MB}") DataSize maxImageSize) {
+        this.gateway = gateway;
+        this.cropCache = cropCache;
+        this.diseaseCache = diseaseCache;
+        this.localCropEngine = localCropEngine;
+        this.imagePreprocessor = imagePreprocessor;
+        this.cropFlights = new SingleFlight<>("crop", meterRegistry);
+        this.diseaseFlights = new SingleFlight<>("disease", meterRegistry);
+
+        // A 4xx means the model server answered (app.py sends 422 for an image it can't decode), not that it is down
+        this.cropBreaker = new CircuitBreaker("crop", circuitWindowSize, circuitMinimumCalls, failureRateThreshold,
+                slowCallRateThreshold, cropSlowCall, openDuration, halfOpenCalls,
+                MLService::isOutage, meterRegistry);
+        this.diseaseBreaker = new CircuitBreaker("disease", circuitWindowSize, circuitMinimumCalls, failureRateThreshold,
+                slowCallRateThreshold, diseaseSlowCall, openDuration, halfOpenCalls,
+                MLService::isOutage, meterRegistry);
+        this.cropStaleFallback = "stale".equalsIgnoreCase(cropFallback);
+        this.cropLimiter = new AdaptiveConcurrencyLimiter("crop", cropInitialLimit, cropMinLimit, cropMaxLimit, meterRegistry);
+        this.diseaseLimiter = new AdaptiveConcurrencyLimiter("disease", diseaseInitialLimit, diseaseMinLimit, diseaseMaxLimit, meterRegistry);
+        this.cropBulkhead = new Bulkhead("crop", cropThreads, cropQueue, meterRegistry);
+        this.diseaseBulkhead = new Bulkhead("disease", diseaseThreads, diseaseQueue, meterRegistry);
+        this.maxImageBytes = maxImageSize.toBytes();
+        this.cropTimers = new PredictTimers("crop", meterRegistry);
+        this.diseaseTimers = new PredictTimers("disease", meterRegistry);
+
+        if (batchEnabled) {
+            this.cropBatcher = new MicroBatcher<>("crop", gateway::predictCropBatch,
+                    cropBatchSize, cropLingerMs, cropMaxQueue, cropConcurrency, meterRegistry);
+            this.diseaseBatcher = new MicroBatcher<>("disease", this::fetchDiseaseBatch,
+                    diseaseBatchSize, diseaseLingerMs, diseaseMaxQueue, diseaseConcurrency, meterRegistry);
+        } else {
+            this.cropBatcher = null;
+            this.diseaseBatcher = null;
+        }
+    }
+
+    // A full batch queue is our own overload, not the model server's
+    private static boolean isOutage(Throwable ex) {
+        return !(ex instanceof HttpClientErrorException || ex instanceof RejectedExecutionException);
+    }
 
     public CropResponse getCropRecommendation(CropRequest request) {
-        String url = PYTHON_API_URL + "/predict";
-        return restTemplate.postForObject(url, request, CropResponse.class);
+        return await(getCropRecommendationAsync(request));
+    }
+
+    /**
+     * Completes on the crop bulkhead's thread (or right away for local scoring and
+     * cache hits), so the caller's thread is free while the model server works.
+     */
+    public CompletableFuture<CropResponse> getCropRecommendationAsync(CropRequest request) {
+        long start = System.nanoTime();
+        // In-JVM scoring is cheaper than a cache lookup round, and exact
+        if (localCropEngine.isEnabled()) {
+            return cropTimers.track(completed(() -> localCropEngine.recommend(request)), cropTimers.local, start);
+        }
+
+        CropRecommendationCache.Key key = cropCache.keyFor(request);
+        CropResponse cached = cropCache.get(key);
+        if (cached != null) {
+            return cropTimers.track(CompletableFuture.completedFuture(cached), cropTimers.cache, start);
+        }
+
+        Function<RuntimeException, CropResponse> fallback = failure -> cropFallback(key, failure);
+        return cropTimers.track(cropFlights.submit(key, () -> protect(cropLimiter, () -> {
+            if (cropBatcher != null) {
+                return cropBreaker.executeAsync(() -> recordedAsync("crop", 0,
+                        () -> cropBatcher.submit(key.toRequest()).thenApply(response -> cached(key, response))), fallback);
+            }
+            return cropBulkhead.submit(() -> cropBreaker.execute(() -> cached(key,
+                    recorded("crop", 0, () -> gateway.predictCrop(key.toRequest()))), fallback));
+        }, fallback)), cropTimers.remote, start);
     }
 
+    private CropResponse cached(CropRecommendationCache.Key key, CropResponse response) {
+        cropCache.put(key, response);
+        return response;
+    }
+
+    private CropResponse cropFallback(CropRecommendationCache.Key key, RuntimeException failure) {
+        CropResponse stale = cropStaleFallback ? cropCache.getStale(key) : null;
+        if (stale != null) {
+            logger.warn("Crop model unavailable ({}), serving last known result", failure.getMessage());
+            return stale;
+        }
+        throw unavailable("Crop recommendation", failure);
+    }
+
+    /**
+     * Rows of an uploaded file in one /predict_batch call, on the caller's thread.
+     * Kept clear of the interactive limiter, bulkhead, breaker and cache: an upload
+     * runs on its own pool, must not shed or crowd out /api/recommend calls, and
+     * its longer calls would count as slow ones against the crop breaker.
+     */
+    public List<CropResponse> getCropRecommendations(List<CropRequest> requests) {
+        if (localCropEngine.isEnabled()) {
+            return requests.stream().map(localCropEngine::recommend).toList();
+        }
+        List<CropResponse> responses;
+        try {
+            responses = recorded("crop", 0, () -> gateway.predictCropBatch(requests));
+        } catch (RuntimeException ex) {
+            throw unavailable("Crop recommendation", ex);
+        }
+        if (responses == null || responses.size() != requests.size()) {
+            throw new IllegalStateException("Model server answered " + (responses == null ? 0 : responses.size())
+                    + " of " + requests.size() + " crop requests");
+        }
+        return responses;
+    }
+
+    /**
+     * The upload is never copied onto the heap: it is hashed straight from its
+     * temp file (which also enforces the image size limit while reading), then
+     * streamed from that file to the model server in a chunked request.
+     */
     public DiseaseResponse detectDisease(MultipartFile file) throws IOException {
-        String url = PYTHON_API_URL + "/predict_disease";
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.MULTIPART_FORM_DATA);
+        return await(detectDiseaseAsync(file));
+    }
 
-        MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
-        body.add("file", new ByteArrayResource(file.getBytes()) {
+    /**
+     * The calling thread only moves the upload to a temp file of our own: the
+     * container deletes its multipart file when the request ends, which may be
+     * before a queued call (or a single-flight follower's leader) reads it, e.g.
+     * after a timeout. Hashing, preprocessing and the model call all run on the
+     * disease bulkhead; the copy is deleted once the prediction completes.
+     */
+    public CompletableFuture<DiseaseResponse> detectDiseaseAsync(MultipartFile file) throws IOException {
+        long start = System.nanoTime();
+        if (file.getSize() > maxImageBytes) {
+            throw new MaxUploadSizeExceededException(maxImageBytes);
+        }
+        Path copy = Files.createTempFile("cropapp-upload-", ".tmp");
+        CompletableFuture<DiseaseResponse> prediction;
+        try {
+            // A rename when the container has the upload on disk already
+            file.transferTo(copy.toFile());
+            // Opens the file again for every send (hedges, retries), never buffers it
+            Resource image = uploadResource(copy, file.getOriginalFilename());
+            prediction = diseaseBulkhead.submit(() -> digest(image))
+                    .thenCompose(digest -> lookup(digest, image, start))
+                    .exceptionallyCompose(failure -> {
+                        // Only the hashing task can still be refused here; protect() handles the model call's
+                        Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+                        return CompletableFuture.failedFuture(cause instanceof RejectedExecutionException rejected
+                                ? unavailable("Disease detection", rejected) : cause);
+                    });
+        } catch (IOException | RuntimeException ex) {
+            deleteUpload(copy);
+            throw ex;
+        }
+        prediction.whenComplete((response, failure) -> deleteUpload(copy));
+        return prediction;
+    }
+
+    // For images already in memory, e.g. the entries of a ZIP upload
+    public DiseaseResponse detectDisease(String fileName, byte[] image) {
+        long start = System.nanoTime();
+        String digest;
+        try {
+            digest = DiseaseResultCache.sha256(new ByteArrayInputStream(image));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return await(lookup(digest, imageResource(fileName, image), start));
+    }
+
+    private CompletableFuture<DiseaseResponse> lookup(String digest, Resource image, long start) {
+        long generation = diseaseCache.generation();
+        DiseaseResponse cached = diseaseCache.get(digest);
+        if (cached != null) {
+            return diseaseTimers.track(CompletableFuture.completedFuture(cached), diseaseTimers.cache, start);
+        }
+        return diseaseTimers.track(diseaseFlights.submit(digest, () -> fetchDisease(digest, image, generation)),
+                diseaseTimers.remote, start);
+    }
+
+    private String digest(Resource image) {
+        try (InputStream in = new LimitedInputStream(image.getInputStream(), maxImageBytes)) {
+            return DiseaseResultCache.sha256(in);
+        } catch (LimitedInputStream.LimitExceededException ex) {
+            throw new MaxUploadSizeExceededException(maxImageBytes, ex);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    // Sent under the name it was uploaded with, not the temp file's
+    private static Resource uploadResource(Path file, String fileName) {
+        return new FileSystemResource(file) {
             @Override
             public String getFilename() {
-                return file.getOriginalFilename();
+                return fileName;
             }
+        };
+    }
+
+    private static void deleteUpload(Path copy) {
+        try {
+            Files.deleteIfExists(copy);
+        } catch (IOException ex) {
+            logger.warn("Could not delete upload copy {}: {}", copy, ex.getMessage());
+        }
+    }
+
+    private static Resource imageResource(String fileName, byte[] image) {
+        return new ByteArrayResource(image) {
+            @Override
+            public String getFilename() {
+                return fileName;
+            }
+        };
+    }
+
+    // The cache stays keyed by the original upload; only what is sent upstream is preprocessed,
+    // on a bulkhead thread and outside the breaker so decode time never counts as a slow call
+    private CompletableFuture<DiseaseResponse> fetchDisease(String digest, Resource upload, long generation) {
+        Function<RuntimeException, DiseaseResponse> fallback = failure -> {
+            throw unavailable("Disease detection", failure);
+        };
+        return protect(diseaseLimiter, () -> {
+            if (diseaseBatcher != null) {
+                CompletableFuture<Resource> prepared = imagePreprocessor.isEnabled()
+                        ? diseaseBulkhead.submit(() -> imagePreprocessor.prepare(upload))
+                        : CompletableFuture.completedFuture(upload);
+                return prepared.thenCompose(image -> diseaseBreaker.executeAsync(() -> recordedAsync("disease", sizeOf(image),
+                        () -> diseaseBatcher.submit(image).thenApply(response -> cached(digest, generation, response))), fallback));
+            }
+            return diseaseBulkhead.submit(() -> {
+                Resource image = imagePreprocessor.prepare(upload);
+                return diseaseBreaker.execute(() -> cached(digest, generation, recorded("disease", sizeOf(image), () -> {
+                    ResponseEntity<DiseaseResponse> entity = gateway.predictDisease(image);
+                    diseaseCache.onModelVersion(entity.getHeaders().getFirst("X-Model-Version"));
+                    return entity.getBody();
+                })), fallback);
+            });
+        }, fallback);
+    }
+
+    private DiseaseResponse cached(String digest, long generation, DiseaseResponse response) {
+        diseaseCache.put(digest, response, generation);
+        return response;
+    }
+
+    // The model server call itself, as a com.cropapp.MLCall JFR event
+    private static <T> T recorded(String model, long payloadSize, Supplier<T> call) {
+        MLCallEvent event = new MLCallEvent();
+        event.begin();
+        try {
+            T response = call.get();
+            event.succeeded = true;
+            return response;
+        } finally {
+            event.model = model;
+            event.payloadSize = payloadSize;
+            event.commit();
+        }
+    }
+
+    // The same for a batched call, from submission until its batch has answered
+    private static <T> CompletableFuture<T> recordedAsync(String model, long payloadSize, Supplier<CompletableFuture<T>> call) {
+        MLCallEvent event = new MLCallEvent();
+        event.begin();
+        return call.get().whenComplete((response, failure) -> {
+            event.model = model;
+            event.payloadSize = payloadSize;
+            event.batched = true;
+            event.succeeded = failure == null;
+            event.commit();
         });
+    }
+
+    private static long sizeOf(Resource image) {
+        try {
+            return image.contentLength();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    // The concurrency limit is taken before the call is queued on a bulkhead or
+    // batcher, so queueing shows in its latency and excess load is shed up front.
+    // The call brings its own circuit breaker; whichever refuses it hands it to the fallback.
+    private static <T> CompletableFuture<T> protect(AdaptiveConcurrencyLimiter limiter, Supplier<CompletableFuture<T>> call,
+                                                    Function<RuntimeException, T> fallback) {
+        AdaptiveConcurrencyLimiter.Permit permit;
+        try {
+            permit = limiter.acquirePermit();
+        } catch (AdaptiveConcurrencyLimiter.LimitExceededException ex) {
+            return completed(() -> fallback.apply(ex));
+        }
+        CompletableFuture<T> pending;
+        try {
+            pending = call.get();
+        } catch (RuntimeException ex) {
+            pending = CompletableFuture.failedFuture(ex);
+        }
+        return pending.whenComplete((response, failure) -> permit.release(failure == null)).exceptionallyCompose(failure -> {
+            Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+            if (cause instanceof RejectedExecutionException rejected) {
+                return completed(() -> fallback.apply(rejected));
+            }
+            return CompletableFuture.failedFuture(cause);
+        });
+    }
 
-        HttpEntity<MultiValueMap<String, Object>> requestEntity = new HttpEntity<>(body, headers);
-        return restTemplate.postForObject(url, requestEntity, DiseaseResponse.class);
+    private static <T> CompletableFuture<T> completed(Supplier<T> value) {
+        try {
+            return CompletableFuture.completedFuture(value.get());
+        } catch (RuntimeException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+
+    private static MLServiceUnavailableException unavailable(String what, RuntimeException failure) {
+        Duration retryAfter = Duration.ofSeconds(1);
+        if (failure instanceof CircuitBreaker.CallNotPermittedException open) {
+            retryAfter = open.getRetryAfter();
+        } else if (failure instanceof AdaptiveConcurrencyLimiter.LimitExceededException overloaded) {
+            retryAfter = overloaded.getRetryAfter();
+        }
+        return new MLServiceUnavailableException(what + " is temporarily unavailable, please retry shortly", retryAfter, failure);
+    }
+
+    private List<DiseaseResponse> fetchDiseaseBatch(List<Resource> images) {
+        ResponseEntity<DiseaseBatchResponse> entity = gateway.predictDiseaseBatch(images);
+        diseaseCache.onModelVersion(entity.getHeaders().getFirst("X-Model-Version"));
+        return entity.getBody() != null ? entity.getBody().getResults() : null;
+    }
+
+    // Catches model redeploys even while every request is a cache hit
+    @Scheduled(fixedDelayString = "${ml.cache.disease.version-check-ms:60000}")
+    public void refreshDiseaseModelVersion() {
+        try {
+            Map<?, ?> info = gateway.modelInfo();
+            if (info != null && info.get("version") != null) {
+                diseaseCache.onModelVersion(info.get("version").toString());
+            }
+        } catch (Exception ex) {
+            logger.debug("Model info check failed: {}", ex.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        cropBulkhead.close();
+        diseaseBulkhead.close();
+        if (cropBatcher != null) {
+            cropBatcher.close();
+        }
+        if (diseaseBatcher != null) {
+            diseaseBatcher.close();
+        }
+    }
+
+    // result is cache, local (in-JVM crop engine), remote (model server, or its fallback) or error
+    private static final class PredictTimers {
+
+        private final Timer cache;
+        private final Timer local;
+        private final Timer remote;
+        private final Timer error;
+
+        PredictTimers(String model, MeterRegistry meterRegistry) {
+            this.cache = timer(model, "cache", meterRegistry);
+            this.local = timer(model, "local", meterRegistry);
+            this.remote = timer(model, "remote", meterRegistry);
+            this.error = timer(model, "error", meterRegistry);
+        }
+
+        private static Timer timer(String model, String result, MeterRegistry meterRegistry) {
+            return Timer.builder("ml.predict").tag("model", model).tag("result", result).register(meterRegistry);
+        }
+
+        <T> CompletableFuture<T> track(CompletableFuture<T> prediction, Timer success, long start) {
+            prediction.whenComplete((response, failure) ->
+                    (failure == null ? success : error).record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+            return prediction;
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw ex;
+        }
     }
-}
\ No newline at end of file
+}
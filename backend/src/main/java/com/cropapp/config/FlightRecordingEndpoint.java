@@ -0,0 +1,38 @@
+package com.cropapp.config;
+
+import com.cropapp.Service.ContinuousRecording;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * /actuator/flightrecording: GET shows whether the continuous recording runs,
+ * POST dumps it to a file on the server. Restricted to jfr.admins in SecurityConfig.
+ */
+@Component
+@Endpoint(id = "flightrecording")
+public class FlightRecordingEndpoint {
+
+    private final ContinuousRecording recording;
+
+    public FlightRecordingEndpoint(ContinuousRecording recording) {
+        this.recording = recording;
+    }
+
+    @ReadOperation
+    public Map<String, Object> status() {
+        return Map.of("running", recording.isRunning(), "settings", recording.getSettings());
+    }
+
+    @WriteOperation
+    public Map<String, Object> dump() throws IOException {
+        Path file = recording.dump();
+        return Map.of("file", file.toString(), "size", Files.size(file));
+    }
+}
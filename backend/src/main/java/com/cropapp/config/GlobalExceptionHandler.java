@@ -1,12 +1,20 @@
 package com.cropapp.config;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
 
+import com.cropapp.exception.MLServiceUnavailableException;
+import com.cropapp.exception.TooManyImagesException;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import com.cropapp.exception.UniqueEmailViolationException;
 
 import java.util.HashMap;
@@ -15,11 +23,24 @@ import java.util.Map;
 @ControllerAdvice
 public class GlobalExceptionHandler {
 
+    private static final Logger logger = LoggerFactory.getLogger(GlobalExceptionHandler.class);
+
+    private final MeterRegistry meterRegistry;
+
+    public GlobalExceptionHandler(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    // http.errors{handler}: one count per error response, by the branch that produced it
+    private void count(String handler) {
+        meterRegistry.counter("http.errors", "handler", handler).increment();
+    }
+
     // Handles @Valid DTO validation errors
     @ExceptionHandler(MethodArgumentNotValidException.class)
     public ResponseEntity<Map<String, Object>> handleValidationExceptions(
             MethodArgumentNotValidException ex, WebRequest request) {
-        
+        count("validation");
         Map<String, String> fieldErrors = new HashMap<>();
         ex.getBindingResult().getFieldErrors().forEach(error -> 
             fieldErrors.put(error.getField(), error.getDefaultMessage())
@@ -37,7 +58,7 @@ public class GlobalExceptionHandler {
     @ExceptionHandler(UniqueEmailViolationException.class)
     public ResponseEntity<Map<String, String>> handleUniqueEmailViolation(
             UniqueEmailViolationException ex, WebRequest request) {
-        
+        count("unique_email");
         Map<String, String> response = new HashMap<>();
         response.put("error", "Email already exists");
         response.put("message", ex.getMessage());
@@ -45,6 +66,71 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(response, HttpStatus.CONFLICT);
     }
     
+    // Uploads over the multipart limit or the image size limit
+    @ExceptionHandler(MaxUploadSizeExceededException.class)
+    public ResponseEntity<Map<String, String>> handleMaxUploadSizeExceeded(
+            MaxUploadSizeExceededException ex, WebRequest request) {
+        count("upload_too_large");
+        Map<String, String> response = new HashMap<>();
+        response.put("error", "File too large");
+        response.put("message", ex.getMaxUploadSize() > 0
+                ? "Uploads are limited to " + ex.getMaxUploadSize() + " bytes"
+                : ex.getMessage());
+
+        return new ResponseEntity<>(response, HttpStatus.PAYLOAD_TOO_LARGE);
+    }
+
+    // More leaf photos than /api/analyze takes in one request
+    @ExceptionHandler(TooManyImagesException.class)
+    public ResponseEntity<Map<String, String>> handleTooManyImages(
+            TooManyImagesException ex, WebRequest request) {
+        count("too_many_images");
+        Map<String, String> response = new HashMap<>();
+        response.put("error", "Too many images");
+        response.put("message", ex.getMessage());
+
+        return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
+    }
+
+    // Handles ML outages/overload: tell the client when to come back instead of a 500
+    @ExceptionHandler(MLServiceUnavailableException.class)
+    public ResponseEntity<Map<String, String>> handleMLServiceUnavailable(
+            MLServiceUnavailableException ex, WebRequest request) {
+        count("ml_unavailable");
+        Map<String, String> response = new HashMap<>();
+        response.put("error", "Prediction service unavailable");
+        response.put("message", ex.getMessage());
+
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(response);
+    }
+
+    // The model server refused the input, e.g. an image it can't decode; not an outage
+    @ExceptionHandler(HttpClientErrorException.class)
+    public ResponseEntity<Map<String, String>> handleModelServerRejection(
+            HttpClientErrorException ex, WebRequest request) {
+        count("ml_rejected");
+        Map<String, String> response = new HashMap<>();
+        response.put("error", "Prediction input rejected");
+        response.put("message", modelServerError(ex));
+
+        return new ResponseEntity<>(response, HttpStatus.UNPROCESSABLE_ENTITY);
+    }
+
+    // app.py answers {"error": "..."}; fall back to the status text for anything else
+    private static String modelServerError(HttpClientErrorException ex) {
+        try {
+            Map<?, ?> body = ex.getResponseBodyAs(Map.class);
+            if (body != null && body.get("error") != null) {
+                return body.get("error").toString();
+            }
+        } catch (RuntimeException ignored) {
+            // Not JSON
+        }
+        return ex.getStatusText();
+    }
+
     // Handles runtime authentication errors (IMPROVED)
     @ExceptionHandler(RuntimeException.class)
     public ResponseEntity<Map<String, String>> handleRuntimeErrors(
@@ -54,18 +140,21 @@ public class GlobalExceptionHandler {
         
         // Check for specific authentication errors
         if (ex.getMessage().contains("Invalid credentials")) {
+            count("invalid_credentials");
             response.put("error", "Authentication failed");
             response.put("message", "Invalid email or password");
             return new ResponseEntity<>(response, HttpStatus.UNAUTHORIZED);
         }
         
         if (ex.getMessage().contains("Email already exists")) {
+            count("email_exists");
             response.put("error", "Registration failed");
             response.put("message", "Email address is already registered");
             return new ResponseEntity<>(response, HttpStatus.CONFLICT);
         }
         
         // Generic runtime error
+        count("runtime");
         response.put("error", "Internal server error");
         response.put("message", ex.getMessage());
         return new ResponseEntity<>(response, HttpStatus.INTERNAL_SERVER_ERROR);
@@ -75,13 +164,14 @@ public class GlobalExceptionHandler {
     @ExceptionHandler(Exception.class)
     public ResponseEntity<Map<String, String>> handleGeneralException(
             Exception ex, WebRequest request) {
-        
+        count("unexpected");
+
         Map<String, String> response = new HashMap<>();
         response.put("error", "Server error");
         response.put("message", "An unexpected error occurred");
         
         // Log the full exception for debugging
-        ex.printStackTrace();
+        logger.error("Unexpected error", ex);
         
         return new ResponseEntity<>(response, HttpStatus.INTERNAL_SERVER_ERROR);
     }
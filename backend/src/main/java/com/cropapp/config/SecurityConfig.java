@@ -1,15 +1,20 @@
 package com.cropapp.config;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.authorization.AuthorizationDecision;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.web.util.matcher.IpAddressMatcher;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
@@ -17,7 +22,12 @@ import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 import com.cropapp.util.JwtAuthEntryPoint;
 import com.cropapp.util.JwtFilter;
 
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+
 import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
 
 @Configuration
 @EnableWebSecurity
@@ -29,6 +39,14 @@ public class SecurityConfig {
     @Autowired
     private JwtAuthEntryPoint unauthorizedHandler;
 
+    // Emails of the users allowed to dump the JFR recording
+    @Value("${jfr.admins:}")
+    private Set<String> recordingAdmins;
+
+    // Addresses (IPs or CIDR ranges) the Prometheus scraper may connect from
+    @Value("${metrics.scrape-addresses:127.0.0.1,::1}")
+    private List<String> scrapeAddresses;
+
     // @Bean
     // public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
     //     http
@@ -57,11 +75,23 @@ public class SecurityConfig {
             .sessionManagement(session -> 
                 session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
             .authorizeHttpRequests(auth -> auth
+                // Re-dispatches of a request that was already let in (StreamingResponseBody,
+                // DeferredResult, error pages); JwtFilter runs once per request, not on these
+                .dispatcherTypeMatchers(DispatcherType.ASYNC, DispatcherType.ERROR).permitAll()
+
                 // 1. Allow Auth (Login/Register) & H2 Console
                 .requestMatchers("/api/auth/**", "/h2-console/**").permitAll()
                 
                 // ✅ 2. ADD THIS LINE: Allow your ML Endpoints explicitly
-                .requestMatchers("/api/recommend", "/api/detect").permitAll()
+                .requestMatchers("/api/recommend", "/api/detect", "/api/analyze").permitAll()
+
+                // Health checks and the Prometheus scraper don't carry user tokens;
+                // the scrape is limited to the monitoring network instead
+                .requestMatchers("/actuator/health").permitAll()
+                .requestMatchers("/actuator/prometheus")
+                    .access((authentication, context) -> new AuthorizationDecision(isScraper(context.getRequest())))
+                .requestMatchers("/actuator/flightrecording", "/actuator/flightrecording/**")
+                    .access((authentication, context) -> new AuthorizationDecision(isRecordingAdmin(authentication.get())))
                 
                 // 3. Everything else requires a token
                 .anyRequest().authenticated()
@@ -73,6 +103,18 @@ public class SecurityConfig {
         http.addFilterBefore(jwtFilter, UsernamePasswordAuthenticationFilter.class);
         return http.build();
     }
+    private boolean isRecordingAdmin(Authentication authentication) {
+        return authentication != null && !(authentication instanceof AnonymousAuthenticationToken)
+                && authentication.isAuthenticated() && recordingAdmins.contains(authentication.getName());
+    }
+
+    // The connecting peer's address, not X-Forwarded-For, so it can't be spoofed by a header
+    boolean isScraper(HttpServletRequest request) {
+        return scrapeAddresses.stream()
+                .filter(address -> !address.isBlank())
+                .anyMatch(address -> new IpAddressMatcher(address.trim()).matches(request.getRemoteAddr()));
+    }
+
     @Bean
     public CorsConfigurationSource corsConfigurationSource() {
         CorsConfiguration configuration = new CorsConfiguration();
@@ -0,0 +1,19 @@
+package com.cropapp.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Answer of /api/analyze: the crop recommendation and one diagnosis per image, each with an error instead if it failed or missed the deadline
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class AnalysisResponse {
+    private List<CropResponse.Recommendation> top_crops;
+    private String crop_error;
+    private List<DiseaseBatchResult> diseases;
+}
@@ -0,0 +1,10 @@
+package com.cropapp.dto;
+
+import lombok.Data;
+import java.util.List;
+
+// Reply of the Python /predict_batch endpoint, one entry per submitted request
+@Data
+public class CropBatchResponse {
+    private List<CropResponse> results;
+}
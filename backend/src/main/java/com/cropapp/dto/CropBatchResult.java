@@ -0,0 +1,19 @@
+package com.cropapp.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// One NDJSON line of a batch upload: the 1-based data row and either its top crops or why it failed
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CropBatchResult {
+    private Long row;
+    private List<CropResponse.Recommendation> top_crops;
+    private String error;
+}
@@ -0,0 +1,10 @@
+package com.cropapp.dto;
+
+import lombok.Data;
+import java.util.List;
+
+// Reply of the Python /predict_disease_batch endpoint, one entry per uploaded file
+@Data
+public class DiseaseBatchResponse {
+    private List<DiseaseResponse> results;
+}
@@ -0,0 +1,18 @@
+package com.cropapp.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// One NDJSON line of a ZIP upload: the entry name and either its diagnosis or why it failed
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class DiseaseBatchResult {
+    private String file;
+    private String disease;
+    private String confidence;
+    private String error;
+}
@@ -0,0 +1,19 @@
+package com.cropapp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// One history row as the API returns it: only the columns the dashboard needs, never the user
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class HistoryItem {
+    private Long id;
+    private String type;
+    private String inputDetails;
+    private String result;
+    private LocalDateTime timestamp;
+}
@@ -0,0 +1,14 @@
+package com.cropapp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+// One page of history, newest first; pass nextCursor back to get the next page (null on the last one)
+@Data
+@AllArgsConstructor
+public class HistoryPage {
+    private List<HistoryItem> items;
+    private String nextCursor;
+}
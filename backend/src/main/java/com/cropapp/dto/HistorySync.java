@@ -0,0 +1,15 @@
+package com.cropapp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+// History created since the client's last sync, oldest first. Send syncToken next time; while more is true, sync again straight away
+@Data
+@AllArgsConstructor
+public class HistorySync {
+    private List<HistorySyncItem> items;
+    private String syncToken;
+    private boolean more;
+}
@@ -0,0 +1,23 @@
+package com.cropapp.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// A history row for delta sync, written as [id, type, inputDetails, result, timestamp] to keep field names off the wire
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonFormat(shape = JsonFormat.Shape.ARRAY)
+@JsonPropertyOrder({"id", "type", "inputDetails", "result", "timestamp"})
+public class HistorySyncItem {
+    private Long id;
+    private String type;
+    private String inputDetails;
+    private String result;
+    private LocalDateTime timestamp;
+}
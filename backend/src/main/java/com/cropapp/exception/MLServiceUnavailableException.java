@@ -0,0 +1,28 @@
+package com.cropapp.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.time.Duration;
+
+/**
+ * Thrown when the Python model server cannot take the request right now (circuit
+ * open, upstream failing or overloaded) and no fallback answer is available.
+ * Mapped to HTTP 503 with a Retry-After header by GlobalExceptionHandler.
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class MLServiceUnavailableException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public MLServiceUnavailableException(String message, Duration retryAfter, Throwable cause) {
+        super(message, cause);
+        this.retryAfter = retryAfter;
+    }
+
+    // Whole seconds as required by Retry-After, never less than one
+    public long getRetryAfterSeconds() {
+        long seconds = (retryAfter.toMillis() + 999) / 1000;
+        return Math.max(1, seconds);
+    }
+}
@@ -0,0 +1,23 @@
+package com.cropapp.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when one request carries more leaf photos than it may.
+ * Mapped to HTTP 400 Bad Request status via @ResponseStatus.
+ */
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class TooManyImagesException extends RuntimeException {
+
+    private final int maxImages;
+
+    public TooManyImagesException(int maxImages) {
+        super("At most " + maxImages + " images can be sent at once");
+        this.maxImages = maxImages;
+    }
+
+    public int getMaxImages() {
+        return maxImages;
+    }
+}
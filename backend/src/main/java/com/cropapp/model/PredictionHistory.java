@@ -1,5 +1,6 @@
 package com.cropapp.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -8,6 +9,10 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_history_user_time", columnList = "user_id, timestamp, id"),
+        @Index(name = "idx_history_user_id", columnList = "user_id, id")
+})
 @Data
 @Builder
 @NoArgsConstructor
@@ -18,8 +23,9 @@ public class PredictionHistory {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
+    @JsonIgnore
     private User user; // Link to the logged-in user
 
     private String type; // "CROP" or "DISEASE"
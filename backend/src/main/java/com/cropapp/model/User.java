@@ -1,16 +1,20 @@
 package com.cropapp.model;
 
+import com.cropapp.util.UserChangeListener;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
 import lombok.Data;
 
 @Entity
 @Data
+@EntityListeners(UserChangeListener.class)
 
-@Table(name = "users")
+@Table(name = "users", indexes = @Index(name = "uk_users_email", columnList = "email", unique = true))
 public class User {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -1,9 +1,37 @@
 package com.cropapp.repository;
+import com.cropapp.dto.HistoryItem;
+import com.cropapp.dto.HistorySyncItem;
 import com.cropapp.model.PredictionHistory;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
 import java.util.List;
 
 public interface HistoryRepository extends JpaRepository<PredictionHistory, Long> {
+
     // Fetch history for a specific user, newest first
-    List<PredictionHistory> findByUserIdOrderByTimestampDesc(Long userId);
-}
\ No newline at end of file
+    @Query("SELECT new com.cropapp.dto.HistoryItem(h.id, h.type, h.inputDetails, h.result, h.timestamp) "
+            + "FROM PredictionHistory h WHERE h.user.id = :userId ORDER BY h.timestamp DESC, h.id DESC")
+    List<HistoryItem> findItemsByUserId(@Param("userId") Long userId, Limit limit);
+
+    // Keyset page: the rows strictly after the (timestamp, id) cursor, served by idx_history_user_time
+    @Query("SELECT new com.cropapp.dto.HistoryItem(h.id, h.type, h.inputDetails, h.result, h.timestamp) "
+            + "FROM PredictionHistory h WHERE h.user.id = :userId "
+            + "AND (h.timestamp < :timestamp OR (h.timestamp = :timestamp AND h.id < :id)) "
+            + "ORDER BY h.timestamp DESC, h.id DESC")
+    List<HistoryItem> findItemsByUserIdAfter(@Param("userId") Long userId, @Param("timestamp") LocalDateTime timestamp,
+                                             @Param("id") Long id, Limit limit);
+
+    // Newest history id of the user (0 if none), a single lookup on idx_history_user_id
+    @Query("SELECT COALESCE(MAX(h.id), 0) FROM PredictionHistory h WHERE h.user.id = :userId")
+    long findLatestIdByUserId(@Param("userId") Long userId);
+
+    // Rows with sinceId < id <= upToId, oldest first, for delta sync
+    @Query("SELECT new com.cropapp.dto.HistorySyncItem(h.id, h.type, h.inputDetails, h.result, h.timestamp) "
+            + "FROM PredictionHistory h WHERE h.user.id = :userId AND h.id > :sinceId AND h.id <= :upToId ORDER BY h.id")
+    List<HistorySyncItem> findSyncItemsByUserIdBetween(@Param("userId") Long userId, @Param("sinceId") long sinceId,
+                                                       @Param("upToId") long upToId, Limit limit);
+}
@@ -0,0 +1,190 @@
+package com.cropapp.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Concurrency limit that adapts to the latency of the protected call.
+ *
+ * The limit follows a latency gradient: a slow-moving average of call latency
+ * (the no-load baseline) is compared with a fast-moving one. While the fast
+ * average stays near the baseline the limit grows by about sqrt(limit); once
+ * queueing pushes it up, the limit shrinks in proportion (by at most half per
+ * step). Failed calls cut the limit by 10%. Calls beyond the limit are rejected
+ * at once with {@link LimitExceededException} instead of waiting.
+ *
+ * Published as ml.limiter.limit{name}, ml.limiter.in_flight{name} and
+ * ml.limiter.rejected{name}.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private static final int SHORT_WINDOW = 10;
+    private static final int LONG_WINDOW = 600;
+    // Latency may grow this much over the baseline before the limit starts to shrink
+    private static final double TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+    private static final double FAILURE_BACKOFF = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int limit;
+
+    // Guarded by this
+    private double estimatedLimit;
+    private double shortRtt;
+    private double longRtt;
+    private long samples;
+
+    private final Counter rejected;
+
+    public AdaptiveConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit, MeterRegistry meterRegistry) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Need 1 <= minLimit <= maxLimit");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.estimatedLimit = Math.max(minLimit, Math.min(initialLimit, maxLimit));
+        this.limit = (int) estimatedLimit;
+
+        this.rejected = Counter.builder("ml.limiter.rejected").tag("name", name).register(meterRegistry);
+        meterRegistry.gauge("ml.limiter.limit", Tags.of("name", name), this, AdaptiveConcurrencyLimiter::getLimit);
+        meterRegistry.gauge("ml.limiter.in_flight", Tags.of("name", name), inFlight, AtomicInteger::get);
+    }
+
+    /**
+     * Runs the call if a slot is free, otherwise throws {@link LimitExceededException}
+     * without running it.
+     */
+    public <T> T execute(Supplier<T> call) {
+        Permit permit = acquirePermit();
+        boolean succeeded = false;
+        try {
+            T result = call.get();
+            succeeded = true;
+            return result;
+        } finally {
+            permit.release(succeeded);
+        }
+    }
+
+    /**
+     * Takes a slot for a call that finishes later, possibly on another thread, or
+     * throws {@link LimitExceededException}. Taken before the call is queued
+     * anywhere, the latency sample includes the queueing, which is what the
+     * gradient needs to see.
+     */
+    public Permit acquirePermit() {
+        return new Permit(acquire());
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    private int acquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                rejected.increment();
+                throw new LimitExceededException(retryAfter());
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return current + 1;
+            }
+        }
+    }
+
+    // Package-private so tests can feed latencies without timing real calls
+    synchronized void onSample(long rttNanos, int inFlightAtStart) {
+        samples++;
+        if (samples == 1) {
+            shortRtt = rttNanos;
+            longRtt = rttNanos;
+        } else {
+            shortRtt += (rttNanos - shortRtt) / SHORT_WINDOW;
+            // Plain average while warming up, then a slow exponential average
+            longRtt += (rttNanos - longRtt) / Math.min(samples, LONG_WINDOW);
+        }
+        // After a long overload the baseline is inflated; let it drift back down
+        if (longRtt / shortRtt > 2) {
+            longRtt *= 0.95;
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRtt / shortRtt));
+        double target = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        // Don't grow a limit the traffic isn't using
+        if (target > estimatedLimit && inFlightAtStart < estimatedLimit / 2) {
+            return;
+        }
+        update(estimatedLimit * (1 - SMOOTHING) + target * SMOOTHING);
+    }
+
+    synchronized void onFailure() {
+        update(estimatedLimit * FAILURE_BACKOFF);
+    }
+
+    private void update(double newLimit) {
+        estimatedLimit = Math.max(minLimit, Math.min(newLimit, maxLimit));
+        limit = (int) estimatedLimit;
+    }
+
+    private synchronized Duration retryAfter() {
+        // Roughly when a slot should free up again
+        return Duration.ofNanos((long) shortRtt);
+    }
+
+    /**
+     * One slot of the limit; released exactly once, however often release is called.
+     */
+    public final class Permit {
+
+        private final int inFlightAtStart;
+        private final long start = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(int inFlightAtStart) {
+            this.inFlightAtStart = inFlightAtStart;
+        }
+
+        public void release(boolean succeeded) {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            inFlight.decrementAndGet();
+            if (succeeded) {
+                onSample(System.nanoTime() - start, inFlightAtStart);
+            } else {
+                onFailure();
+            }
+        }
+    }
+
+    /**
+     * Thrown when every slot is taken. retryAfter is a hint based on current latency.
+     */
+    public static class LimitExceededException extends RuntimeException {
+
+        private final Duration retryAfter;
+
+        public LimitExceededException(Duration retryAfter) {
+            super("Concurrency limit reached");
+            this.retryAfter = retryAfter;
+        }
+
+        public Duration getRetryAfter() {
+            return retryAfter;
+        }
+    }
+}
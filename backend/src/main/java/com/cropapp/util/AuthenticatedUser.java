@@ -0,0 +1,24 @@
+package com.cropapp.util;
+
+import org.springframework.security.core.userdetails.User;
+
+import java.util.List;
+
+/**
+ * The security principal for a JWT-authenticated request. Carries the user's id
+ * next to the email, so controllers and services can use the id directly
+ * instead of looking the user up by email again.
+ */
+public class AuthenticatedUser extends User {
+
+    private final Long id;
+
+    public AuthenticatedUser(Long id, String email, String password) {
+        super(email, password, List.of());
+        this.id = id;
+    }
+
+    public Long getId() {
+        return id;
+    }
+}
@@ -0,0 +1,135 @@
+package com.cropapp.util;
+
+/**
+ * Resizes interleaved 8-bit RGB pixels the way Pillow's Image.resize does with
+ * its default BICUBIC filter, so images resized here match what the model
+ * server would have produced itself.
+ *
+ * Like Pillow it is a two-pass convolution (horizontal, then vertical, rounded
+ * to 8 bits in between) whose kernel is widened by the scale factor when
+ * shrinking, so downscaling averages over the source pixels instead of
+ * aliasing. Weights use Pillow's 22-bit fixed point.
+ */
+public final class BicubicResampler {
+
+    private static final int PRECISION_BITS = 32 - 8 - 2;
+    private static final double SUPPORT = 2.0;
+    private static final int CHANNELS = 3;
+
+    private BicubicResampler() {
+    }
+
+    /**
+     * @param rgb width * height * 3 bytes, row by row
+     * @return outWidth * outHeight * 3 bytes, row by row
+     */
+    public static byte[] resize(byte[] rgb, int width, int height, int outWidth, int outHeight) {
+        if (rgb.length != width * height * CHANNELS) {
+            throw new IllegalArgumentException("Expected " + width * height * CHANNELS + " bytes, got " + rgb.length);
+        }
+        if (width == outWidth && height == outHeight) {
+            return rgb.clone();
+        }
+        Coefficients horizontal = coefficients(width, outWidth);
+        Coefficients vertical = coefficients(height, outHeight);
+
+        // Only the source rows the vertical pass will read
+        int firstRow = vertical.bounds[0];
+        int lastRow = vertical.bounds[(outHeight - 1) * 2] + vertical.bounds[(outHeight - 1) * 2 + 1];
+
+        byte[] temp = rgb;
+        int tempHeight = height;
+        if (width != outWidth) {
+            tempHeight = lastRow - firstRow;
+            temp = new byte[outWidth * tempHeight * CHANNELS];
+            for (int y = 0; y < tempHeight; y++) {
+                int inRow = (y + firstRow) * width * CHANNELS;
+                int outRow = y * outWidth * CHANNELS;
+                for (int x = 0; x < outWidth; x++) {
+                    int min = horizontal.bounds[x * 2];
+                    int count = horizontal.bounds[x * 2 + 1];
+                    int k = x * horizontal.size;
+                    for (int c = 0; c < CHANNELS; c++) {
+                        int sum = 1 << (PRECISION_BITS - 1);
+                        for (int i = 0; i < count; i++) {
+                            sum += (rgb[inRow + (min + i) * CHANNELS + c] & 0xff) * horizontal.weights[k + i];
+                        }
+                        temp[outRow + x * CHANNELS + c] = clip8(sum);
+                    }
+                }
+            }
+        } else {
+            firstRow = 0;
+        }
+        if (height == outHeight) {
+            return temp;
+        }
+
+        byte[] out = new byte[outWidth * outHeight * CHANNELS];
+        int stride = outWidth * CHANNELS;
+        for (int y = 0; y < outHeight; y++) {
+            int min = vertical.bounds[y * 2] - firstRow;
+            int count = vertical.bounds[y * 2 + 1];
+            int k = y * vertical.size;
+            for (int x = 0; x < stride; x++) {
+                int sum = 1 << (PRECISION_BITS - 1);
+                for (int i = 0; i < count; i++) {
+                    sum += (temp[(min + i) * stride + x] & 0xff) * vertical.weights[k + i];
+                }
+                out[y * stride + x] = clip8(sum);
+            }
+        }
+        return out;
+    }
+
+    private static byte clip8(int sum) {
+        int value = sum >> PRECISION_BITS;
+        return (byte) (value < 0 ? 0 : Math.min(value, 255));
+    }
+
+    // Pillow's precompute_coeffs + normalize_coeffs_8bpc for one axis
+    private static Coefficients coefficients(int inSize, int outSize) {
+        double scale = (double) inSize / outSize;
+        double filterScale = Math.max(scale, 1.0);
+        double support = SUPPORT * filterScale;
+        int size = (int) Math.ceil(support) * 2 + 1;
+
+        int[] bounds = new int[outSize * 2];
+        int[] weights = new int[outSize * size];
+        double[] kernel = new double[size];
+        for (int xx = 0; xx < outSize; xx++) {
+            double center = (xx + 0.5) * scale;
+            int min = Math.max((int) (center - support + 0.5), 0);
+            int max = Math.min((int) (center + support + 0.5), inSize) - min;
+
+            double total = 0;
+            for (int x = 0; x < max; x++) {
+                kernel[x] = bicubic((x + min - center + 0.5) / filterScale);
+                total += kernel[x];
+            }
+            for (int x = 0; x < max; x++) {
+                double w = total != 0 ? kernel[x] / total : kernel[x];
+                weights[xx * size + x] = (int) (w < 0 ? -0.5 + w * (1 << PRECISION_BITS) : 0.5 + w * (1 << PRECISION_BITS));
+            }
+            bounds[xx * 2] = min;
+            bounds[xx * 2 + 1] = max;
+        }
+        return new Coefficients(size, bounds, weights);
+    }
+
+    // Keys cubic with a = -0.5, as in Pillow
+    private static double bicubic(double x) {
+        double a = -0.5;
+        x = Math.abs(x);
+        if (x < 1.0) {
+            return ((a + 2.0) * x - (a + 3.0)) * x * x + 1;
+        }
+        if (x < 2.0) {
+            return (((x - 5) * x + 8) * x - 4) * a;
+        }
+        return 0.0;
+    }
+
+    private record Coefficients(int size, int[] bounds, int[] weights) {
+    }
+}
@@ -0,0 +1,90 @@
+package com.cropapp.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * An isolated pool of worker threads with a bounded queue for one kind of work.
+ *
+ * Work beyond threads + queueCapacity is refused immediately rather than piling
+ * up, so one saturated bulkhead can tie up at most that many callers and never
+ * the threads another bulkhead depends on.
+ *
+ * Published as ml.bulkhead.queue_depth{name}, ml.bulkhead.active{name},
+ * ml.bulkhead.wait{name} (time spent queued) and ml.bulkhead.rejected{name}.
+ */
+public class Bulkhead implements AutoCloseable {
+
+    private final String name;
+    private final ThreadPoolExecutor executor;
+    private final Timer waitTimer;
+    private final Counter rejected;
+
+    public Bulkhead(String name, int threads, int queueCapacity, MeterRegistry meterRegistry) {
+        this.name = name;
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("ml-bulkhead-" + name + "-");
+        threadFactory.setDaemon(true);
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), threadFactory);
+        this.executor.allowCoreThreadTimeOut(true);
+
+        this.waitTimer = Timer.builder("ml.bulkhead.wait").tag("name", name).register(meterRegistry);
+        this.rejected = Counter.builder("ml.bulkhead.rejected").tag("name", name).register(meterRegistry);
+        meterRegistry.gauge("ml.bulkhead.queue_depth", Tags.of("name", name), executor.getQueue(), BlockingQueue::size);
+        meterRegistry.gauge("ml.bulkhead.active", Tags.of("name", name), executor, ThreadPoolExecutor::getActiveCount);
+    }
+
+    /**
+     * Queues the task. The future fails with RejectedExecutionException when the
+     * bulkhead is full.
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        long queuedAt = System.nanoTime();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                waitTimer.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+                return task.get();
+            }, executor);
+        } catch (RejectedExecutionException ex) {
+            rejected.increment();
+            return CompletableFuture.failedFuture(
+                    new RejectedExecutionException("ML bulkhead '" + name + "' is full"));
+        }
+    }
+
+    /**
+     * Queues the task, or runs it on the calling thread when the bulkhead is full.
+     * Back-pressure for bulk jobs: the producer slows down instead of losing work.
+     */
+    public <T> CompletableFuture<T> submitOrRun(Supplier<T> task) {
+        long queuedAt = System.nanoTime();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                waitTimer.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+                return task.get();
+            }, executor);
+        } catch (RejectedExecutionException ex) {
+            try {
+                return CompletableFuture.completedFuture(task.get());
+            } catch (RuntimeException failure) {
+                return CompletableFuture.failedFuture(failure);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
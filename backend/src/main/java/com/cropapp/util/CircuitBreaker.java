@@ -0,0 +1,273 @@
+package com.cropapp.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Count-based circuit breaker for calls to a remote dependency.
+ *
+ * CLOSED: every call runs and its outcome goes into a sliding window of the
+ * last windowSize calls. Once at least minimumCalls are recorded and either the
+ * failure rate or the slow-call rate reaches its threshold, the breaker OPENs.
+ *
+ * OPEN: calls fail immediately with {@link CallNotPermittedException} until
+ * openDuration has passed, then the breaker goes HALF_OPEN.
+ *
+ * HALF_OPEN: only halfOpenCalls probe calls are let through. If their failure
+ * and slow rates are below the thresholds the breaker CLOSEs with a fresh
+ * window, otherwise it OPENs again.
+ *
+ * State is published as ml.circuit.state{name} (0 closed, 1 open, 2 half open)
+ * and outcomes as ml.circuit.calls{name, outcome}.
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private static final byte SUCCESS = 0;
+    private static final byte FAILURE = 1;
+    private static final byte SLOW = 2;
+
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final double slowCallRateThreshold;
+    private final long slowCallNanos;
+    private final long openNanos;
+    private final int halfOpenCalls;
+    private final Predicate<Throwable> recordFailure;
+
+    // Guarded by this
+    private final byte[] window;
+    private int next;
+    private int recorded;
+    private int failures;
+    private int slowCalls;
+    private State state = State.CLOSED;
+    private long openUntil;
+    private int probesStarted;
+
+    private final Counter successCalls;
+    private final Counter failedCalls;
+    private final Counter slowCallCounter;
+    private final Counter rejectedCalls;
+
+    /**
+     * @param recordFailure decides which exceptions count against the dependency; others
+     *                      (e.g. a 4xx for a bad request) are recorded as successes
+     */
+    public CircuitBreaker(String name, int windowSize, int minimumCalls, double failureRateThreshold,
+                          double slowCallRateThreshold, Duration slowCallDuration, Duration openDuration,
+                          int halfOpenCalls, Predicate<Throwable> recordFailure, MeterRegistry meterRegistry) {
+        if (windowSize < 1 || halfOpenCalls < 1) {
+            throw new IllegalArgumentException("windowSize and halfOpenCalls must be at least 1");
+        }
+        this.window = new byte[windowSize];
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, windowSize));
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallNanos = slowCallDuration.toNanos();
+        this.openNanos = openDuration.toNanos();
+        this.halfOpenCalls = halfOpenCalls;
+        this.recordFailure = recordFailure;
+
+        this.successCalls = outcomeCounter(name, "success", meterRegistry);
+        this.failedCalls = outcomeCounter(name, "failure", meterRegistry);
+        this.slowCallCounter = outcomeCounter(name, "slow", meterRegistry);
+        this.rejectedCalls = outcomeCounter(name, "rejected", meterRegistry);
+        meterRegistry.gauge("ml.circuit.state", Tags.of("name", name), this, breaker -> breaker.getState().ordinal());
+    }
+
+    /**
+     * Runs the call if the breaker permits it, otherwise throws {@link CallNotPermittedException}.
+     */
+    public <T> T execute(Supplier<T> call) {
+        acquirePermission();
+        long start = System.nanoTime();
+        T result;
+        try {
+            result = call.get();
+        } catch (RuntimeException | Error ex) {
+            onComplete(recordFailure.test(ex), System.nanoTime() - start);
+            throw ex;
+        }
+        onComplete(false, System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * Like {@link #execute(Supplier)}, but hands a rejection or a recorded failure to
+     * the fallback instead of throwing it. Exceptions that are not recorded as
+     * failures still propagate.
+     */
+    public <T> T execute(Supplier<T> call, Function<RuntimeException, T> fallback) {
+        try {
+            return execute(call);
+        } catch (CallNotPermittedException ex) {
+            return fallback.apply(ex);
+        } catch (RuntimeException ex) {
+            if (!recordFailure.test(ex)) {
+                throw ex;
+            }
+            return fallback.apply(ex);
+        }
+    }
+
+    /**
+     * Async variant of {@link #execute(Supplier, Function)}: permission is taken
+     * now, the outcome is recorded when the call's future completes.
+     */
+    public <T> CompletableFuture<T> executeAsync(Supplier<CompletableFuture<T>> call, Function<RuntimeException, T> fallback) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            acquirePermission();
+        } catch (CallNotPermittedException ex) {
+            complete(result, ex, fallback);
+            return result;
+        }
+        long start = System.nanoTime();
+        CompletableFuture<T> pending;
+        try {
+            pending = call.get();
+        } catch (RuntimeException ex) {
+            pending = CompletableFuture.failedFuture(ex);
+        }
+        pending.whenComplete((value, error) -> {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            boolean failed = cause != null && recordFailure.test(cause);
+            onComplete(failed, System.nanoTime() - start);
+            if (cause == null) {
+                result.complete(value);
+            } else if (failed && cause instanceof RuntimeException failure) {
+                complete(result, failure, fallback);
+            } else {
+                result.completeExceptionally(cause);
+            }
+        });
+        return result;
+    }
+
+    private static <T> void complete(CompletableFuture<T> result, RuntimeException failure, Function<RuntimeException, T> fallback) {
+        try {
+            result.complete(fallback.apply(failure));
+        } catch (RuntimeException ex) {
+            result.completeExceptionally(ex);
+        }
+    }
+
+    public synchronized State getState() {
+        // Report the transition to half open as soon as it is due, not at the next call
+        if (state == State.OPEN && System.nanoTime() - openUntil >= 0) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    private synchronized void acquirePermission() {
+        long now = System.nanoTime();
+        if (state == State.OPEN) {
+            if (now - openUntil < 0) {
+                rejectedCalls.increment();
+                throw new CallNotPermittedException(Duration.ofNanos(openUntil - now));
+            }
+            state = State.HALF_OPEN;
+            resetWindow();
+            probesStarted = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (probesStarted >= halfOpenCalls) {
+                rejectedCalls.increment();
+                throw new CallNotPermittedException(Duration.ofNanos(openNanos));
+            }
+            probesStarted++;
+        }
+    }
+
+    private synchronized void onComplete(boolean failed, long elapsedNanos) {
+        boolean slow = elapsedNanos >= slowCallNanos;
+        byte outcome = (byte) ((failed ? FAILURE : SUCCESS) | (slow ? SLOW : SUCCESS));
+        (failed ? failedCalls : successCalls).increment();
+        if (slow) {
+            slowCallCounter.increment();
+        }
+        if (state == State.OPEN) {
+            // A call that started before the breaker opened
+            return;
+        }
+
+        if (recorded == window.length) {
+            byte evicted = window[next];
+            failures -= (evicted & FAILURE) != 0 ? 1 : 0;
+            slowCalls -= (evicted & SLOW) != 0 ? 1 : 0;
+        } else {
+            recorded++;
+        }
+        window[next] = outcome;
+        next = (next + 1) % window.length;
+        failures += (outcome & FAILURE) != 0 ? 1 : 0;
+        slowCalls += (outcome & SLOW) != 0 ? 1 : 0;
+
+        if (state == State.HALF_OPEN) {
+            if (recorded >= halfOpenCalls) {
+                if (overThreshold()) {
+                    open();
+                } else {
+                    state = State.CLOSED;
+                    resetWindow();
+                }
+            }
+        } else if (recorded >= minimumCalls && overThreshold()) {
+            open();
+        }
+    }
+
+    private boolean overThreshold() {
+        return failures * 100.0 / recorded >= failureRateThreshold
+                || slowCalls * 100.0 / recorded >= slowCallRateThreshold;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openUntil = System.nanoTime() + openNanos;
+        resetWindow();
+    }
+
+    private void resetWindow() {
+        next = 0;
+        recorded = 0;
+        failures = 0;
+        slowCalls = 0;
+    }
+
+    private static Counter outcomeCounter(String name, String outcome, MeterRegistry meterRegistry) {
+        return Counter.builder("ml.circuit.calls")
+                .tag("name", name)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Thrown instead of running the call while the breaker is open (or its half-open
+     * probes are all taken). retryAfter is how long until calls may be let through again.
+     */
+    public static class CallNotPermittedException extends RuntimeException {
+
+        private final Duration retryAfter;
+
+        public CallNotPermittedException(Duration retryAfter) {
+            super("Circuit breaker is open");
+            this.retryAfter = retryAfter;
+        }
+
+        public Duration getRetryAfter() {
+            return retryAfter;
+        }
+    }
+}
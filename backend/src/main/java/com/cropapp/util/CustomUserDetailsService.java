@@ -2,38 +2,47 @@ package com.cropapp.util;
 
 import com.cropapp.model.User;
 import com.cropapp.repository.UserRepository;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
-
 /**
  * Custom implementation of Spring Security's UserDetailsService.
  * Used to load user-specific data (by email) during authentication/token validation.
  */
 @Service
-@RequiredArgsConstructor
 public class CustomUserDetailsService implements UserDetailsService {
 
     private final UserRepository userRepository;
+    // auth.user_lookup: the database lookup behind logins and the first use of each token
+    private final Timer lookupTimer;
+
+    public CustomUserDetailsService(UserRepository userRepository, MeterRegistry meterRegistry) {
+        this.userRepository = userRepository;
+        this.lookupTimer = Timer.builder("auth.user_lookup").register(meterRegistry);
+    }
 
     /**
      * Loads the user by their email (used as the username in this context).
      */
     @Override
     public UserDetails loadUserByUsername(String email) throws UsernameNotFoundException {
-        User user = userRepository.findByEmail(email)
+        User user = lookupTimer.record(() -> userRepository.findByEmail(email))
                 .orElseThrow(() -> new UsernameNotFoundException("User not found with email: " + email));
 
         // Note: For simplicity, we are granting no specific authorities/roles (empty list).
         // In a real application, you would load user roles here.
-        return new org.springframework.security.core.userdetails.User(
-                user.getEmail(),
-                user.getPassword(),
-                new ArrayList<>() 
-        );
+        return new AuthenticatedUser(user.getId(), user.getEmail(), user.getPassword());
+    }
+
+    /**
+     * Whether the account a token was issued for still exists under the same
+     * email. An existence check on the primary key, cheaper than loading the user.
+     */
+    public boolean isCurrent(Long id, String email) {
+        return lookupTimer.record(() -> userRepository.existsByIdAndEmail(id, email));
     }
 }
@@ -0,0 +1,25 @@
+package com.cropapp.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for one JDBC batch of history rows written by HistoryWriter.
+ */
+@Name("com.cropapp.HistoryWrite")
+@Label("History Write")
+@Category({"Crop App", "Database"})
+@Description("A batch insert into prediction_history")
+@StackTrace(false)
+public class HistoryWriteEvent extends Event {
+
+    @Label("Rows")
+    public int rows;
+
+    @Label("Succeeded")
+    public boolean succeeded;
+}
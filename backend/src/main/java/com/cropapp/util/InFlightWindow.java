@@ -0,0 +1,100 @@
+package com.cropapp.util;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Supplier;
+
+/**
+ * Keeps at most size tasks of one bulk job running and hands their results to a
+ * {@link Sink} in completion order, always on the thread that submits.
+ *
+ * Submitting into a full window first waits for a task to finish, so the input
+ * is read no faster than it is processed and memory stays bounded by the window
+ * whatever the size of the input. Not thread-safe: one job, one submitting thread.
+ */
+public class InFlightWindow<R> {
+
+    private final int size;
+    private final BlockingQueue<Completed<R>> completed = new LinkedBlockingQueue<>();
+    private int pending;
+
+    public InFlightWindow(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Window size must be at least 1");
+        }
+        this.size = size;
+    }
+
+    /**
+     * Starts the task once the window has room. Results finished in the meantime
+     * are passed to the sink first.
+     *
+     * @param index identifies the task's result to the sink, e.g. a row number
+     */
+    public void submit(long index, Supplier<CompletableFuture<R>> task, Sink<R> sink)
+            throws IOException, InterruptedException {
+        while (pending >= size) {
+            awaitOne(sink);
+        }
+        drainFinished(sink);
+
+        CompletableFuture<R> future;
+        try {
+            future = task.get();
+        } catch (RuntimeException ex) {
+            future = CompletableFuture.failedFuture(ex);
+        }
+        pending++;
+        future.whenComplete((result, failure) -> completed.add(new Completed<>(index, result, unwrap(failure))));
+    }
+
+    /**
+     * Waits for every started task and passes its result to the sink.
+     */
+    public void finish(Sink<R> sink) throws IOException, InterruptedException {
+        while (pending > 0) {
+            awaitOne(sink);
+        }
+        sink.flush();
+    }
+
+    private void awaitOne(Sink<R> sink) throws IOException, InterruptedException {
+        Completed<R> next = completed.poll();
+        if (next == null) {
+            // About to block: let the sink push out what it has so far
+            sink.flush();
+            next = completed.take();
+        }
+        pending--;
+        sink.accept(next.index(), next.result(), next.failure());
+    }
+
+    private void drainFinished(Sink<R> sink) throws IOException {
+        Completed<R> next;
+        while ((next = completed.poll()) != null) {
+            pending--;
+            sink.accept(next.index(), next.result(), next.failure());
+        }
+    }
+
+    private static Throwable unwrap(Throwable failure) {
+        return failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+    }
+
+    private record Completed<R>(long index, R result, Throwable failure) {
+    }
+
+    /**
+     * Receives each result; failure is null if the task succeeded.
+     */
+    public interface Sink<R> {
+
+        void accept(long index, R result, Throwable failure) throws IOException;
+
+        default void flush() throws IOException {
+        }
+    }
+}
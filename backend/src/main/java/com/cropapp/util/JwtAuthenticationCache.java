@@ -0,0 +1,73 @@
+package com.cropapp.util;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tokens that already passed signature verification, mapped to the user they
+ * authenticate.
+ *
+ * Each entry expires exactly when its token does, so a cached token is never
+ * accepted past its exp claim. Entries for a user are dropped whenever that user
+ * row changes (see UserChangeListener). Hit/miss counters are published under
+ * the "jwtAuthentications" cache name.
+ */
+@Component
+public class JwtAuthenticationCache {
+
+    private final Cache<String, Entry> cache;
+
+    public JwtAuthenticationCache(@Value("${jwt.cache.max-size:10000}") long maxSize, MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<String, Entry>() {
+                    @Override
+                    public long expireAfterCreate(String token, Entry entry, long currentTime) {
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, entry.expiresAt() - System.currentTimeMillis()));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String token, Entry entry, long currentTime, long currentDuration) {
+                        return expireAfterCreate(token, entry, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String token, Entry entry, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "jwtAuthentications");
+    }
+
+    public AuthenticatedUser get(String token) {
+        Entry entry = cache.getIfPresent(token);
+        return entry != null ? entry.user() : null;
+    }
+
+    /**
+     * Caches a verified token. Tokens without an expiry are not cached.
+     */
+    public void put(String token, AuthenticatedUser user, Date expiration) {
+        if (expiration != null) {
+            cache.put(token, new Entry(user, expiration.getTime()));
+        }
+    }
+
+    // Rare (profile or password change), so a scan is fine
+    public void invalidateUser(Long userId) {
+        cache.asMap().values().removeIf(entry -> entry.user().getId().equals(userId));
+    }
+
+    private record Entry(AuthenticatedUser user, long expiresAt) {
+    }
+}
@@ -1,10 +1,12 @@
 package com.cropapp.util;
 
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
@@ -16,31 +18,79 @@ import org.springframework.util.StringUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * JWT authentication filter that validates tokens and sets the security context.
+ * A token seen before is served from {@link JwtAuthenticationCache} with no
+ * signature check; a new one is parsed and verified once. The principal is an
+ * {@link AuthenticatedUser} built from the token's claims, after a cheap check
+ * that the account still exists under that email. A deleted or renamed user is
+ * dropped from the cache by UserChangeListener, so their tokens stop working on
+ * the next request instead of at expiry.
  */
 @Component
-@RequiredArgsConstructor
 public class JwtFilter extends OncePerRequestFilter {
 
     private static final Logger logger = LoggerFactory.getLogger(JwtFilter.class);
 
     private final JwtUtil jwtUtil;
     private final CustomUserDetailsService userDetailsService;
+    private final JwtAuthenticationCache authenticationCache;
+
+    // auth.jwt.filter{result}: anonymous (no token), cached, verified or rejected
+    private final Timer anonymousTimer;
+    private final Timer cachedTimer;
+    private final Timer verifiedTimer;
+    private final Timer rejectedTimer;
+
+    public JwtFilter(JwtUtil jwtUtil, CustomUserDetailsService userDetailsService,
+                     JwtAuthenticationCache authenticationCache, MeterRegistry meterRegistry) {
+        this.jwtUtil = jwtUtil;
+        this.userDetailsService = userDetailsService;
+        this.authenticationCache = authenticationCache;
+        this.anonymousTimer = timer("anonymous", meterRegistry);
+        this.cachedTimer = timer("cached", meterRegistry);
+        this.verifiedTimer = timer("verified", meterRegistry);
+        this.rejectedTimer = timer("rejected", meterRegistry);
+    }
+
+    private static Timer timer(String result, MeterRegistry meterRegistry) {
+        return Timer.builder("auth.jwt.filter").tag("result", result).register(meterRegistry);
+    }
 
     @Override
     protected void doFilterInternal(HttpServletRequest request,
                                     HttpServletResponse response,
                                     FilterChain filterChain) throws ServletException, IOException {
 
+        long start = System.nanoTime();
+        Timer timer = rejectedTimer;
         try {
             String token = extractJwtFromRequest(request);
 
-            if (StringUtils.hasText(token) && jwtUtil.validateJwtToken(token)) {
-                String username = jwtUtil.getUsernameFromJwtToken(token);
-                UserDetails userDetails = userDetailsService.loadUserByUsername(username);
-
+            UserDetails userDetails = null;
+            if (!StringUtils.hasText(token)) {
+                timer = anonymousTimer;
+            } else {
+                JwtVerificationEvent event = new JwtVerificationEvent();
+                event.begin();
+                try {
+                    userDetails = authenticationCache.get(token);
+                    if (userDetails != null) {
+                        timer = cachedTimer;
+                    } else {
+                        userDetails = authenticate(token);
+                        if (userDetails != null) {
+                            timer = verifiedTimer;
+                        }
+                    }
+                } finally {
+                    event.result = timer == cachedTimer ? "cached" : timer == verifiedTimer ? "verified" : "rejected";
+                    event.commit();
+                }
+            }
+            if (userDetails != null) {
                 UsernamePasswordAuthenticationToken authentication =
                         new UsernamePasswordAuthenticationToken(
                                 userDetails,
@@ -55,10 +105,33 @@ public class JwtFilter extends OncePerRequestFilter {
         } catch (Exception ex) {
             logger.error("JWT authentication failed: {}", ex.getMessage());
         }
+        // Only the filter's own work, not the rest of the chain
+        timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
 
         filterChain.doFilter(request, response);
     }
 
+    // A token that is not in the cache yet
+    private AuthenticatedUser authenticate(String token) {
+        Claims claims = jwtUtil.parseVerified(token);
+        if (claims == null) {
+            return null;
+        }
+        // Tokens carry the user id; only tokens issued before that need a full lookup
+        Number userId = claims.get(JwtUtil.USER_ID_CLAIM, Number.class);
+        AuthenticatedUser user;
+        if (userId != null) {
+            if (!userDetailsService.isCurrent(userId.longValue(), claims.getSubject())) {
+                return null;
+            }
+            user = new AuthenticatedUser(userId.longValue(), claims.getSubject(), "");
+        } else {
+            user = (AuthenticatedUser) userDetailsService.loadUserByUsername(claims.getSubject());
+        }
+        authenticationCache.put(token, user, claims.getExpiration());
+        return user;
+    }
+
     private String extractJwtFromRequest(HttpServletRequest request) {
         String bearerToken = request.getHeader("Authorization");
 
@@ -1,12 +1,16 @@
 package com.cropapp.util;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.security.Key;
 import java.util.Date;
 
 /**
@@ -15,41 +19,56 @@ import java.util.Date;
 @Component
 public class JwtUtil {
 
-    @Value("${jwt.secret}")
-    private String secret;
+    public static final String USER_ID_CLAIM = "uid";
+
+    private final Key key;
+
+    // Immutable and thread-safe, so built once instead of per request
+    private final JwtParser parser;
+
+    // jwt.secret is read as Base64, as the String-keyed jjwt methods always did, so issued tokens stay valid
+    public JwtUtil(@Value("${jwt.secret}") String secret) {
+        this.key = Keys.hmacShaKeyFor(Decoders.BASE64.decode(secret));
+        this.parser = Jwts.parserBuilder().setSigningKey(key).build();
+    }
 
     /**
-     * Generates a JWT token for the given email.
+     * Generates a JWT token for the given user; the email is the subject and
+     * the numeric id travels in the "uid" claim.
      */
-    public String generateToken(String email) {
+    public String generateToken(Long userId, String email) {
         return Jwts.builder()
                 .setSubject(email)
+                .claim(USER_ID_CLAIM, userId)
                 .setIssuedAt(new Date())
                 .setExpiration(new Date(System.currentTimeMillis() + 86400000)) // 1 day
-                .signWith(SignatureAlgorithm.HS256, secret)
+                .signWith(key, SignatureAlgorithm.HS256)
                 .compact();
     }
 
     /**
-     * Validates the JWT token.
+     * Verifies the signature and expiry once and returns the claims, or null if
+     * the token is not valid.
      */
-    public boolean validateJwtToken(String token) {
+    public Claims parseVerified(String token) {
         try {
-            Jwts.parser().setSigningKey(secret).parseClaimsJws(token);
-            return true;
+            return parser.parseClaimsJws(token).getBody();
         } catch (JwtException | IllegalArgumentException e) {
-            return false;
+            return null;
         }
     }
 
+    /**
+     * Validates the JWT token.
+     */
+    public boolean validateJwtToken(String token) {
+        return parseVerified(token) != null;
+    }
+
     /**
      * Extracts the username (email) from the JWT token.
      */
     public String getUsernameFromJwtToken(String token) {
-        Claims claims = Jwts.parser()
-                .setSigningKey(secret)
-                .parseClaimsJws(token)
-                .getBody();
-        return claims.getSubject();
+        return parser.parseClaimsJws(token).getBody().getSubject();
     }
 }
@@ -0,0 +1,23 @@
+package com.cropapp.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for the authentication of one bearer token in JwtFilter.
+ */
+@Name("com.cropapp.JwtVerification")
+@Label("JWT Verification")
+@Category({"Crop App", "Security"})
+@Description("Turning a bearer token into the request's user")
+@StackTrace(false)
+public class JwtVerificationEvent extends Event {
+
+    @Label("Result")
+    @Description("cached, verified or rejected")
+    public String result;
+}
@@ -0,0 +1,37 @@
+package com.cropapp.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for one call to the Python model server, from the moment it has
+ * passed the bulkhead, limiter and circuit breaker until the answer is back.
+ */
+@Name("com.cropapp.MLCall")
+@Label("ML Call")
+@Category({"Crop App", "ML"})
+@Description("A prediction request to the Python model server")
+@StackTrace(false)
+public class MLCallEvent extends Event {
+
+    @Label("Model")
+    @Description("crop or disease")
+    public String model;
+
+    @Label("Payload Size")
+    @Description("Bytes of image sent; 0 for crop readings")
+    @DataAmount
+    public long payloadSize;
+
+    @Label("Batched")
+    @Description("Sent as part of a micro-batch; the duration includes waiting for the batch")
+    public boolean batched;
+
+    @Label("Succeeded")
+    public boolean succeeded;
+}
@@ -0,0 +1,164 @@
+package com.cropapp.util;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Groups concurrent single-item calls into batched calls.
+ *
+ * Items wait in a bounded queue until either maxBatchSize items are available or
+ * the oldest one has waited lingerMillis, then the whole group goes to the batch
+ * function in one call and each caller's future is completed with its own result.
+ * At most maxConcurrentBatches batch calls run at the same time; while they are
+ * all busy the queue keeps filling, which naturally makes the next batch bigger.
+ */
+public class MicroBatcher<I, O> implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(MicroBatcher.class);
+
+    private final String name;
+    private final Function<List<I>, List<O>> batchFunction;
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final BlockingQueue<Pending<I, O>> queue;
+    private final Semaphore batchPermits;
+    private final ExecutorService batchExecutor;
+    private final Thread dispatcher;
+    private final DistributionSummary batchSizes;
+
+    private volatile boolean running = true;
+
+    public MicroBatcher(String name, Function<List<I>, List<O>> batchFunction,
+                        int maxBatchSize, long lingerMillis, int maxQueueDepth, int maxConcurrentBatches,
+                        MeterRegistry meterRegistry) {
+        this.name = name;
+        this.batchFunction = batchFunction;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        this.queue = new ArrayBlockingQueue<>(maxQueueDepth);
+        this.batchPermits = new Semaphore(maxConcurrentBatches);
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("ml-batch-" + name + "-");
+        threadFactory.setDaemon(true);
+        this.batchExecutor = Executors.newFixedThreadPool(maxConcurrentBatches, threadFactory);
+        this.batchSizes = DistributionSummary.builder("ml.batch.size")
+                .tag("name", name)
+                .register(meterRegistry);
+        meterRegistry.gauge("ml.batch.queue_depth", Tags.of("name", name), queue, BlockingQueue::size);
+
+        this.dispatcher = new Thread(this::dispatchLoop, "ml-batch-" + name + "-dispatcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    /**
+     * Queues one item. Fails fast with RejectedExecutionException when the queue is full.
+     */
+    public CompletableFuture<O> submit(I item) {
+        Pending<I, O> pending = new Pending<>(item, new CompletableFuture<>());
+        if (!running || !queue.offer(pending)) {
+            pending.result().completeExceptionally(
+                    new RejectedExecutionException("ML batch queue '" + name + "' is full"));
+        }
+        return pending.result();
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            try {
+                batchPermits.acquire();
+                List<Pending<I, O>> batch = nextBatch();
+                if (batch.isEmpty()) {
+                    batchPermits.release();
+                    continue;
+                }
+                batchExecutor.execute(() -> {
+                    try {
+                        runBatch(batch);
+                    } finally {
+                        batchPermits.release();
+                    }
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // Blocks for the first item, then lingers for more until the batch is full
+    private List<Pending<I, O>> nextBatch() throws InterruptedException {
+        List<Pending<I, O>> batch = new ArrayList<>(maxBatchSize);
+        Pending<I, O> first = queue.poll(100, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return batch;
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + lingerNanos;
+        while (batch.size() < maxBatchSize) {
+            queue.drainTo(batch, maxBatchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= maxBatchSize || remaining <= 0) {
+                break;
+            }
+            Pending<I, O> next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+        return batch;
+    }
+
+    private void runBatch(List<Pending<I, O>> batch) {
+        batchSizes.record(batch.size());
+        List<I> items = new ArrayList<>(batch.size());
+        for (Pending<I, O> pending : batch) {
+            items.add(pending.item());
+        }
+        try {
+            List<O> results = batchFunction.apply(items);
+            if (results == null || results.size() != batch.size()) {
+                throw new IllegalStateException("Batch '" + name + "' returned "
+                        + (results == null ? "no" : results.size()) + " results for " + batch.size() + " items");
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result().complete(results.get(i));
+            }
+        } catch (Exception ex) {
+            logger.warn("ML batch '{}' of {} items failed: {}", name, batch.size(), ex.getMessage());
+            for (Pending<I, O> pending : batch) {
+                pending.result().completeExceptionally(ex);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        dispatcher.interrupt();
+        batchExecutor.shutdown();
+        Pending<I, O> pending;
+        while ((pending = queue.poll()) != null) {
+            pending.result().completeExceptionally(new RejectedExecutionException("ML batcher '" + name + "' is shutting down"));
+        }
+    }
+
+    private record Pending<I, O>(I item, CompletableFuture<O> result) {
+    }
+}
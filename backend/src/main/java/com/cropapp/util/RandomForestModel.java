@@ -0,0 +1,153 @@
+package com.cropapp.util;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A scikit-learn RandomForestClassifier flattened into primitive arrays.
+ *
+ * All trees share one set of node arrays; a tree is just its root offset. A
+ * negative left child marks a leaf and encodes the leaf's row in leafValues
+ * (~left). The file layout is written by ml-api/export_forest.py.
+ *
+ * Prediction follows sklearn exactly: inputs are compared as float32 against
+ * float64 thresholds, and the forest probability is the mean of the leaf
+ * probabilities. predictProba does not allocate.
+ */
+public final class RandomForestModel {
+
+    private static final int MAGIC = 0x43524631; // "CRF1"
+
+    private final int featureCount;
+    private final String[] classes;
+    private final int[] treeRoots;
+    private final int[] left;
+    private final int[] right;
+    private final int[] feature;
+    private final double[] threshold;
+    private final double[] leafValues;
+
+    private RandomForestModel(int featureCount, String[] classes, int[] treeRoots, int[] left, int[] right,
+                              int[] feature, double[] threshold, double[] leafValues) {
+        this.featureCount = featureCount;
+        this.classes = classes;
+        this.treeRoots = treeRoots;
+        this.left = left;
+        this.right = right;
+        this.feature = feature;
+        this.threshold = threshold;
+        this.leafValues = leafValues;
+    }
+
+    public static RandomForestModel read(InputStream source) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(source));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a crop forest file (bad magic)");
+        }
+        int featureCount = in.readInt();
+        int classCount = in.readInt();
+        int treeCount = in.readInt();
+
+        String[] classes = new String[classCount];
+        for (int c = 0; c < classCount; c++) {
+            byte[] name = new byte[in.readUnsignedShort()];
+            in.readFully(name);
+            classes[c] = new String(name, StandardCharsets.UTF_8);
+        }
+
+        int[] treeRoots = new int[treeCount];
+        int[] left = new int[0];
+        int[] right = new int[0];
+        int[] feature = new int[0];
+        double[] threshold = new double[0];
+        double[] leafValues = new double[0];
+        int nodeOffset = 0;
+        int leafOffset = 0;
+
+        for (int t = 0; t < treeCount; t++) {
+            int nodeCount = in.readInt();
+            int leafCount = in.readInt();
+            treeRoots[t] = nodeOffset;
+
+            left = Arrays.copyOf(left, nodeOffset + nodeCount);
+            right = Arrays.copyOf(right, nodeOffset + nodeCount);
+            feature = Arrays.copyOf(feature, nodeOffset + nodeCount);
+            threshold = Arrays.copyOf(threshold, nodeOffset + nodeCount);
+            leafValues = Arrays.copyOf(leafValues, (leafOffset + leafCount) * classCount);
+
+            // Child and leaf indexes in the file are tree-local; rebase them into the shared arrays
+            for (int i = 0; i < nodeCount; i++) {
+                int child = in.readInt();
+                left[nodeOffset + i] = child < 0 ? ~(~child + leafOffset) : child + nodeOffset;
+            }
+            for (int i = 0; i < nodeCount; i++) {
+                int child = in.readInt();
+                right[nodeOffset + i] = child < 0 ? child : child + nodeOffset;
+            }
+            for (int i = 0; i < nodeCount; i++) {
+                int f = in.readInt();
+                if (f < 0 || f >= featureCount) {
+                    throw new IOException("Feature index " + f + " out of range in tree " + t);
+                }
+                feature[nodeOffset + i] = f;
+            }
+            for (int i = 0; i < nodeCount; i++) {
+                threshold[nodeOffset + i] = in.readDouble();
+            }
+            for (int i = 0; i < leafCount * classCount; i++) {
+                leafValues[leafOffset * classCount + i] = in.readDouble();
+            }
+
+            nodeOffset += nodeCount;
+            leafOffset += leafCount;
+        }
+
+        return new RandomForestModel(featureCount, classes, treeRoots, left, right, feature, threshold, leafValues);
+    }
+
+    /**
+     * Writes the mean class probability over all trees into out (length >= classCount()).
+     */
+    public void predictProba(double[] x, double[] out) {
+        int classCount = classes.length;
+        Arrays.fill(out, 0, classCount, 0.0);
+
+        for (int root : treeRoots) {
+            int node = root;
+            int child;
+            while ((child = left[node]) >= 0) {
+                // sklearn casts inputs to float32 before comparing
+                node = (double) (float) x[feature[node]] <= threshold[node] ? child : right[node];
+            }
+            int base = ~child * classCount;
+            for (int c = 0; c < classCount; c++) {
+                out[c] += leafValues[base + c];
+            }
+        }
+
+        double trees = treeRoots.length;
+        for (int c = 0; c < classCount; c++) {
+            out[c] /= trees;
+        }
+    }
+
+    public int featureCount() {
+        return featureCount;
+    }
+
+    public int classCount() {
+        return classes.length;
+    }
+
+    public String className(int index) {
+        return classes[index];
+    }
+
+    public int treeCount() {
+        return treeRoots.length;
+    }
+}
@@ -0,0 +1,99 @@
+package com.cropapp.util;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Picks a model-server replica by "power of two choices": sample two replicas
+ * at random and take the one with fewer outstanding requests. This tracks load
+ * almost as well as a full least-outstanding scan while never herding every
+ * caller onto the same momentarily idle replica.
+ *
+ * Callers must pair every {@link #acquire} with {@link Replica#release()}.
+ */
+public class ReplicaBalancer {
+
+    private final List<Replica> replicas;
+
+    public ReplicaBalancer(List<String> baseUrls, MeterRegistry meterRegistry) {
+        if (baseUrls.isEmpty()) {
+            throw new IllegalArgumentException("At least one model server replica is required");
+        }
+        this.replicas = baseUrls.stream()
+                .map(url -> url.endsWith("/") ? url.substring(0, url.length() - 1) : url)
+                .map(Replica::new)
+                .toList();
+        // Tagged by position in ml.api.base-urls, so the scrape doesn't publish internal hosts
+        for (int i = 0; i < replicas.size(); i++) {
+            meterRegistry.gauge("ml.api.replica.outstanding", Tags.of("replica", String.valueOf(i)),
+                    replicas.get(i).outstanding, AtomicInteger::get);
+        }
+    }
+
+    /**
+     * Chooses a replica other than {@code exclude} (when there is a choice) and
+     * counts a request against it.
+     */
+    public Replica acquire(Replica exclude) {
+        Replica chosen = choose(exclude);
+        chosen.outstanding.incrementAndGet();
+        return chosen;
+    }
+
+    public int size() {
+        return replicas.size();
+    }
+
+    private Replica choose(Replica exclude) {
+        int n = replicas.size();
+        if (n == 1) {
+            return replicas.get(0);
+        }
+        int excluded = exclude == null ? -1 : replicas.indexOf(exclude);
+        int candidates = excluded < 0 ? n : n - 1;
+        if (candidates == 1) {
+            return replicas.get(excluded == 0 ? 1 : 0);
+        }
+
+        // Two distinct candidates, indexes shifted past the excluded replica
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int i = random.nextInt(candidates);
+        int j = random.nextInt(candidates - 1);
+        if (j >= i) {
+            j++;
+        }
+        Replica a = replicas.get(skip(i, excluded));
+        Replica b = replicas.get(skip(j, excluded));
+        return a.outstanding.get() <= b.outstanding.get() ? a : b;
+    }
+
+    private static int skip(int index, int excluded) {
+        return excluded >= 0 && index >= excluded ? index + 1 : index;
+    }
+
+    public static final class Replica {
+
+        private final String baseUrl;
+        private final AtomicInteger outstanding = new AtomicInteger();
+
+        private Replica(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+
+        public String baseUrl() {
+            return baseUrl;
+        }
+
+        public int outstanding() {
+            return outstanding.get();
+        }
+
+        public void release() {
+            outstanding.decrementAndGet();
+        }
+    }
+}
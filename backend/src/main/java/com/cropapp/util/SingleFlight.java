@@ -0,0 +1,73 @@
+package com.cropapp.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Collapses concurrent calls for the same key into one execution.
+ *
+ * The first caller for a key (the leader) runs the call; everyone arriving while
+ * it is in flight (followers) waits on the same future and gets the same result
+ * or the same exception. Nothing is remembered once the call completes - caching
+ * is a separate concern.
+ *
+ * Leader/follower counts are published as ml.coalescer.calls{name, role}; the
+ * coalescing ratio is followers / (leaders + followers).
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter leaders;
+    private final Counter followers;
+
+    public SingleFlight(String name, MeterRegistry meterRegistry) {
+        this.leaders = Counter.builder("ml.coalescer.calls")
+                .tag("name", name)
+                .tag("role", "leader")
+                .register(meterRegistry);
+        this.followers = Counter.builder("ml.coalescer.calls")
+                .tag("name", name)
+                .tag("role", "follower")
+                .register(meterRegistry);
+        meterRegistry.gauge("ml.coalescer.in_flight", Tags.of("name", name), inFlight, ConcurrentHashMap::size);
+    }
+
+    /**
+     * Starts the call unless an identical one is already in flight; the leader's
+     * future is shared with every follower.
+     */
+    public CompletableFuture<V> submit(K key, Supplier<CompletableFuture<V>> call) {
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            followers.increment();
+            return existing;
+        }
+        leaders.increment();
+
+        CompletableFuture<V> upstream;
+        try {
+            upstream = call.get();
+        } catch (Throwable t) {
+            upstream = CompletableFuture.failedFuture(t);
+        }
+        upstream.whenComplete((value, error) -> {
+            // Remove before completing so late arrivals start a fresh call
+            inFlight.remove(key, mine);
+            if (error != null) {
+                mine.completeExceptionally(error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error);
+            } else {
+                mine.complete(value);
+            }
+        });
+        return mine;
+    }
+}
@@ -0,0 +1,29 @@
+package com.cropapp.util;
+
+import com.cropapp.model.User;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+/**
+ * JPA listener on {@link User}: any update or delete (password, profile, account
+ * removal) drops the user's cached token authentications.
+ */
+@Component
+public class UserChangeListener {
+
+    // Resolved lazily: Hibernate creates listeners while the EntityManagerFactory is
+    // still starting, and JPA-only test slices have no token cache at all
+    private final ObjectProvider<JwtAuthenticationCache> authenticationCache;
+
+    public UserChangeListener(ObjectProvider<JwtAuthenticationCache> authenticationCache) {
+        this.authenticationCache = authenticationCache;
+    }
+
+    @PostUpdate
+    @PostRemove
+    public void onChange(User user) {
+        authenticationCache.ifAvailable(cache -> cache.invalidateUser(user.getId()));
+    }
+}
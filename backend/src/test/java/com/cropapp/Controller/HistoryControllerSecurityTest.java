@@ -0,0 +1,140 @@
+package com.cropapp.Controller;
+
+import com.cropapp.Service.HistoryExporter;
+import com.cropapp.Service.HistoryService;
+import com.cropapp.Service.RecordingHistoryWriter;
+import com.cropapp.config.SecurityConfig;
+import com.cropapp.repository.HistoryRepository;
+import com.cropapp.repository.UserRepository;
+import com.cropapp.util.CustomUserDetailsService;
+import com.cropapp.util.JwtAuthEntryPoint;
+import com.cropapp.util.JwtAuthenticationCache;
+import com.cropapp.util.JwtUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.function.BiFunction;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// The real SecurityConfig and JwtFilter in front of a streamed export, async dispatch included
+@WebMvcTest(HistoryController.class)
+@Import({SecurityConfig.class, JwtUtil.class, JwtAuthenticationCache.class, JwtAuthEntryPoint.class,
+        HistoryControllerSecurityTest.Beans.class})
+class HistoryControllerSecurityTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Test
+    void streamedExportSurvivesTheAsyncDispatch() throws Exception {
+        MvcResult result = mockMvc.perform(get("/api/history/export").param("format", "csv")
+                        .header("Authorization", "Bearer " + jwtUtil.generateToken(1L, "farmer@example.com")))
+                .andReturn();
+        assertTrue(result.getRequest().isAsyncStarted());
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString(",CROP,N:1,rice,")));
+    }
+
+    @Test
+    void exportStillNeedsAToken() throws Exception {
+        mockMvc.perform(get("/api/history/export")).andExpect(status().isUnauthorized());
+    }
+
+    @TestConfiguration
+    static class Beans {
+
+        @Bean
+        SimpleMeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+
+        // Only farmer@example.com, id 1, exists
+        @Bean
+        CustomUserDetailsService customUserDetailsService(MeterRegistry meterRegistry) {
+            UserRepository users = repository(UserRepository.class, (method, args) ->
+                    method.getName().equals("existsByIdAndEmail")
+                            ? args[0].equals(1L) && args[1].equals("farmer@example.com") : null);
+            return new CustomUserDetailsService(users, meterRegistry);
+        }
+
+        @Bean(destroyMethod = "shutdown")
+        EmbeddedDatabase database() {
+            EmbeddedDatabase database = new EmbeddedDatabaseBuilder()
+                    .setType(EmbeddedDatabaseType.H2)
+                    .generateUniqueName(true)
+                    .build();
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(database);
+            jdbcTemplate.execute("CREATE TABLE prediction_history (id BIGINT AUTO_INCREMENT PRIMARY KEY, "
+                    + "user_id BIGINT NOT NULL, type VARCHAR(255), input_details VARCHAR(1000), "
+                    + "result VARCHAR(1000), \"TIMESTAMP\" TIMESTAMP)");
+            jdbcTemplate.update("INSERT INTO prediction_history (user_id, type, input_details, result) "
+                    + "VALUES (1, 'CROP', 'N:1', 'rice')");
+            return database;
+        }
+
+        @Bean
+        HistoryExporter historyExporter(EmbeddedDatabase database) {
+            return new HistoryExporter(database, new ObjectMapper(), 100);
+        }
+
+        // The export doesn't go through HistoryService; it only has to exist
+        @Bean
+        HistoryService historyService() {
+            return new HistoryService();
+        }
+
+        @Bean
+        HistoryRepository historyRepository() {
+            return repository(HistoryRepository.class, (method, args) -> null);
+        }
+
+        @Bean
+        RecordingHistoryWriter historyWriter() {
+            return new RecordingHistoryWriter();
+        }
+
+        // A repository answering what the test needs; any other query fails
+        private static <T> T repository(Class<T> type, BiFunction<Method, Object[], Object> answers) {
+            return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (proxy, method, args) -> {
+                if (method.getDeclaringClass() == Object.class) {
+                    return switch (method.getName()) {
+                        case "equals" -> proxy == args[0];
+                        case "hashCode" -> System.identityHashCode(proxy);
+                        default -> type.getSimpleName();
+                    };
+                }
+                Object answer = answers.apply(method, args);
+                if (answer == null) {
+                    throw new UnsupportedOperationException(method.getName());
+                }
+                return answer;
+            }));
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.cropapp.Controller;
+
+import com.cropapp.Service.HistoryExporter;
+import com.cropapp.util.AuthenticatedUser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.method.annotation.AuthenticationPrincipalArgumentResolver;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.time.Duration;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class HistoryControllerTest {
+
+    private EmbeddedDatabase database;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .build();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.execute("CREATE TABLE prediction_history (id BIGINT AUTO_INCREMENT PRIMARY KEY, "
+                + "user_id BIGINT NOT NULL, type VARCHAR(255), input_details VARCHAR(1000), "
+                + "result VARCHAR(1000), \"TIMESTAMP\" TIMESTAMP)");
+        jdbcTemplate.update("INSERT INTO prediction_history (user_id, type, input_details, result) VALUES (1, 'CROP', 'N:1', 'rice')");
+
+        HistoryController controller = new HistoryController();
+        ReflectionTestUtils.setField(controller, "historyExporter", new HistoryExporter(database, new ObjectMapper(), 100));
+        ReflectionTestUtils.setField(controller, "exportTimeout", Duration.ofMinutes(30));
+        mockMvc = MockMvcBuilders.standaloneSetup(controller)
+                .setCustomArgumentResolvers(new AuthenticationPrincipalArgumentResolver())
+                .build();
+
+        AuthenticatedUser user = new AuthenticatedUser(1L, "farmer@example.com", "");
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+        database.shutdown();
+    }
+
+    @Test
+    void exportGetsItsOwnAsyncTimeout() throws Exception {
+        MvcResult result = mockMvc.perform(get("/api/history/export").param("format", "csv")).andReturn();
+
+        assertTrue(result.getRequest().isAsyncStarted());
+        assertEquals(Duration.ofMinutes(30).toMillis(), result.getRequest().getAsyncContext().getTimeout());
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString(",CROP,N:1,rice,")));
+    }
+}
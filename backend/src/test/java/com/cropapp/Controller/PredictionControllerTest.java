@@ -0,0 +1,229 @@
+package com.cropapp.Controller;
+
+import com.cropapp.Service.AnalysisService;
+import com.cropapp.Service.HistoryService;
+import com.cropapp.Service.HistoryWriter;
+import com.cropapp.Service.RecordingHistoryWriter;
+import com.cropapp.Service.StubMLService;
+import com.cropapp.config.GlobalExceptionHandler;
+import com.cropapp.dto.CropResponse;
+import com.cropapp.dto.DiseaseResponse;
+import com.cropapp.util.AuthenticatedUser;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.method.annotation.AuthenticationPrincipalArgumentResolver;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class PredictionControllerTest {
+
+    private static final String READINGS =
+            "{\"N\":90,\"P\":42,\"K\":43,\"temperature\":20.8,\"humidity\":82.0,\"ph\":6.5,\"rainfall\":202.9}";
+
+    private final StubMLService mlService = StubMLService.create();
+    private final RecordingHistoryWriter historyWriter = new RecordingHistoryWriter();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        mlService.crop = request -> crop("rice");
+        mlService.disease = (fileName, image) -> disease("Tomato___healthy");
+
+        HistoryService historyService = new HistoryService();
+        ReflectionTestUtils.setField(historyService, "historyWriter", historyWriter);
+
+        PredictionController controller = new PredictionController();
+        ReflectionTestUtils.setField(controller, "mlService", mlService);
+        ReflectionTestUtils.setField(controller, "historyService", historyService);
+        ReflectionTestUtils.setField(controller, "analysisService",
+                new AnalysisService(mlService, historyService, Duration.ofSeconds(20), 5));
+        ReflectionTestUtils.setField(controller, "meterRegistry", registry);
+        ReflectionTestUtils.setField(controller, "cropTimeout", Duration.ofSeconds(5));
+        ReflectionTestUtils.setField(controller, "diseaseTimeout", Duration.ofSeconds(30));
+        mockMvc = MockMvcBuilders.standaloneSetup(controller)
+                .setControllerAdvice(new GlobalExceptionHandler(registry))
+                .setCustomArgumentResolvers(new AuthenticationPrincipalArgumentResolver())
+                .build();
+
+        AuthenticatedUser user = new AuthenticatedUser(7L, "farmer@example.com", "");
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities()));
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        SecurityContextHolder.clearContext();
+        mlService.shutdown();
+        historyWriter.destroy();
+    }
+
+    @Test
+    void recommendAnswersAsynchronouslyAndSavesHistory() throws Exception {
+        MvcResult result = mockMvc.perform(post("/api/recommend").contentType(MediaType.APPLICATION_JSON).content(READINGS))
+                .andReturn();
+
+        assertTrue(result.getRequest().isAsyncStarted());
+        assertEquals(Duration.ofSeconds(5).toMillis(), result.getRequest().getAsyncContext().getTimeout());
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.top_crops[0].crop").value("rice"));
+
+        assertEquals(List.of(new HistoryWriter.Entry(7L, "CROP", "N:90 P:42 K:43 pH:6.5", "rice", null)), withoutTime());
+    }
+
+    @Test
+    void detectAnswersAsynchronouslyAndSavesHistory() throws Exception {
+        MvcResult result = mockMvc.perform(multipart("/api/detect").file(leaf("file", "leaf.jpg"))).andReturn();
+
+        assertTrue(result.getRequest().isAsyncStarted());
+        assertEquals(Duration.ofSeconds(30).toMillis(), result.getRequest().getAsyncContext().getTimeout());
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.disease").value("Tomato___healthy"));
+
+        assertEquals(List.of(new HistoryWriter.Entry(7L, "DISEASE", "Image: leaf.jpg", "Tomato___healthy (97.00%)", null)),
+                withoutTime());
+    }
+
+    @Test
+    void analyzeAnswersAsynchronouslyAndSavesOneRecord() throws Exception {
+        MvcResult result = mockMvc.perform(multipart("/api/analyze")
+                        .file(new MockMultipartFile("readings", "", MediaType.APPLICATION_JSON_VALUE,
+                                READINGS.getBytes(StandardCharsets.UTF_8)))
+                        .file(leaf("images", "a.jpg"))
+                        .file(leaf("images", "b.jpg")))
+                .andReturn();
+
+        assertTrue(result.getRequest().isAsyncStarted());
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.top_crops[0].crop").value("rice"))
+                .andExpect(jsonPath("$.diseases[1].file").value("b.jpg"));
+
+        assertEquals(1, historyWriter.enqueued.size());
+        assertEquals("ANALYSIS", historyWriter.enqueued.get(0).type());
+    }
+
+    @Test
+    void tooManyImagesGetTheErrorBodyWithTheLimit() throws Exception {
+        var request = multipart("/api/analyze")
+                .file(new MockMultipartFile("readings", "", MediaType.APPLICATION_JSON_VALUE,
+                        READINGS.getBytes(StandardCharsets.UTF_8)));
+        for (int i = 0; i < 6; i++) {
+            request.file(leaf("images", i + ".jpg"));
+        }
+
+        mockMvc.perform(request)
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("Too many images"))
+                .andExpect(jsonPath("$.message").value("At most 5 images can be sent at once"));
+
+        assertEquals(1.0, registry.get("http.errors").tag("handler", "too_many_images").counter().count());
+        assertTrue(historyWriter.enqueued.isEmpty());
+    }
+
+    @Test
+    void slowPredictionGets503AndIsStillSavedWhenItCompletes() throws Exception {
+        CompletableFuture<CropResponse> pending = new CompletableFuture<>();
+        mlService.cropAsync = request -> pending;
+
+        MvcResult result = mockMvc.perform(post("/api/recommend").contentType(MediaType.APPLICATION_JSON).content(READINGS))
+                .andReturn();
+        timeOut(result);
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "1"));
+        assertTrue(historyWriter.enqueued.isEmpty());
+
+        pending.complete(crop("maize"));
+        assertEquals("maize", historyWriter.enqueued.get(0).result());
+    }
+
+    @Test
+    void unreadableUploadGetsTheErrorBody() throws Exception {
+        MockMultipartFile broken = new MockMultipartFile("file", "leaf.jpg", MediaType.IMAGE_JPEG_VALUE, new byte[10]) {
+            @Override
+            public byte[] getBytes() throws IOException {
+                throw new IOException("No space left on device");
+            }
+        };
+
+        mockMvc.perform(multipart("/api/detect").file(broken))
+                .andExpect(status().isInternalServerError())
+                .andExpect(jsonPath("$.error").value("Server error"));
+
+        assertEquals(1.0, registry.get("http.errors").tag("handler", "unexpected").counter().count());
+        assertTrue(historyWriter.enqueued.isEmpty());
+    }
+
+    @Test
+    void anonymousPredictionsAreNotSaved() throws Exception {
+        SecurityContextHolder.clearContext();
+
+        MvcResult result = mockMvc.perform(multipart("/api/detect").file(leaf("file", "leaf.jpg"))).andReturn();
+        mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk());
+
+        assertTrue(historyWriter.enqueued.isEmpty());
+    }
+
+    // What the container does once the async timeout has passed
+    private static void timeOut(MvcResult result) throws Exception {
+        assertTrue(result.getRequest().isAsyncStarted());
+        MockAsyncContext context = (MockAsyncContext) result.getRequest().getAsyncContext();
+        for (AsyncListener listener : context.getListeners()) {
+            listener.onTimeout(new AsyncEvent(context));
+        }
+    }
+
+    private List<HistoryWriter.Entry> withoutTime() {
+        return historyWriter.enqueued.stream()
+                .map(entry -> new HistoryWriter.Entry(entry.userId(), entry.type(), entry.inputDetails(), entry.result(), null))
+                .toList();
+    }
+
+    private static MockMultipartFile leaf(String field, String name) {
+        return new MockMultipartFile(field, name, MediaType.IMAGE_JPEG_VALUE, name.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static CropResponse crop(String name) {
+        CropResponse.Recommendation top = new CropResponse.Recommendation();
+        top.setCrop(name);
+        top.setConfidence("90.00%");
+        CropResponse response = new CropResponse();
+        response.setTop_crops(List.of(top));
+        return response;
+    }
+
+    private static DiseaseResponse disease(String name) {
+        DiseaseResponse response = new DiseaseResponse();
+        response.setDisease(name);
+        response.setConfidence("97.00%");
+        return response;
+    }
+}
@@ -0,0 +1,181 @@
+package com.cropapp.Service;
+
+import com.cropapp.dto.AnalysisResponse;
+import com.cropapp.dto.CropRequest;
+import com.cropapp.dto.CropResponse;
+import com.cropapp.dto.DiseaseBatchResult;
+import com.cropapp.dto.DiseaseResponse;
+import com.cropapp.exception.MLServiceUnavailableException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AnalysisServiceTest {
+
+    private final StubMLService mlService = StubMLService.create();
+    private final RecordingHistoryWriter historyWriter = new RecordingHistoryWriter();
+    private final HistoryService historyService = new HistoryService();
+
+    // The calls the analysis started, completed by each test whenever it wants
+    private final CompletableFuture<CropResponse> crop = new CompletableFuture<>();
+    private final Map<String, CompletableFuture<DiseaseResponse>> diseases = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(historyService, "historyWriter", historyWriter);
+        mlService.cropAsync = request -> crop;
+        mlService.diseaseAsync = image -> diseases.computeIfAbsent(image.getOriginalFilename(), name -> new CompletableFuture<>());
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        mlService.shutdown();
+        historyWriter.destroy();
+    }
+
+    @Test
+    void startsEveryCallBeforeAnyHasAnswered() throws Exception {
+        CompletableFuture<AnalysisResponse> analysis = service(Duration.ofSeconds(20))
+                .analyze(readings(), List.of(leaf("a.jpg"), leaf("b.jpg"), leaf("c.jpg")), 7L);
+
+        // Nothing has answered, yet every call is already out
+        assertEquals(List.of("a.jpg", "b.jpg", "c.jpg"), diseases.keySet().stream().sorted().toList());
+        assertFalse(analysis.isDone());
+
+        diseases.get("c.jpg").complete(disease("Tomato___healthy"));
+        diseases.get("a.jpg").complete(disease("Tomato___Late_blight"));
+        crop.complete(crop("rice"));
+        assertFalse(analysis.isDone());
+        diseases.get("b.jpg").complete(disease("Tomato___healthy"));
+
+        AnalysisResponse response = analysis.get(5, TimeUnit.SECONDS);
+        assertEquals("rice", response.getTop_crops().get(0).getCrop());
+        assertNull(response.getCrop_error());
+        // In upload order, whatever order they answered in
+        assertEquals(List.of(
+                new DiseaseBatchResult("a.jpg", "Tomato___Late_blight", "97.00%", null),
+                new DiseaseBatchResult("b.jpg", "Tomato___healthy", "97.00%", null),
+                new DiseaseBatchResult("c.jpg", "Tomato___healthy", "97.00%", null)), response.getDiseases());
+    }
+
+    @Test
+    void everythingSharesOneDeadline() throws Exception {
+        Duration deadline = Duration.ofMillis(500);
+        long start = System.nanoTime();
+        CompletableFuture<AnalysisResponse> analysis = service(deadline)
+                .analyze(readings(), List.of(leaf("a.jpg"), leaf("b.jpg"), leaf("c.jpg")), null);
+        crop.complete(crop("rice"));
+
+        AnalysisResponse response = analysis.get(5, TimeUnit.SECONDS);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // One deadline for all three images, not one after the other
+        assertTrue(elapsed >= 500 && elapsed < 1500, elapsed + " ms");
+        assertEquals("rice", response.getTop_crops().get(0).getCrop());
+        for (DiseaseBatchResult disease : response.getDiseases()) {
+            assertEquals("No answer within 500 ms", disease.getError());
+        }
+        // Only the analysis' own copies timed out; the calls go on and still fill the caches
+        assertTrue(diseases.values().stream().noneMatch(CompletableFuture::isDone));
+    }
+
+    @Test
+    void returnsWhatAnsweredAndAnErrorForTheRest() throws Exception {
+        mlService.diseaseAsync = image -> switch (image.getOriginalFilename()) {
+            case "big.jpg" -> throw new MaxUploadSizeExceededException(1024);
+            case "broken.jpg" -> throw new IllegalStateException("Stream closed");
+            default -> diseases.computeIfAbsent(image.getOriginalFilename(), name -> new CompletableFuture<>());
+        };
+        CompletableFuture<AnalysisResponse> analysis = service(Duration.ofSeconds(20))
+                .analyze(readings(), List.of(leaf("a.jpg"), leaf("big.jpg"), leaf("broken.jpg")), 7L);
+
+        crop.completeExceptionally(new MLServiceUnavailableException(
+                "Crop recommendation is temporarily unavailable, please retry shortly", Duration.ofSeconds(1), null));
+        diseases.get("a.jpg").complete(disease("Tomato___healthy"));
+
+        AnalysisResponse response = analysis.get(5, TimeUnit.SECONDS);
+        assertNull(response.getTop_crops());
+        assertEquals("Crop recommendation is temporarily unavailable, please retry shortly", response.getCrop_error());
+        assertEquals(List.of(
+                new DiseaseBatchResult("a.jpg", "Tomato___healthy", "97.00%", null),
+                new DiseaseBatchResult("big.jpg", null, null, "Image is larger than 1024 bytes"),
+                new DiseaseBatchResult("broken.jpg", null, null, "Stream closed")), response.getDiseases());
+    }
+
+    @Test
+    void savesTheAnalysisAsOneRecord() throws Exception {
+        CompletableFuture<AnalysisResponse> analysis = service(Duration.ofSeconds(20))
+                .analyze(readings(), List.of(leaf("a.jpg"), leaf("b.jpg")), 7L);
+        crop.complete(crop("rice"));
+        diseases.get("a.jpg").complete(disease("Tomato___healthy"));
+        diseases.get("b.jpg").completeExceptionally(new IllegalStateException("Model server said no"));
+        analysis.get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, historyWriter.enqueued.size());
+        HistoryWriter.Entry record = historyWriter.enqueued.get(0);
+        assertEquals(7L, record.userId());
+        assertEquals("ANALYSIS", record.type());
+        assertEquals("N:90 P:42 K:43 pH:6.5 | Images: a.jpg, b.jpg", record.inputDetails());
+        assertEquals("Crop: rice | a.jpg: Tomato___healthy (97.00%) | b.jpg: Model server said no", record.result());
+    }
+
+    @Test
+    void savesNothingWhenEverythingFailedOrNobodyIsLoggedIn() throws Exception {
+        crop.completeExceptionally(new IllegalStateException("Model server said no"));
+        CompletableFuture<AnalysisResponse> failed = service(Duration.ofMillis(100))
+                .analyze(readings(), List.of(leaf("a.jpg")), 7L);
+        assertEquals("No answer within 100 ms", failed.get(5, TimeUnit.SECONDS).getDiseases().get(0).getError());
+
+        mlService.cropAsync = request -> CompletableFuture.completedFuture(crop("rice"));
+        service(Duration.ofSeconds(20)).analyze(readings(), List.of(), null).get(5, TimeUnit.SECONDS);
+
+        assertTrue(historyWriter.enqueued.isEmpty());
+    }
+
+    private AnalysisService service(Duration deadline) {
+        return new AnalysisService(mlService, historyService, deadline, 5);
+    }
+
+    private static CropRequest readings() {
+        CropRequest readings = new CropRequest();
+        readings.setN(90);
+        readings.setP(42);
+        readings.setK(43);
+        readings.setPh(6.5);
+        return readings;
+    }
+
+    private static MultipartFile leaf(String name) {
+        return new MockMultipartFile("images", name, "image/jpeg", name.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static CropResponse crop(String name) {
+        CropResponse.Recommendation top = new CropResponse.Recommendation();
+        top.setCrop(name);
+        top.setConfidence("90.00%");
+        CropResponse response = new CropResponse();
+        response.setTop_crops(List.of(top));
+        return response;
+    }
+
+    private static DiseaseResponse disease(String name) {
+        DiseaseResponse response = new DiseaseResponse();
+        response.setDisease(name);
+        response.setConfidence("97.00%");
+        return response;
+    }
+}
@@ -0,0 +1,56 @@
+package com.cropapp.Service;
+
+import com.cropapp.util.MLCallEvent;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContinuousRecordingTest {
+
+    @TempDir
+    Path dumpDir;
+
+    @Test
+    void dumpContainsAppEvents() throws Exception {
+        ContinuousRecording recording = new ContinuousRecording(true, "default", Duration.ofMinutes(5),
+                DataSize.ofMegabytes(20), dumpDir.toString());
+        try {
+            assertTrue(recording.isRunning());
+            MLCallEvent event = new MLCallEvent();
+            event.begin();
+            event.model = "disease";
+            event.payloadSize = 4096;
+            event.succeeded = true;
+            event.commit();
+
+            Path file = recording.dump();
+
+            assertEquals(dumpDir, file.getParent());
+            List<RecordedEvent> calls = RecordingFile.readAllEvents(file).stream()
+                    .filter(recorded -> recorded.getEventType().getName().equals("com.cropapp.MLCall"))
+                    .toList();
+            assertEquals(1, calls.size());
+            assertEquals("disease", calls.get(0).getString("model"));
+            assertEquals(4096, calls.get(0).getLong("payloadSize"));
+        } finally {
+            recording.destroy();
+        }
+    }
+
+    @Test
+    void refusesToDumpWhenOff() {
+        ContinuousRecording recording = new ContinuousRecording(false, "default", Duration.ofMinutes(5),
+                DataSize.ofMegabytes(20), dumpDir.toString());
+
+        assertFalse(recording.isRunning());
+        assertThrows(IllegalStateException.class, recording::dump);
+    }
+}
@@ -0,0 +1,305 @@
+package com.cropapp.Service;
+
+import com.cropapp.dto.CropBatchResult;
+import com.cropapp.dto.CropRequest;
+import com.cropapp.dto.CropResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CropBatchServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final StubMLService mlService = StubMLService.create();
+    private final RecordingHistoryWriter historyWriter = new RecordingHistoryWriter();
+    private CropBatchService service;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (service != null) {
+            service.shutdown();
+        }
+        mlService.shutdown();
+        historyWriter.destroy();
+    }
+
+    @Test
+    void mapsCsvColumnsByHeaderName() throws Exception {
+        mlService.crop = CropBatchServiceTest::echo;
+        service = service(100);
+
+        // Any column order and case, quoted fields, a label column to ignore, whole numbers written as 90.0
+        List<CropBatchResult> results = recommend(CropBatchService.Format.CSV,
+                "label,Rainfall,ph,Humidity,Temperature,k,p,n\n"
+                        + "rice,202.9,6.5,82.0,20.8,43,42,90\n"
+                        + "\"maize\", \"65.1\" ,6.1,60.2,22.6,\"20.0\",58.0,71\n");
+
+        assertEquals(2, results.size());
+        assertEquals(new CropBatchResult(1L, top("90/42/43/20.8/82.0/6.5/202.9"), null), results.get(0));
+        assertEquals(new CropBatchResult(2L, top("71/58/20/22.6/60.2/6.1/65.1"), null), results.get(1));
+    }
+
+    @Test
+    void skipsByteOrderMarkAndBlankLines() throws Exception {
+        mlService.crop = CropBatchServiceTest::echo;
+        service = service(100);
+
+        List<CropBatchResult> results = recommend(CropBatchService.Format.CSV,
+                "\uFEFFN,P,K,temperature,humidity,ph,rainfall\r\n"
+                        + "\r\n"
+                        + "90,42,43,20.8,82.0,6.5,202.9\r\n"
+                        + "   \r\n"
+                        + "\n"
+                        + "71,58,20,22.6,60.2,6.1,65.1\r\n");
+
+        assertEquals(List.of(1L, 2L), rows(results));
+        assertTrue(results.stream().allMatch(result -> result.getError() == null));
+    }
+
+    @Test
+    void malformedRowsGetAnErrorLineAndTheRestIsScored() throws Exception {
+        mlService.crop = CropBatchServiceTest::echo;
+        service = service(100);
+
+        List<CropBatchResult> results = recommend(CropBatchService.Format.CSV,
+                "N,P,K,temperature,humidity,ph,rainfall\n"
+                        + "90,42,43,20.8,82.0,6.5,202.9\n"
+                        + "90,42,forty,20.8,82.0,6.5,202.9\n"
+                        + "90,42,43,20.8,82.0\n"
+                        + "90,,43,20.8,82.0,6.5,202.9\n"
+                        + "71,58,20,22.6,60.2,6.1,65.1\n");
+
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L), rows(results));
+        assertNull(results.get(0).getError());
+        assertEquals("Invalid row: K is not a number", results.get(1).getError());
+        assertEquals("Invalid row: missing ph", results.get(2).getError());
+        assertEquals("Invalid row: missing P", results.get(3).getError());
+        assertNull(results.get(4).getError());
+    }
+
+    @Test
+    void missingColumnEndsTheUploadWithOneErrorLine() throws Exception {
+        mlService.crop = CropBatchServiceTest::echo;
+        service = service(100);
+
+        List<CropBatchResult> results = recommend(CropBatchService.Format.CSV,
+                "N,P,K,temperature,humidity,rainfall\n90,42,43,20.8,82.0,202.9\n");
+
+        assertEquals(1, results.size());
+        assertNull(results.get(0).getRow());
+        assertEquals("Could not read the file after row 0: Missing column ph", results.get(0).getError());
+    }
+
+    @Test
+    void stopsAtTheRowLimit() throws Exception {
+        mlService.crop = CropBatchServiceTest::echo;
+        service = service(2);
+
+        List<CropBatchResult> results = recommend(CropBatchService.Format.CSV,
+                "N,P,K,temperature,humidity,ph,rainfall\n" + csvRows(5));
+
+        assertEquals(3, results.size());
+        assertEquals(List.of(1L, 2L), rows(results.subList(0, 2)));
+        // The cut-off line comes after every scored row and has no row number
+        CropBatchResult last = results.get(2);
+        assertNull(last.getRow());
+        assertEquals("File has more than 2 rows; the rest was not processed", last.getError());
+    }
+
+    @Test
+    void jsonElementsThatAreNotObjectsGetAnErrorLine() throws Exception {
+        mlService.crop = CropBatchServiceTest::echo;
+        service = service(100);
+
+        List<CropBatchResult> results = recommend(CropBatchService.Format.JSON,
+                "[{\"N\":90,\"P\":42,\"K\":43,\"temperature\":20.8,\"humidity\":82.0,\"ph\":6.5,\"rainfall\":202.9},"
+                        + " 5, \"rice\", [1, 2], null,"
+                        + " {\"N\":71,\"P\":58,\"K\":20,\"temperature\":22.6,\"humidity\":60.2,\"ph\":6.1,\"rainfall\":65.1}]");
+
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L), rows(results));
+        assertEquals(top("90/42/43/20.8/82.0/6.5/202.9"), results.get(0).getTop_crops());
+        for (CropBatchResult invalid : results.subList(1, 5)) {
+            assertEquals("Invalid row: expected an object", invalid.getError());
+        }
+        assertEquals(top("71/58/20/22.6/60.2/6.1/65.1"), results.get(5).getTop_crops());
+    }
+
+    @Test
+    void jsonRowsWithMissingOrWrongFieldsGetAnErrorLine() throws Exception {
+        mlService.crop = CropBatchServiceTest::echo;
+        service = service(100);
+
+        List<CropBatchResult> results = recommend(CropBatchService.Format.JSON,
+                "[{\"N\":90,\"P\":42,\"temperature\":20.8,\"humidity\":82.0,\"ph\":6.5,\"rainfall\":202.9},"
+                        + " {\"N\":90,\"P\":42,\"K\":43,\"temperature\":20.8,\"humidity\":82.0,\"ph\":null,\"rainfall\":202.9},"
+                        + " {\"N\":90,\"P\":42,\"K\":\"forty\",\"temperature\":20.8,\"humidity\":82.0,\"ph\":6.5,\"rainfall\":202.9},"
+                        + " {\"N\":71,\"P\":58,\"K\":20,\"temperature\":22.6,\"humidity\":60.2,\"ph\":6.1,\"rainfall\":65.1}]");
+
+        assertEquals(List.of(1L, 2L, 3L, 4L), rows(results));
+        assertEquals("Invalid row: missing K", results.get(0).getError());
+        assertEquals("Invalid row: missing ph", results.get(1).getError());
+        assertEquals("Invalid row: K is not a number", results.get(2).getError());
+        // A row that didn't bind doesn't end the file
+        assertEquals(top("71/58/20/22.6/60.2/6.1/65.1"), results.get(3).getTop_crops());
+    }
+
+    @Test
+    void scoresValidRowsInChunksOutsideTheInteractivePath() throws Exception {
+        mlService.crop = request -> {
+            throw new AssertionError("scored one row at a time");
+        };
+        List<Integer> chunkSizes = new CopyOnWriteArrayList<>();
+        mlService.cropBatch = requests -> {
+            chunkSizes.add(requests.size());
+            return requests.stream().map(CropBatchServiceTest::echo).toList();
+        };
+        service = service(100, 4);
+
+        List<CropBatchResult> results = recommend(CropBatchService.Format.CSV,
+                "N,P,K,temperature,humidity,ph,rainfall\n" + csvRows(3) + "90,42,forty,20.8,82.0,6.5,202.9\n" + csvRows(7));
+
+        assertEquals(11, results.size());
+        assertEquals("Invalid row: K is not a number", results.get(3).getError());
+        // Each scored row still gets its own answer, across the invalid one too
+        assertEquals(top("2/42/43/20.8/82.0/6.5/202.9"), results.get(2).getTop_crops());
+        assertEquals(top("0/42/43/20.8/82.0/6.5/202.9"), results.get(4).getTop_crops());
+        assertEquals(top("6/42/43/20.8/82.0/6.5/202.9"), results.get(10).getTop_crops());
+        assertEquals(List.of(2, 4, 4), chunkSizes.stream().sorted().toList());
+    }
+
+    @Test
+    void brokenJsonKeepsWhatWasReadAndEndsWithAnErrorLine() throws Exception {
+        mlService.crop = CropBatchServiceTest::echo;
+        service = service(100);
+
+        List<CropBatchResult> results = recommend(CropBatchService.Format.JSON,
+                "[{\"N\":90,\"P\":42,\"K\":43,\"temperature\":20.8,\"humidity\":82.0,\"ph\":6.5,\"rainfall\":202.9},"
+                        + " {\"N\":71,");
+
+        assertEquals(2, results.size());
+        assertEquals(1L, results.get(0).getRow());
+        assertNull(results.get(1).getRow());
+        assertTrue(results.get(1).getError().startsWith("Could not read the file after row 1: "));
+    }
+
+    @Test
+    void failedPredictionsGetAnErrorLineAndNoHistory() throws Exception {
+        mlService.cropBatch = requests -> {
+            if (requests.stream().anyMatch(request -> request.getN() == 71)) {
+                throw new IllegalStateException("Model server said no");
+            }
+            return requests.stream().map(CropBatchServiceTest::echo).toList();
+        };
+        service = service(100, 2);
+
+        List<CropBatchResult> results = recommend(CropBatchService.Format.CSV,
+                "N,P,K,temperature,humidity,ph,rainfall\n"
+                        + "60,42,43,20.8,82.0,6.5,202.9\n"
+                        + "71,58,20,22.6,60.2,6.1,65.1\n"
+                        + "90,42,43,20.8,82.0,6.5,202.9\n", 7L);
+
+        // The whole chunk the failing row was sent in, and nothing else
+        assertEquals(List.of(1L, 2L, 3L), rows(results));
+        assertEquals("Model server said no", results.get(0).getError());
+        assertEquals("Model server said no", results.get(1).getError());
+        assertNull(results.get(2).getError());
+        assertEquals(1, historyWriter.chunks.size());
+        assertEquals(List.of("N:90 P:42 K:43 pH:6.5"),
+                historyWriter.chunks.get(0).stream().map(HistoryWriter.Entry::inputDetails).toList());
+    }
+
+    @Test
+    void writesHistoryInChunks() throws Exception {
+        mlService.crop = CropBatchServiceTest::echo;
+        service = service(2000);
+
+        List<CropBatchResult> results = recommend(CropBatchService.Format.CSV,
+                "N,P,K,temperature,humidity,ph,rainfall\n" + csvRows(1201), 7L);
+
+        assertEquals(1201, results.size());
+        assertEquals(List.of(500, 500, 201), historyWriter.chunks.stream().map(List::size).toList());
+        List<HistoryWriter.Entry> saved = historyWriter.chunks.stream().flatMap(List::stream).toList();
+        assertTrue(saved.stream().allMatch(entry -> entry.userId() == 7L && entry.type().equals("CROP")));
+        assertEquals(1201, saved.stream().map(HistoryWriter.Entry::inputDetails).distinct().count());
+    }
+
+    @Test
+    void anonymousUploadsWriteNoHistory() throws Exception {
+        mlService.crop = CropBatchServiceTest::echo;
+        service = service(100);
+
+        recommend(CropBatchService.Format.CSV, "N,P,K,temperature,humidity,ph,rainfall\n" + csvRows(3));
+
+        assertTrue(historyWriter.chunks.isEmpty());
+    }
+
+    private CropBatchService service(long maxRows) {
+        return service(maxRows, 4);
+    }
+
+    private CropBatchService service(long maxRows, int chunk) {
+        return new CropBatchService(mlService, historyWriter, objectMapper, new SimpleMeterRegistry(), 4, chunk, 16, maxRows);
+    }
+
+    private List<CropBatchResult> recommend(CropBatchService.Format format, String input) throws Exception {
+        return recommend(format, input, null);
+    }
+
+    // The NDJSON lines, scored rows sorted by row number (they arrive in completion order), row-less lines last
+    private List<CropBatchResult> recommend(CropBatchService.Format format, String input, Long userId) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.recommend(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), format, userId, out);
+
+        String body = out.toString(StandardCharsets.UTF_8);
+        assertTrue(body.endsWith("\n"));
+        List<CropBatchResult> results = new ArrayList<>();
+        for (String line : body.split("\n")) {
+            results.add(objectMapper.readValue(line, CropBatchResult.class));
+        }
+        List<CropBatchResult> trailer = results.stream().filter(result -> result.getRow() == null).toList();
+        assertTrue(trailer.size() <= 1);
+        assertTrue(trailer.isEmpty() || results.get(results.size() - 1).getRow() == null);
+        results.sort(Comparator.comparing(CropBatchResult::getRow, Comparator.nullsLast(Comparator.naturalOrder())));
+        return results;
+    }
+
+    private static List<Long> rows(List<CropBatchResult> results) {
+        return results.stream().map(CropBatchResult::getRow).toList();
+    }
+
+    private static String csvRows(int count) {
+        StringBuilder rows = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            rows.append(i).append(",42,43,20.8,82.0,6.5,202.9\n");
+        }
+        return rows.toString();
+    }
+
+    // A crop named after every field the row was read into
+    private static CropResponse echo(CropRequest request) {
+        CropResponse response = new CropResponse();
+        response.setTop_crops(top(String.format(Locale.ROOT, "%d/%d/%d/%.1f/%.1f/%.1f/%.1f",
+                request.getN(), request.getP(), request.getK(), request.getTemperature(), request.getHumidity(),
+                request.getPh(), request.getRainfall())));
+        return response;
+    }
+
+    private static List<CropResponse.Recommendation> top(String crop) {
+        CropResponse.Recommendation top = new CropResponse.Recommendation();
+        top.setCrop(crop);
+        top.setConfidence("90.00%");
+        return List.of(top);
+    }
+}
@@ -0,0 +1,68 @@
+package com.cropapp.Service;
+
+import com.cropapp.dto.CropRequest;
+import com.cropapp.dto.CropResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CropRecommendationCacheTest {
+
+    private final CropRecommendationCache cache =
+            new CropRecommendationCache(100, Duration.ofMinutes(5), Duration.ofHours(1), 0.1, 0.1, 0.1, 1, new SimpleMeterRegistry());
+
+    @Test
+    void nearbyReadingsShareOneKey() {
+        CropRequest a = request(90, 42, 43, 20.87974371, 82.00274423, 6.502985292, 202.9355362);
+        CropRequest b = request(90, 42, 43, 20.9, 81.99, 6.49, 203.2);
+
+        assertEquals(cache.keyFor(a), cache.keyFor(b));
+    }
+
+    @Test
+    void canonicalRequestUsesRoundedReadings() {
+        CropRequest canonical = cache.keyFor(request(90, 42, 43, 20.87974371, 82.00274423, 6.502985292, 202.9355362))
+                .toRequest();
+
+        assertEquals(90, canonical.getN());
+        assertEquals(20.9, canonical.getTemperature());
+        assertEquals(82.0, canonical.getHumidity());
+        assertEquals(6.5, canonical.getPh());
+        assertEquals(203.0, canonical.getRainfall());
+    }
+
+    @Test
+    void emptyResponsesAreNotCached() {
+        CropRecommendationCache.Key key = cache.keyFor(request(1, 2, 3, 20, 80, 6.5, 100));
+        CropResponse empty = new CropResponse();
+        empty.setTop_crops(List.of());
+
+        cache.put(key, empty);
+        assertNull(cache.get(key));
+
+        CropResponse.Recommendation rice = new CropResponse.Recommendation();
+        rice.setCrop("rice");
+        rice.setConfidence("91.00%");
+        CropResponse answer = new CropResponse();
+        answer.setTop_crops(List.of(rice));
+
+        cache.put(key, answer);
+        assertSame(answer, cache.get(key));
+    }
+
+    private static CropRequest request(int n, int p, int k, double temperature, double humidity, double ph, double rainfall) {
+        CropRequest request = new CropRequest();
+        request.setN(n);
+        request.setP(p);
+        request.setK(k);
+        request.setTemperature(temperature);
+        request.setHumidity(humidity);
+        request.setPh(ph);
+        request.setRainfall(rainfall);
+        return request;
+    }
+}
@@ -0,0 +1,203 @@
+package com.cropapp.Service;
+
+import com.cropapp.dto.DiseaseBatchResult;
+import com.cropapp.dto.DiseaseResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DiseaseBatchServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final StubMLService mlService = StubMLService.create();
+    private final RecordingHistoryWriter historyWriter = new RecordingHistoryWriter();
+    private DiseaseBatchService service;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (service != null) {
+            service.shutdown();
+        }
+        mlService.shutdown();
+        historyWriter.destroy();
+    }
+
+    @Test
+    void skipsResourceForksHiddenFilesAndNonImages() throws Exception {
+        mlService.disease = DiseaseBatchServiceTest::diagnose;
+        service = service(100, DataSize.ofKilobytes(64));
+
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("field/leaf.jpg", image(10));
+        entries.put("__MACOSX/field/._leaf.jpg", image(10));
+        entries.put("field/.hidden.png", image(10));
+        entries.put("field/notes.txt", image(10));
+        entries.put("field/", new byte[0]);
+        entries.put("field/stem.PNG", image(20));
+        entries.put("root.jpeg", image(30));
+
+        List<DiseaseBatchResult> results = detect(zip(entries), 7L);
+
+        assertEquals(List.of("field/leaf.jpg", "field/stem.PNG", "root.jpeg"), files(results));
+        assertEquals("Bytes 10 (99.00%)", results.get(0).getDisease() + " (" + results.get(0).getConfidence() + ")");
+        // The entry's base name is what the model and history see
+        assertEquals(List.of("Image: leaf.jpg", "Image: root.jpeg", "Image: stem.PNG"), historyWriter.chunks.get(0).stream()
+                .map(HistoryWriter.Entry::inputDetails).sorted().toList());
+    }
+
+    @Test
+    void oversizedImageGetsAnErrorLineAndTheRestIsDetected() throws Exception {
+        mlService.disease = DiseaseBatchServiceTest::diagnose;
+        service = service(100, DataSize.ofBytes(1000));
+
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("a.jpg", image(100));
+        // Random bytes, so it also stays large once deflated
+        entries.put("b.jpg", image(5000));
+        entries.put("c.jpg", image(1000));
+
+        List<DiseaseBatchResult> results = detect(zip(entries), null);
+
+        assertEquals(List.of("a.jpg", "b.jpg", "c.jpg"), files(results));
+        assertEquals("Bytes 100", results.get(0).getDisease());
+        assertEquals("Image is larger than 1000 bytes", results.get(1).getError());
+        assertEquals("Bytes 1000", results.get(2).getDisease());
+    }
+
+    @Test
+    void truncatedArchiveEndsWithAnErrorLineWithoutAName() throws Exception {
+        mlService.disease = DiseaseBatchServiceTest::diagnose;
+        service = service(100, DataSize.ofKilobytes(64));
+
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("a.jpg", image(100));
+        entries.put("b.jpg", image(20_000));
+        byte[] archive = zip(entries);
+        // Cut off in the middle of b.jpg's data
+        byte[] truncated = Arrays.copyOf(archive, archive.length / 2);
+
+        List<DiseaseBatchResult> results = detect(truncated, null);
+
+        assertEquals(2, results.size());
+        assertEquals("a.jpg", results.get(0).getFile());
+        assertEquals("Bytes 100", results.get(0).getDisease());
+        DiseaseBatchResult last = results.get(1);
+        assertNull(last.getFile());
+        assertTrue(last.getError().startsWith("Could not read the archive: "), last.getError());
+    }
+
+    @Test
+    void stopsAtTheEntryLimit() throws Exception {
+        mlService.disease = DiseaseBatchServiceTest::diagnose;
+        service = service(2, DataSize.ofKilobytes(64));
+
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        // Skipped entries don't count towards the limit
+        entries.put("__MACOSX/._a.jpg", image(1));
+        entries.put("a.jpg", image(10));
+        entries.put("readme.txt", image(1));
+        entries.put("b.jpg", image(20));
+        entries.put("c.jpg", image(30));
+        entries.put("d.jpg", image(40));
+
+        List<DiseaseBatchResult> results = detect(zip(entries), null);
+
+        assertEquals(3, results.size());
+        assertEquals(List.of("a.jpg", "b.jpg"), files(results.subList(0, 2)));
+        DiseaseBatchResult last = results.get(2);
+        assertNull(last.getFile());
+        assertEquals("Archive has more than 2 images; the rest was not processed", last.getError());
+    }
+
+    @Test
+    void failedDetectionGetsAnErrorLineAndNoHistory() throws Exception {
+        mlService.disease = (fileName, image) -> {
+            if (fileName.equals("b.jpg")) {
+                throw new IllegalStateException("Model server said no");
+            }
+            return diagnose(fileName, image);
+        };
+        service = service(100, DataSize.ofKilobytes(64));
+
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("a.jpg", image(10));
+        entries.put("b.jpg", image(20));
+
+        List<DiseaseBatchResult> results = detect(zip(entries), 7L);
+
+        assertEquals(List.of("a.jpg", "b.jpg"), files(results));
+        assertEquals("Model server said no", results.get(1).getError());
+        assertEquals(List.of("Image: a.jpg"), historyWriter.chunks.get(0).stream().map(HistoryWriter.Entry::inputDetails).toList());
+    }
+
+    private DiseaseBatchService service(int maxEntries, DataSize maxImageSize) {
+        return new DiseaseBatchService(mlService, historyWriter, objectMapper, new SimpleMeterRegistry(),
+                4, 8, maxEntries, maxImageSize);
+    }
+
+    // The NDJSON lines, sorted by file name (they arrive in completion order), the one without a name last
+    private List<DiseaseBatchResult> detect(byte[] archive, Long userId) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.detect(new ByteArrayInputStream(archive), userId, out);
+
+        String body = out.toString(StandardCharsets.UTF_8);
+        assertTrue(body.endsWith("\n"));
+        List<DiseaseBatchResult> results = new ArrayList<>();
+        for (String line : body.split("\n")) {
+            results.add(objectMapper.readValue(line, DiseaseBatchResult.class));
+        }
+        assertTrue(results.stream().filter(result -> result.getFile() == null).count() <= 1);
+        assertTrue(results.stream().noneMatch(result -> result.getFile() == null)
+                || results.get(results.size() - 1).getFile() == null);
+        results.sort(Comparator.comparing(DiseaseBatchResult::getFile, Comparator.nullsLast(Comparator.naturalOrder())));
+        return results;
+    }
+
+    private static List<String> files(List<DiseaseBatchResult> results) {
+        return results.stream().map(DiseaseBatchResult::getFile).toList();
+    }
+
+    private static byte[] zip(Map<String, byte[]> entries) throws IOException {
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(archive)) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                zip.putNextEntry(new ZipEntry(entry.getKey()));
+                zip.write(entry.getValue());
+                zip.closeEntry();
+            }
+        }
+        return archive.toByteArray();
+    }
+
+    private static byte[] image(int size) {
+        byte[] image = new byte[size];
+        new Random(size).nextBytes(image);
+        return image;
+    }
+
+    // A diagnosis that says how many bytes arrived
+    private static DiseaseResponse diagnose(String fileName, byte[] image) {
+        DiseaseResponse response = new DiseaseResponse();
+        response.setDisease("Bytes " + image.length);
+        response.setConfidence("99.00%");
+        return response;
+    }
+}
@@ -0,0 +1,195 @@
+package com.cropapp.Service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * The fidelity test compares the JVM preprocessing of test_leaf.jpg with what
+ * Pillow produces in the model server. The reference comes from
+ * "python export_preprocess_reference.py" in ml-api; the test is skipped until
+ * that has run.
+ */
+class DiseaseImagePreprocessorTest {
+
+    private static final Path LEAF = Path.of(System.getProperty("disease.test-image", "../ml-api/test_leaf.jpg"));
+    private static final Path REFERENCE = LEAF.resolveSibling("test_leaf_224.rgb");
+    private static final int PIXELS = DiseaseImagePreprocessor.SIZE * DiseaseImagePreprocessor.SIZE;
+
+    @Test
+    void matchesPillowOnTestLeaf() throws Exception {
+        assumeTrue(Files.exists(LEAF) && Files.exists(REFERENCE), "run ml-api/export_preprocess_reference.py to enable the fidelity test");
+
+        byte[] expected = Files.readAllBytes(REFERENCE);
+        byte[] actual = preprocessor("tensor", false).toModelInput(new FileSystemResource(LEAF));
+
+        // JPEG decoders may round the odd sample differently; the resize itself is exact
+        assertEquals(expected.length, actual.length);
+        int maxDiff = 0;
+        for (int i = 0; i < expected.length; i++) {
+            maxDiff = Math.max(maxDiff, Math.abs((expected[i] & 0xff) - (actual[i] & 0xff)));
+        }
+        assertTrue(maxDiff <= 2, "max difference " + maxDiff);
+    }
+
+    @Test
+    void resizesToModelInput() throws Exception {
+        byte[] rgb = preprocessor("tensor", false).toModelInput(png(640, 480, BufferedImage.TYPE_INT_RGB, 0x3c8a2e));
+
+        assertEquals(PIXELS * 3, rgb.length);
+        // A flat colour stays exactly that colour
+        for (int i = 0; i < rgb.length; i += 3) {
+            assertEquals(0x3c, rgb[i] & 0xff);
+            assertEquals(0x8a, rgb[i + 1] & 0xff);
+            assertEquals(0x2e, rgb[i + 2] & 0xff);
+        }
+    }
+
+    @Test
+    void copiesGreyValuesLikePillow() throws Exception {
+        byte[] rgb = preprocessor("tensor", false).toModelInput(png(300, 300, BufferedImage.TYPE_BYTE_GRAY, 0x404040));
+
+        for (byte value : rgb) {
+            assertEquals(0x40, value & 0xff);
+        }
+    }
+
+    @Test
+    void dropsAlphaWithoutCompositing() throws Exception {
+        byte[] rgb = preprocessor("tensor", false).toModelInput(png(300, 300, BufferedImage.TYPE_INT_ARGB, 0x10c02060));
+
+        assertEquals(0xc0, rgb[0] & 0xff);
+        assertEquals(0x20, rgb[1] & 0xff);
+        assertEquals(0x60, rgb[2] & 0xff);
+    }
+
+    @Test
+    void subsamplingStaysCloseToFullDecode() throws Exception {
+        Resource image = gradient(1800, 1200);
+        byte[] full = preprocessor("tensor", false).toModelInput(image);
+        byte[] subsampled = preprocessor("tensor", true).toModelInput(image);
+
+        assertEquals(full.length, subsampled.length);
+        for (int i = 0; i < full.length; i++) {
+            assertTrue(Math.abs((full[i] & 0xff) - (subsampled[i] & 0xff)) <= 8, "byte " + i);
+        }
+    }
+
+    @Test
+    void sendsTensorOrSmallJpegOrOriginal() throws Exception {
+        Resource upload = png(640, 480, BufferedImage.TYPE_INT_RGB, 0x3c8a2e);
+
+        Resource tensor = preprocessor("tensor", false).prepare(upload);
+        assertInstanceOf(DiseaseImagePreprocessor.Tensor.class, tensor);
+        assertEquals(PIXELS * 3, tensor.contentLength());
+        assertEquals("leaf.png", tensor.getFilename());
+
+        Resource jpeg = preprocessor("jpeg", false).prepare(upload);
+        BufferedImage decoded = ImageIO.read(jpeg.getInputStream());
+        assertEquals(DiseaseImagePreprocessor.SIZE, decoded.getWidth());
+        assertEquals(DiseaseImagePreprocessor.SIZE, decoded.getHeight());
+        assertEquals("leaf.png", jpeg.getFilename());
+
+        assertSame(upload, preprocessor("off", false).prepare(upload));
+    }
+
+    @Test
+    void sendsUndecodableImagesUnchanged() {
+        Resource upload = new ByteArrayResource("not an image".getBytes());
+
+        assertSame(upload, preprocessor("tensor", false).prepare(upload));
+    }
+
+    @Test
+    void sendsDecompressionBombsUnchangedWithoutDecodingThem() {
+        // 40000x40000 in the header, next to nothing behind it: 4.8 GB of RGB if it were decoded
+        Resource upload = new ByteArrayResource(pngHeader(40_000, 40_000));
+        DiseaseImagePreprocessor preprocessor = preprocessor("tensor", false);
+
+        IOException rejected = assertThrows(IOException.class, () -> preprocessor.toModelInput(upload));
+        assertEquals("Image is 40000x40000, more than 89478485 pixels", rejected.getMessage());
+        assertSame(upload, preprocessor.prepare(upload));
+    }
+
+    @Test
+    void pixelLimitIsInclusive() throws Exception {
+        Resource upload = png(640, 480, BufferedImage.TYPE_INT_RGB, 0x3c8a2e);
+
+        assertEquals(PIXELS * 3, new DiseaseImagePreprocessor("tensor", false, 0.9f, 2, 640 * 480).toModelInput(upload).length);
+        assertSame(upload, new DiseaseImagePreprocessor("tensor", false, 0.9f, 2, 640 * 480 - 1).prepare(upload));
+    }
+
+    private static DiseaseImagePreprocessor preprocessor(String mode, boolean subsample) {
+        return new DiseaseImagePreprocessor(mode, subsample, 0.9f, 2, 89_478_485);
+    }
+
+    // PNG signature, an IHDR for an 8-bit RGB image of that size and an empty IEND; no pixel data at all
+    private static byte[] pngHeader(int width, int height) {
+        ByteBuffer png = ByteBuffer.allocate(8 + 25 + 12);
+        png.put(new byte[] {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'});
+        chunk(png, "IHDR", ByteBuffer.allocate(13).putInt(width).putInt(height).put(new byte[] {8, 2, 0, 0, 0}).array());
+        chunk(png, "IEND", new byte[0]);
+        return png.array();
+    }
+
+    private static void chunk(ByteBuffer png, String type, byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(type.getBytes(StandardCharsets.US_ASCII));
+        crc.update(data);
+        png.putInt(data.length).put(type.getBytes(StandardCharsets.US_ASCII)).put(data).putInt((int) crc.getValue());
+    }
+
+    private static Resource png(int width, int height, int type, int argb) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, type);
+        if (type == BufferedImage.TYPE_BYTE_GRAY) {
+            int grey = argb & 0xff;
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    image.getRaster().setSample(x, y, 0, grey);
+                }
+            }
+        } else {
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    image.setRGB(x, y, argb);
+                }
+            }
+        }
+        return encode(image, "png");
+    }
+
+    private static Resource gradient(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, (x * 255 / width) << 16 | (y * 255 / height) << 8 | 0x40);
+            }
+        }
+        return encode(image, "png");
+    }
+
+    private static Resource encode(BufferedImage image, String format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        return new ByteArrayResource(out.toByteArray()) {
+            @Override
+            public String getFilename() {
+                return "leaf.png";
+            }
+        };
+    }
+}
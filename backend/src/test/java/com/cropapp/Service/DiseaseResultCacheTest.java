@@ -0,0 +1,115 @@
+package com.cropapp.Service;
+
+import com.cropapp.dto.DiseaseResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DiseaseResultCacheTest {
+
+    @TempDir
+    Path diskDir;
+
+    @Test
+    void sha256MatchesKnownDigest() throws Exception {
+        String digest = DiseaseResultCache.sha256(new ByteArrayInputStream("abc".getBytes(StandardCharsets.US_ASCII)));
+
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", digest);
+    }
+
+    @Test
+    void diskTierSurvivesRestartForSameModelVersion() {
+        DiseaseResultCache first = newCache();
+        first.onModelVersion("v1");
+        first.put("abc", response("Tomato___Late_blight"), first.generation());
+
+        DiseaseResultCache second = newCache();
+        second.onModelVersion("v1");
+
+        assertEquals("Tomato___Late_blight", second.get("abc").getDisease());
+    }
+
+    @Test
+    void modelVersionChangeDropsBothTiers() {
+        DiseaseResultCache cache = newCache();
+        cache.onModelVersion("v1");
+        cache.put("abc", response("Apple___healthy"), cache.generation());
+        assertTrue(Files.exists(diskDir.resolve("model-v1").resolve("abc.json")));
+
+        cache.onModelVersion("v2");
+
+        assertNull(cache.get("abc"));
+        assertFalse(Files.exists(diskDir.resolve("model-v1")));
+    }
+
+    @Test
+    void resultFromAReplacedModelIsNotStored() {
+        DiseaseResultCache cache = newCache();
+        cache.onModelVersion("v1");
+        long started = cache.generation();
+
+        // Another request saw the redeploy while this one was still waiting for v1's answer
+        cache.onModelVersion("v2");
+        cache.put("abc", response("Apple___healthy"), started);
+
+        assertNull(cache.get("abc"));
+        assertFalse(Files.exists(diskDir.resolve("model-v2").resolve("abc.json")));
+    }
+
+    @Test
+    void versionHeaderCannotLeaveTheCacheDirOrPurgeWhatItDidNotCreate() throws Exception {
+        Path cacheDir = Files.createDirectory(diskDir.resolve("cache"));
+        Path unrelated = Files.createDirectory(cacheDir.resolve("backups"));
+        Files.writeString(unrelated.resolve("keep.txt"), "keep");
+        Path sibling = Files.createDirectory(diskDir.resolve("x"));
+        DiseaseResultCache cache = new DiseaseResultCache(DataSize.ofMegabytes(1), cacheDir.toString(), new ObjectMapper(),
+                new SimpleMeterRegistry());
+
+        for (String version : new String[] {"../x", "/tmp/evil", "..", "v1"}) {
+            cache.onModelVersion(version);
+            cache.put("abc", response("Apple___healthy"), cache.generation());
+        }
+
+        assertTrue(Files.exists(unrelated.resolve("keep.txt")));
+        try (var files = Files.list(sibling)) {
+            assertEquals(0, files.count());
+        }
+        // Everything the cache wrote is in its own model-* directories, and only the current one is left
+        try (var dirs = Files.list(cacheDir)) {
+            assertEquals(List.of("backups", "model-v1"), dirs.map(dir -> dir.getFileName().toString()).sorted().toList());
+        }
+    }
+
+    @Test
+    void errorResponsesAreNotCached() {
+        DiseaseResultCache cache = newCache();
+        cache.onModelVersion("v1");
+        DiseaseResponse error = new DiseaseResponse();
+        error.setError("cannot identify image file");
+
+        cache.put("abc", error, cache.generation());
+
+        assertNull(cache.get("abc"));
+    }
+
+    private DiseaseResultCache newCache() {
+        return new DiseaseResultCache(DataSize.ofMegabytes(1), diskDir.toString(), new ObjectMapper(), new SimpleMeterRegistry());
+    }
+
+    private static DiseaseResponse response(String disease) {
+        DiseaseResponse response = new DiseaseResponse();
+        response.setDisease(disease);
+        response.setConfidence("97.10%");
+        return response;
+    }
+}
@@ -0,0 +1,119 @@
+package com.cropapp.Service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistoryExporterTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 3, 1, 8, 0);
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private HistoryExporter exporter;
+
+    @BeforeEach
+    void createSchema() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .build();
+        jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.execute("CREATE TABLE prediction_history (id BIGINT AUTO_INCREMENT PRIMARY KEY, "
+                + "user_id BIGINT NOT NULL, type VARCHAR(255), input_details VARCHAR(1000), "
+                + "result VARCHAR(1000), \"TIMESTAMP\" TIMESTAMP)");
+        ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        exporter = new HistoryExporter(database, objectMapper, 2);
+    }
+
+    @AfterEach
+    void dropDatabase() {
+        database.shutdown();
+    }
+
+    @Test
+    void exportsNdjsonNewestFirstForOneUserOnly() throws IOException {
+        insert(1L, "N:1", "rice", START);
+        insert(1L, "N:2", "maize", START.plusHours(1));
+        insert(1L, "N:3", "cotton", START.plusHours(2));
+        insert(2L, "N:4", "jute", START.plusHours(3));
+
+        String[] lines = export(1L, HistoryExporter.Format.NDJSON, false).split("\n");
+
+        assertEquals(3, lines.length);
+        assertTrue(lines[1].startsWith("{"), lines[1]);
+        ObjectMapper reader = new ObjectMapper();
+        JsonNode first = reader.readTree(lines[0]);
+        assertEquals("cotton", first.get("result").asText());
+        assertEquals("2024-03-01T10:00:00", first.get("timestamp").asText());
+        assertEquals("rice", reader.readTree(lines[2]).get("result").asText());
+    }
+
+    @Test
+    void quotesCsvFieldsThatNeedIt() throws IOException {
+        insert(1L, "N:90, P:42", "say \"rice\"", START);
+
+        String[] lines = export(1L, HistoryExporter.Format.CSV, false).split("\r\n");
+
+        assertEquals("id,type,inputDetails,result,timestamp", lines[0]);
+        assertTrue(lines[1].endsWith(",CROP,\"N:90, P:42\",\"say \"\"rice\"\"\",2024-03-01T08:00"), lines[1]);
+    }
+
+    @Test
+    void gzipsWhenAsked() throws IOException {
+        insert(1L, "N:1", "rice", START);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exporter.export(1L, HistoryExporter.Format.CSV, true, out);
+
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            String csv = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(csv.startsWith("id,type,inputDetails,result,timestamp\r\n"));
+            assertTrue(csv.contains(",rice,"));
+        }
+    }
+
+    @Test
+    void stopsWhenTheClientGoesAway() {
+        for (int i = 0; i < 10; i++) {
+            insert(1L, "N:" + i, "rice".repeat(200), START.plusMinutes(i));
+        }
+        OutputStream broken = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        };
+
+        assertThrows(IOException.class, () -> exporter.export(1L, HistoryExporter.Format.NDJSON, false, broken));
+    }
+
+    private String export(Long userId, HistoryExporter.Format format, boolean gzip) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exporter.export(userId, format, gzip, out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private void insert(Long userId, String input, String result, LocalDateTime timestamp) {
+        jdbcTemplate.update("INSERT INTO prediction_history (user_id, type, input_details, result, timestamp) VALUES (?, ?, ?, ?, ?)",
+                userId, "CROP", input, result, Timestamp.valueOf(timestamp));
+    }
+}
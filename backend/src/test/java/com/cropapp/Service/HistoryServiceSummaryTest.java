@@ -0,0 +1,51 @@
+package com.cropapp.Service;
+
+import com.cropapp.dto.AnalysisResponse;
+import com.cropapp.dto.CropRequest;
+import com.cropapp.dto.CropResponse;
+import com.cropapp.dto.DiseaseBatchResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// How predictions are written into history; plain formatting, no database involved
+class HistoryServiceSummaryTest {
+
+    @Test
+    void summarisesAnalysisInOneRecord() {
+        CropRequest readings = new CropRequest();
+        readings.setN(90);
+        readings.setP(42);
+        readings.setK(43);
+        readings.setPh(6.5);
+        CropResponse.Recommendation rice = new CropResponse.Recommendation();
+        rice.setCrop("rice");
+        AnalysisResponse response = new AnalysisResponse(List.of(rice), null, List.of(
+                new DiseaseBatchResult("a.jpg", "Tomato___healthy", "97.00%", null),
+                new DiseaseBatchResult("b.jpg", null, null, "No answer within 20000 ms")));
+
+        assertEquals("N:90 P:42 K:43 pH:6.5 | Images: a.jpg, b.jpg",
+                HistoryService.analysisInputSummary(readings, List.of("a.jpg", "b.jpg")));
+        assertEquals("Crop: rice | a.jpg: Tomato___healthy (97.00%) | b.jpg: No answer within 20000 ms",
+                HistoryService.analysisResultSummary(response));
+
+        String many = HistoryService.analysisInputSummary(readings, Collections.nCopies(100, "leaf-photo.jpg"));
+        assertEquals(1000, many.length());
+        assertTrue(many.endsWith("..."));
+    }
+
+    @Test
+    void summarisesAnalysisWithoutImagesOrCrop() {
+        CropRequest readings = new CropRequest();
+        readings.setN(90);
+        AnalysisResponse response = new AnalysisResponse(null, "Crop recommendation is temporarily unavailable", List.of(
+                new DiseaseBatchResult("a.jpg", "Tomato___healthy", "97.00%", null)));
+
+        assertEquals("N:90 P:0 K:0 pH:0.0", HistoryService.analysisInputSummary(readings, List.of()));
+        assertEquals("Crop: Crop recommendation is temporarily unavailable | a.jpg: Tomato___healthy (97.00%)",
+                HistoryService.analysisResultSummary(response));
+    }
+}
@@ -0,0 +1,150 @@
+package com.cropapp.Service;
+
+import com.cropapp.dto.HistoryItem;
+import com.cropapp.dto.HistoryPage;
+import com.cropapp.dto.HistorySync;
+import com.cropapp.dto.HistorySyncItem;
+import com.cropapp.model.PredictionHistory;
+import com.cropapp.model.User;
+import com.cropapp.repository.HistoryRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:historytest;MODE=MySQL;NON_KEYWORDS=TIMESTAMP,VALUE,USER",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class HistoryServiceTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private HistoryRepository historyRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private HistoryWriter historyWriter;
+    private HistoryService historyService;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        historyWriter = new HistoryWriter(jdbcTemplate, transactionManager, 100, 10, new SimpleMeterRegistry());
+        historyService = new HistoryService();
+        ReflectionTestUtils.setField(historyService, "historyRepository", historyRepository);
+        ReflectionTestUtils.setField(historyService, "historyWriter", historyWriter);
+
+        user = new User();
+        user.setEmail("farmer@example.com");
+        entityManager.persist(user);
+        User other = new User();
+        other.setEmail("other@example.com");
+        entityManager.persist(other);
+
+        LocalDateTime base = LocalDateTime.of(2025, 6, 1, 12, 0);
+        for (int i = 0; i < 7; i++) {
+            // Pairs share a timestamp, so the id tie-break matters
+            entityManager.persist(history(user, base.plusMinutes(i / 2), "N:" + i));
+        }
+        entityManager.persist(history(other, base.plusDays(1), "other"));
+        entityManager.flush();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        historyWriter.destroy();
+    }
+
+    @Test
+    void pagesThroughEverythingNewestFirstWithoutGapsOrRepeats() {
+        List<HistoryItem> all = historyService.getUserHistory(user.getId());
+        List<HistoryItem> paged = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            HistoryPage page = historyService.getUserHistoryPage(user.getId(), cursor, 3);
+            paged.addAll(page.getItems());
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(7, all.size());
+        assertEquals(3, pages);
+        assertEquals(all.stream().map(HistoryItem::getId).toList(), paged.stream().map(HistoryItem::getId).toList());
+        for (int i = 1; i < paged.size(); i++) {
+            assertFalse(paged.get(i).getTimestamp().isAfter(paged.get(i - 1).getTimestamp()));
+        }
+    }
+
+    @Test
+    void capsPageSize() {
+        HistoryPage page = historyService.getUserHistoryPage(user.getId(), null, 10_000);
+
+        assertEquals(7, page.getItems().size());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void rejectsMalformedCursor() {
+        assertThrows(IllegalArgumentException.class, () -> historyService.getUserHistoryPage(user.getId(), "garbage!", 3));
+    }
+
+    @Test
+    void syncReturnsOnlyNewRowsAndKeepsTheETagUntilSomethingChanges() {
+        long latest = historyService.getLatestHistoryId(user.getId());
+        HistorySync full = historyService.getUserHistorySince(user.getId(), null, latest);
+        assertEquals(7, full.getItems().size());
+        assertFalse(full.isMore());
+        assertEquals(latest, full.getItems().get(6).getId());
+
+        String token = full.getSyncToken();
+        HistorySync empty = historyService.getUserHistorySince(user.getId(), token, latest);
+        assertTrue(empty.getItems().isEmpty());
+        assertEquals(token, empty.getSyncToken());
+        String eTag = historyService.getSyncETag(token, latest);
+
+        entityManager.persist(history(user, LocalDateTime.of(2025, 6, 2, 9, 0), "new"));
+        entityManager.flush();
+        long newLatest = historyService.getLatestHistoryId(user.getId());
+
+        assertNotEquals(eTag, historyService.getSyncETag(token, newLatest));
+        List<HistorySyncItem> delta = historyService.getUserHistorySince(user.getId(), token, newLatest).getItems();
+        assertEquals(List.of("new"), delta.stream().map(HistorySyncItem::getInputDetails).toList());
+    }
+
+    @Test
+    void rejectsMalformedSyncToken() {
+        assertThrows(IllegalArgumentException.class, () -> historyService.getSyncETag("garbage!", 0));
+    }
+
+    private static PredictionHistory history(User user, LocalDateTime timestamp, String input) {
+        return PredictionHistory.builder()
+                .user(user)
+                .type("CROP")
+                .inputDetails(input)
+                .result("rice")
+                .timestamp(timestamp)
+                .build();
+    }
+}
@@ -0,0 +1,169 @@
+package com.cropapp.Service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.TransactionDefinition;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistoryWriterTest {
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void createSchema() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .build();
+        jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.execute("CREATE TABLE users (id BIGINT AUTO_INCREMENT PRIMARY KEY, email VARCHAR(255))");
+        jdbcTemplate.execute("CREATE TABLE prediction_history (id BIGINT AUTO_INCREMENT PRIMARY KEY, "
+                + "user_id BIGINT NOT NULL REFERENCES users (id), type VARCHAR(255), input_details VARCHAR(1000), "
+                + "result VARCHAR(1000), \"TIMESTAMP\" TIMESTAMP)");
+        jdbcTemplate.update("INSERT INTO users (id, email) VALUES (1, 'farmer@example.com')");
+    }
+
+    @AfterEach
+    void dropDatabase() {
+        database.shutdown();
+    }
+
+    @Test
+    void flushesQueuedEntriesOnShutdown() throws InterruptedException {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        HistoryWriter writer = new HistoryWriter(jdbcTemplate, new DataSourceTransactionManager(database), 100, 10, registry);
+        for (int i = 0; i < 25; i++) {
+            writer.enqueue(entry(1L, "N:" + i));
+        }
+        writer.destroy();
+
+        assertEquals(25, count());
+        assertEquals(0.0, registry.get("history.write.failed").counter().count());
+        assertTrue(registry.get("history.write.batch_size").summary().max() <= 10);
+    }
+
+    @Test
+    void badRowDoesNotLoseTheRestOfItsBatch() throws InterruptedException {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        HistoryWriter writer = new HistoryWriter(jdbcTemplate, new DataSourceTransactionManager(database), 100, 10, registry);
+        writer.enqueue(entry(1L, "N:1"));
+        writer.enqueue(entry(999L, "N:2"));
+        writer.enqueue(entry(1L, "N:3"));
+        writer.destroy();
+
+        assertEquals(2, count());
+        assertEquals(1.0, registry.get("history.write.failed").counter().count());
+    }
+
+    @Test
+    void writesSynchronouslyWhenQueueIsFull() throws InterruptedException {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        HistoryWriter writer = new HistoryWriter(jdbcTemplate, new DataSourceTransactionManager(database), 1, 10, registry);
+        writer.destroy();
+
+        writer.enqueue(entry(1L, "N:1"));
+
+        assertEquals(1, count());
+        assertEquals(1.0, registry.get("history.write.overflow").counter().count());
+    }
+
+    @Test
+    void transactionThatCannotStartCountsAsFailedInsteadOfThrowing() throws InterruptedException {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        DataSourceTransactionManager unavailable = new DataSourceTransactionManager(database) {
+            @Override
+            protected void doBegin(Object transaction, TransactionDefinition definition) {
+                throw new CannotCreateTransactionException("Connection pool exhausted");
+            }
+        };
+        HistoryWriter writer = new HistoryWriter(jdbcTemplate, unavailable, 1, 10, registry);
+        writer.destroy();
+
+        // The overflow path runs on the caller's thread; the prediction must not fail with it
+        assertDoesNotThrow(() -> writer.enqueue(entry(1L, "N:1")));
+        assertDoesNotThrow(() -> writer.writeAll(List.of(entry(1L, "N:2"), entry(1L, "N:3"))));
+
+        assertEquals(0, count());
+        assertEquals(3.0, registry.get("history.write.failed").counter().count());
+    }
+
+    @Test
+    void settledReadWaitsForAWriteThatCommitsOutOfOrder() throws Exception {
+        CountDownLatch inserted = new CountDownLatch(1);
+        CountDownLatch commit = new CountDownLatch(1);
+        // Holds the transaction of the "slow" row open after its insert took an id
+        JdbcTemplate slowTemplate = new JdbcTemplate(database) {
+            @Override
+            public <T> int[][] batchUpdate(String sql, Collection<T> batchArgs, int batchSize,
+                                           ParameterizedPreparedStatementSetter<T> setter) {
+                int[][] counts = super.batchUpdate(sql, batchArgs, batchSize, setter);
+                if (batchArgs.stream().anyMatch(entry -> ((HistoryWriter.Entry) entry).inputDetails().equals("slow"))) {
+                    inserted.countDown();
+                    try {
+                        commit.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return counts;
+            }
+        };
+        HistoryWriter writer = new HistoryWriter(slowTemplate, new DataSourceTransactionManager(database), 100, 10,
+                new SimpleMeterRegistry());
+        try {
+            CompletableFuture<Void> slow = CompletableFuture.runAsync(() -> writer.writeAll(List.of(entry(1L, "slow"))));
+            assertTrue(inserted.await(5, TimeUnit.SECONDS));
+            writer.writeAll(List.of(entry(1L, "fast")));
+
+            // Id 2 is committed, id 1 is not yet: a plain read would hand out a sync position past id 1
+            assertEquals(2L, maxId());
+            assertEquals(1, count());
+
+            CompletableFuture<Long> latest = CompletableFuture.supplyAsync(() -> writer.settled(this::maxId));
+            Thread.sleep(200);
+            assertFalse(latest.isDone());
+
+            // The waiting read holds nothing, so new writes go straight through
+            CompletableFuture.runAsync(() -> writer.writeAll(List.of(entry(1L, "meanwhile")))).get(5, TimeUnit.SECONDS);
+            assertEquals(2, count());
+
+            commit.countDown();
+            slow.get(5, TimeUnit.SECONDS);
+            assertEquals(2L, latest.get(5, TimeUnit.SECONDS));
+            assertEquals(3, count());
+        } finally {
+            commit.countDown();
+            writer.destroy();
+        }
+    }
+
+    private long maxId() {
+        return jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM prediction_history", Long.class);
+    }
+
+    private int count() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM prediction_history", Integer.class);
+    }
+
+    private static HistoryWriter.Entry entry(Long userId, String input) {
+        return new HistoryWriter.Entry(userId, "CROP", input, "rice", LocalDateTime.now());
+    }
+}
@@ -0,0 +1,83 @@
+package com.cropapp.Service;
+
+import com.cropapp.dto.CropRequest;
+import com.cropapp.dto.CropResponse;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Replays Crop_recommendation.csv through the in-JVM forest and compares it with
+ * what sklearn's predict_proba returned for the same rows. Both files come from
+ * "python export_forest.py" in ml-api; the test is skipped until that has run.
+ */
+class LocalCropEngineParityTest {
+
+    private static final Path FOREST = Path.of(System.getProperty("crop.forest", "../ml-api/crop_forest.bin"));
+    private static final Path PARITY = FOREST.resolveSibling("crop_forest_parity.csv");
+
+    @Test
+    void agreesWithSklearnOnTrainingCsv() throws Exception {
+        assumeTrue(Files.exists(FOREST) && Files.exists(PARITY), "run ml-api/export_forest.py to enable the parity test");
+
+        LocalCropEngine engine = new LocalCropEngine("local", FOREST.toString());
+        int rows = 0;
+        try (BufferedReader reader = Files.newBufferedReader(PARITY)) {
+            String[] header = reader.readLine().split(",");
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] cells = line.split(",");
+                CropResponse response = engine.recommend(request(cells));
+
+                // Expected top 3: python's stable sort by probability, descending
+                double[] expected = IntStream.range(7, header.length).mapToDouble(i -> Double.parseDouble(cells[i])).toArray();
+                int[] order = IntStream.range(0, expected.length).boxed()
+                        .sorted(Comparator.comparingDouble((Integer i) -> -expected[i]))
+                        .mapToInt(Integer::intValue).limit(3).toArray();
+
+                for (int rank = 0; rank < order.length; rank++) {
+                    CropResponse.Recommendation actual = response.getTop_crops().get(rank);
+                    assertEquals(header[7 + order[rank]].substring(2), actual.getCrop(), "row " + rows + " rank " + rank);
+                    assertEquals(LocalCropEngine.formatConfidence(expected[order[rank]]), actual.getConfidence(), "row " + rows);
+                }
+                rows++;
+            }
+        }
+        assertTrue(rows > 0);
+    }
+
+    @Test
+    void topIndexesKeepsClassOrderOnTies() {
+        int[] top = new int[3];
+        int found = LocalCropEngine.topIndexes(new double[]{0.2, 0.5, 0.2, 0.1, 0.5}, 5, top);
+
+        assertEquals(3, found);
+        assertArrayEquals(new int[]{1, 4, 0}, top);
+    }
+
+    @Test
+    void formatsConfidenceLikePython() {
+        assertEquals("95.00%", LocalCropEngine.formatConfidence(0.95));
+        assertEquals("0.00%", LocalCropEngine.formatConfidence(0.0));
+        assertEquals("33.33%", LocalCropEngine.formatConfidence(1.0 / 3));
+    }
+
+    private static CropRequest request(String[] cells) {
+        CropRequest request = new CropRequest();
+        request.setN((int) Double.parseDouble(cells[0]));
+        request.setP((int) Double.parseDouble(cells[1]));
+        request.setK((int) Double.parseDouble(cells[2]));
+        request.setTemperature(Double.parseDouble(cells[3]));
+        request.setHumidity(Double.parseDouble(cells[4]));
+        request.setPh(Double.parseDouble(cells[5]));
+        request.setRainfall(Double.parseDouble(cells[6]));
+        return request;
+    }
+}
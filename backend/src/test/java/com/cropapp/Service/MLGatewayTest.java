@@ -0,0 +1,216 @@
+package com.cropapp.Service;
+
+import com.cropapp.dto.CropRequest;
+import com.cropapp.dto.CropResponse;
+import com.cropapp.dto.DiseaseResponse;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MLGatewayTest {
+
+    private HttpServer server;
+    private volatile long delayMillis;
+    private final AtomicInteger stalledRequests = new AtomicInteger();
+    private volatile String diseaseTransferEncoding;
+    private volatile long diseaseBodyBytes;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/predict", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            sleep(stalledRequests.getAndDecrement() > 0 ? 1_500 : delayMillis);
+            byte[] body = "{\"top_crops\":[{\"crop\":\"rice\",\"confidence\":\"91.00%\"}]}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.createContext("/predict_disease", exchange -> {
+            diseaseTransferEncoding = exchange.getRequestHeaders().getFirst("Transfer-Encoding");
+            diseaseBodyBytes = exchange.getRequestBody().readAllBytes().length;
+            byte[] body = "{\"disease\":\"Tomato___healthy\",\"confidence\":\"0.98\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void callsModelServerThroughPool() throws IOException {
+        MLGateway gateway = gateway(Duration.ofSeconds(5), Duration.ofSeconds(5));
+        try {
+            CropResponse response = gateway.predictCrop(new CropRequest());
+
+            assertEquals("rice", response.getTop_crops().get(0).getCrop());
+        } finally {
+            gateway.destroy();
+        }
+    }
+
+    @Test
+    void totalTimeoutAbortsSlowCall() throws IOException {
+        delayMillis = 2_000;
+        MLGateway gateway = gateway(Duration.ofSeconds(10), Duration.ofMillis(200));
+        try {
+            long start = System.nanoTime();
+            ResourceAccessException ex = assertThrows(ResourceAccessException.class, () -> gateway.predictCrop(new CropRequest()));
+
+            assertInstanceOf(SocketTimeoutException.class, ex.getCause());
+            assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 1_500, "call was not cut short");
+        } finally {
+            gateway.destroy();
+        }
+    }
+
+    @Test
+    void hedgesStalledCallToSecondReplica() throws IOException {
+        // Two "replicas" that are the same server under different host names
+        int port = server.getAddress().getPort();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MLGateway gateway = gateway(List.of("http://127.0.0.1:" + port, "http://localhost:" + port), true,
+                Duration.ofSeconds(5), Duration.ofSeconds(5), registry);
+        try {
+            for (int i = 0; i < 20; i++) {
+                gateway.predictCrop(new CropRequest());
+            }
+
+            stalledRequests.set(1);
+            long start = System.nanoTime();
+            CropResponse response = gateway.predictCrop(new CropRequest());
+
+            assertEquals("rice", response.getTop_crops().get(0).getCrop());
+            assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 1_000, "stalled call was not hedged");
+            assertEquals(1.0, registry.get("ml.api.hedges").tag("endpoint", "crop").tag("outcome", "sent").counter().count());
+        } finally {
+            gateway.destroy();
+        }
+    }
+
+    @Test
+    void hedgeThatWinsAbortsTheStalledCopy() throws Exception {
+        int port = server.getAddress().getPort();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MLGateway gateway = gateway(List.of("http://127.0.0.1:" + port, "http://localhost:" + port), true,
+                Duration.ofSeconds(5), Duration.ofSeconds(5), registry);
+        try {
+            for (int i = 0; i < 20; i++) {
+                gateway.predictCrop(new CropRequest());
+            }
+
+            stalledRequests.set(1);
+            gateway.predictCrop(new CropRequest());
+
+            // The stalled copy would hold its replica (and connection) for 1.5 s if it were left to finish
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500);
+            while (outstanding(registry) > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0.0, outstanding(registry));
+        } finally {
+            gateway.destroy();
+        }
+    }
+
+    private static double outstanding(SimpleMeterRegistry registry) {
+        return registry.find("ml.api.replica.outstanding").gauges().stream().mapToDouble(Gauge::value).sum();
+    }
+
+    @Test
+    void streamsImageToModelServerInChunks() throws IOException {
+        int imageSize = 4 * 1024 * 1024;
+        // Only readable as a stream, like a multipart temp file
+        Resource image = new AbstractResource() {
+            @Override
+            public InputStream getInputStream() {
+                return new InputStream() {
+                    private int remaining = imageSize;
+
+                    @Override
+                    public int read() {
+                        return remaining-- > 0 ? 'x' : -1;
+                    }
+                };
+            }
+
+            @Override
+            public long contentLength() {
+                return imageSize;
+            }
+
+            @Override
+            public String getFilename() {
+                return "leaf.jpg";
+            }
+
+            @Override
+            public String getDescription() {
+                return "leaf.jpg";
+            }
+        };
+        MLGateway gateway = gateway(Duration.ofSeconds(5), Duration.ofSeconds(10));
+        try {
+            DiseaseResponse response = gateway.predictDisease(image).getBody();
+
+            assertEquals("Tomato___healthy", response.getDisease());
+            assertEquals("chunked", diseaseTransferEncoding);
+            assertTrue(diseaseBodyBytes > imageSize, "image was not sent whole");
+        } finally {
+            gateway.destroy();
+        }
+    }
+
+    private MLGateway gateway(Duration readTimeout, Duration totalTimeout) {
+        return gateway(List.of("http://127.0.0.1:" + server.getAddress().getPort()), false,
+                readTimeout, totalTimeout, new SimpleMeterRegistry());
+    }
+
+    private MLGateway gateway(List<String> baseUrls, boolean hedge, Duration readTimeout, Duration totalTimeout,
+                              SimpleMeterRegistry registry) {
+        return new MLGateway(baseUrls,
+                Duration.ofMillis(500), Duration.ofSeconds(30), Duration.ofSeconds(60),
+                10, 10, Duration.ofSeconds(1), readTimeout, totalTimeout,
+                10, 10, Duration.ofSeconds(1), readTimeout, totalTimeout,
+                hedge, hedge, 0.95, Duration.ofMillis(50),
+                registry);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package com.cropapp.Service;
+
+import com.cropapp.dto.CropRequest;
+import com.cropapp.dto.CropResponse;
+import com.cropapp.dto.DiseaseResponse;
+import com.cropapp.exception.MLServiceUnavailableException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MLServiceTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final StubGateway gateway = new StubGateway(registry);
+    private MLService service;
+
+    // What service() builds with; tests change these first
+    private boolean batchEnabled;
+    private int cropBatchSize = 32;
+    private long cropLingerMs = 5;
+    private int cropLimit = 20;
+    private int cropThreads = 16;
+    private int diseaseThreads = 8;
+    private int diseaseQueue = 32;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (service != null) {
+            service.shutdown();
+        }
+        gateway.destroy();
+    }
+
+    @Test
+    void rejectedImagesLeaveTheBreakerClosed() throws IOException {
+        gateway.disease = image -> {
+            throw HttpClientErrorException.create(HttpStatus.UNPROCESSABLE_ENTITY, "UNPROCESSABLE ENTITY", null,
+                    "{\"error\":\"cannot identify image file\"}".getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+        };
+        service = service();
+
+        // Twice the breaker's window, every image a different one so nothing is cached
+        for (int i = 0; i < 8; i++) {
+            MockMultipartFile upload = upload("corrupt-" + i);
+            assertThrows(HttpClientErrorException.class, () -> service.detectDisease(upload));
+        }
+
+        assertEquals(0, breakerState("disease"));
+        assertEquals(8, gateway.diseaseCalls);
+    }
+
+    @Test
+    void modelServerErrorsOpenTheBreaker() throws IOException {
+        gateway.disease = image -> {
+            throw HttpServerErrorException.create(HttpStatus.INTERNAL_SERVER_ERROR, "INTERNAL SERVER ERROR", null, null, null);
+        };
+        service = service();
+
+        for (int i = 0; i < 4; i++) {
+            MockMultipartFile upload = upload("leaf-" + i);
+            assertThrows(MLServiceUnavailableException.class, () -> service.detectDisease(upload));
+        }
+        assertEquals(1, breakerState("disease"));
+
+        MockMultipartFile upload = upload("leaf-after");
+        assertThrows(MLServiceUnavailableException.class, () -> service.detectDisease(upload));
+        assertEquals(4, gateway.diseaseCalls);
+    }
+
+    @Test
+    void shedsLoadBeforeItQueuesOnTheBulkhead() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        gateway.crop = request -> {
+            await(release);
+            return crop("rice");
+        };
+        cropLimit = 2;
+        cropThreads = 1;
+        service = service();
+
+        CompletableFuture<CropResponse> running = service.getCropRecommendationAsync(request(10));
+        CompletableFuture<CropResponse> queued = service.getCropRecommendationAsync(request(20));
+        CompletableFuture<CropResponse> shed = service.getCropRecommendationAsync(request(30));
+
+        // Refused at once, not parked behind the busy bulkhead thread
+        assertTrue(shed.isCompletedExceptionally());
+        assertInstanceOf(MLServiceUnavailableException.class, assertThrows(CompletionException.class, shed::join).getCause());
+        assertEquals(2.0, registry.get("ml.limiter.in_flight").tag("name", "crop").gauge().value());
+        assertEquals(1.0, registry.get("ml.bulkhead.queue_depth").tag("name", "crop").gauge().value());
+
+        release.countDown();
+        assertEquals("rice", running.get(5, TimeUnit.SECONDS).getTop_crops().get(0).getCrop());
+        assertEquals("rice", queued.get(5, TimeUnit.SECONDS).getTop_crops().get(0).getCrop());
+        assertEquals(0.0, registry.get("ml.limiter.in_flight").tag("name", "crop").gauge().value());
+    }
+
+    @Test
+    void uploadChunksBypassTheInteractiveLimiterAndCache() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        gateway.crop = request -> {
+            await(release);
+            return crop("rice");
+        };
+        gateway.cropBatch = requests -> requests.stream().map(request -> crop("maize")).toList();
+        cropLimit = 1;
+        cropThreads = 1;
+        service = service();
+
+        // The only interactive slot is taken
+        CompletableFuture<CropResponse> interactive = service.getCropRecommendationAsync(request(10));
+        try {
+            List<CropRequest> chunk = List.of(request(10), request(20), request(30));
+            assertEquals(3, service.getCropRecommendations(chunk).size());
+            // Scored again, not answered from the cache
+            assertEquals(3, service.getCropRecommendations(chunk).size());
+
+            assertEquals(List.of(3, 3), gateway.cropBatchSizes);
+            assertEquals(1.0, registry.get("ml.limiter.in_flight").tag("name", "crop").gauge().value());
+        } finally {
+            release.countDown();
+        }
+        assertEquals("rice", interactive.get(5, TimeUnit.SECONDS).getTop_crops().get(0).getCrop());
+    }
+
+    @Test
+    void uploadChunkWithTooFewAnswersFails() throws IOException {
+        gateway.cropBatch = requests -> List.of(crop("maize"));
+        service = service();
+
+        assertThrows(IllegalStateException.class, () -> service.getCropRecommendations(List.of(request(10), request(20))));
+    }
+
+    @Test
+    void batchesGrowPastTheBulkheadThreadCount() throws Exception {
+        gateway.cropBatch = requests -> requests.stream().map(request -> crop("rice")).toList();
+        batchEnabled = true;
+        cropBatchSize = 8;
+        cropLingerMs = 2_000;
+        cropThreads = 1;
+        service = service();
+
+        List<CompletableFuture<CropResponse>> predictions = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            predictions.add(service.getCropRecommendationAsync(request(i)));
+        }
+        for (CompletableFuture<CropResponse> prediction : predictions) {
+            assertEquals("rice", prediction.get(5, TimeUnit.SECONDS).getTop_crops().get(0).getCrop());
+        }
+
+        // One full batch, long before the linger time was up
+        assertEquals(List.of(8), gateway.cropBatchSizes);
+    }
+
+    @Test
+    void queuedCallReadsItsOwnCopyOfTheUploadAndDeletesItAfterwards() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Path> sent = new CopyOnWriteArrayList<>();
+        List<String> threads = new CopyOnWriteArrayList<>();
+        gateway.disease = image -> {
+            await(release);
+            try {
+                sent.add(image.getFile().toPath());
+                threads.add(Thread.currentThread().getName());
+                DiseaseResponse response = new DiseaseResponse();
+                response.setDisease(new String(image.getContentAsByteArray(), StandardCharsets.UTF_8));
+                return ResponseEntity.ok(response);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+        service = service();
+
+        CompletableFuture<DiseaseResponse> prediction = service.detectDiseaseAsync(upload("leaf"));
+        // The request is over as far as the container is concerned; the call hasn't even started
+        assertFalse(prediction.isDone());
+
+        release.countDown();
+        assertEquals("leaf", prediction.get(5, TimeUnit.SECONDS).getDisease());
+        assertEquals(1, sent.size());
+        assertTrue(sent.get(0).getFileName().toString().startsWith("cropapp-upload-"));
+        assertFalse(Files.exists(sent.get(0)));
+        assertTrue(threads.get(0).startsWith("ml-bulkhead-disease-"));
+    }
+
+    @Test
+    void refusedHashingTaskIsAnOutageNotAnError() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        gateway.disease = image -> {
+            await(release);
+            return ResponseEntity.ok(new DiseaseResponse());
+        };
+        diseaseThreads = 1;
+        diseaseQueue = 1;
+        service = service();
+
+        try {
+            // One call on the only thread, one hash queued; the third can't even be hashed
+            CompletableFuture<DiseaseResponse> running = service.detectDiseaseAsync(upload("leaf-1"));
+            awaitCondition(() -> gateway.diseaseCalls == 1);
+            service.detectDiseaseAsync(upload("leaf-2"));
+            CompletableFuture<DiseaseResponse> refused = service.detectDiseaseAsync(upload("leaf-3"));
+
+            assertInstanceOf(MLServiceUnavailableException.class, assertThrows(CompletionException.class, refused::join).getCause());
+            assertFalse(running.isDone());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    private static CropRequest request(int nitrogen) {
+        CropRequest request = new CropRequest();
+        request.setN(nitrogen);
+        return request;
+    }
+
+    private static CropResponse crop(String name) {
+        CropResponse.Recommendation top = new CropResponse.Recommendation();
+        top.setCrop(name);
+        top.setConfidence("90.00%");
+        CropResponse response = new CropResponse();
+        response.setTop_crops(List.of(top));
+        return response;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(10);
+        }
+    }
+
+    private double breakerState(String name) {
+        return registry.get("ml.circuit.state").tag("name", name).gauge().value();
+    }
+
+    private static MockMultipartFile upload(String content) {
+        return new MockMultipartFile("file", content + ".jpg", "image/jpeg", content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Breaker window of 4 calls that opens at 50% failures, a fixed crop limit; the rest as configured by default
+    private MLService service() throws IOException {
+        return new MLService(gateway,
+                new CropRecommendationCache(100, Duration.ofHours(1), Duration.ofHours(24), 0.1, 0.1, 0.1, 1, registry),
+                new DiseaseResultCache(DataSize.ofMegabytes(1), "", new ObjectMapper(), registry),
+                new LocalCropEngine("remote", ""),
+                new DiseaseImagePreprocessor("off", false, 0.9f, 1, 89_478_485),
+                registry,
+                batchEnabled, cropBatchSize, cropLingerMs, 1000, 4, 8, 20, 200, 2,
+                4, 4, 50, 100, Duration.ofMinutes(1), 1, Duration.ofSeconds(10), Duration.ofSeconds(10), "none",
+                cropLimit, 1, cropLimit, 8, 1, 64,
+                cropThreads, 64, diseaseThreads, diseaseQueue,
+                DataSize.ofMegabytes(15));
+    }
+
+    // The model server as whatever the test needs it to be, no HTTP involved
+    private static class StubGateway extends MLGateway {
+
+        volatile Function<CropRequest, CropResponse> crop;
+        volatile Function<List<CropRequest>, List<CropResponse>> cropBatch;
+        final List<Integer> cropBatchSizes = new CopyOnWriteArrayList<>();
+        volatile Function<Resource, ResponseEntity<DiseaseResponse>> disease;
+        volatile int diseaseCalls;
+
+        StubGateway(SimpleMeterRegistry registry) {
+            super(List.of("http://127.0.0.1:1"),
+                    Duration.ofMillis(500), Duration.ofSeconds(30), Duration.ofSeconds(60),
+                    10, 10, Duration.ofSeconds(1), Duration.ofSeconds(1), Duration.ofSeconds(1),
+                    10, 10, Duration.ofSeconds(1), Duration.ofSeconds(1), Duration.ofSeconds(1),
+                    false, false, 0.95, Duration.ofMillis(50),
+                    registry);
+        }
+
+        @Override
+        public CropResponse predictCrop(CropRequest request) {
+            return crop.apply(request);
+        }
+
+        @Override
+        public List<CropResponse> predictCropBatch(List<CropRequest> requests) {
+            cropBatchSizes.add(requests.size());
+            return cropBatch.apply(requests);
+        }
+
+        @Override
+        public ResponseEntity<DiseaseResponse> predictDisease(Resource image) {
+            diseaseCalls++;
+            return disease.apply(image);
+        }
+    }
+}
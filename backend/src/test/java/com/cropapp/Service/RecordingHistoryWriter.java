@@ -0,0 +1,29 @@
+package com.cropapp.Service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Keeps what would have been written instead of writing it: each writeAll call, and each entry enqueued
+public class RecordingHistoryWriter extends HistoryWriter {
+
+    public final List<List<Entry>> chunks = new CopyOnWriteArrayList<>();
+    public final List<Entry> enqueued = new CopyOnWriteArrayList<>();
+
+    public RecordingHistoryWriter() {
+        super(new JdbcTemplate(), null, 10, 10, new SimpleMeterRegistry());
+    }
+
+    @Override
+    public void writeAll(List<Entry> entries) {
+        // The services reuse their list once this returns
+        chunks.add(List.copyOf(entries));
+    }
+
+    @Override
+    public void enqueue(Entry entry) {
+        enqueued.add(entry);
+    }
+}
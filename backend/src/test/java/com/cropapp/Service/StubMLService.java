@@ -0,0 +1,100 @@
+package com.cropapp.Service;
+
+import com.cropapp.dto.CropRequest;
+import com.cropapp.dto.CropResponse;
+import com.cropapp.dto.DiseaseResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+// For the services and controllers built on it: answers straight from the test's functions, no model
+// server, cache or breaker involved. The async entry points use cropAsync/diseaseAsync when set,
+// upload chunks use cropBatch when set and crop row by row otherwise.
+public class StubMLService extends MLService {
+
+    public volatile Function<CropRequest, CropResponse> crop;
+    public volatile Function<List<CropRequest>, List<CropResponse>> cropBatch;
+    public volatile BiFunction<String, byte[], DiseaseResponse> disease;
+    public volatile Function<CropRequest, CompletableFuture<CropResponse>> cropAsync;
+    public volatile Function<MultipartFile, CompletableFuture<DiseaseResponse>> diseaseAsync;
+
+    private final MLGateway gateway;
+
+    private StubMLService(MLGateway gateway, SimpleMeterRegistry registry) throws IOException {
+        super(gateway,
+                new CropRecommendationCache(10, Duration.ofHours(1), Duration.ofHours(24), 0.1, 0.1, 0.1, 1, registry),
+                new DiseaseResultCache(DataSize.ofKilobytes(64), "", new ObjectMapper(), registry),
+                new LocalCropEngine("remote", ""),
+                new DiseaseImagePreprocessor("off", false, 0.9f, 1, 89_478_485),
+                registry,
+                false, 32, 5, 1000, 4, 8, 20, 200, 2,
+                50, 20, 50, 80, Duration.ofSeconds(10), 5, Duration.ofSeconds(1), Duration.ofSeconds(10), "none",
+                20, 2, 200, 8, 1, 64,
+                1, 1, 1, 1,
+                DataSize.ofMegabytes(15));
+        this.gateway = gateway;
+    }
+
+    public static StubMLService create() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        try {
+            return new StubMLService(new MLGateway(List.of("http://127.0.0.1:1"),
+                    Duration.ofMillis(500), Duration.ofSeconds(30), Duration.ofSeconds(60),
+                    10, 10, Duration.ofSeconds(1), Duration.ofSeconds(1), Duration.ofSeconds(1),
+                    10, 10, Duration.ofSeconds(1), Duration.ofSeconds(1), Duration.ofSeconds(1),
+                    false, false, 0.95, Duration.ofMillis(50),
+                    registry), registry);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public CropResponse getCropRecommendation(CropRequest request) {
+        return crop.apply(request);
+    }
+
+    @Override
+    public List<CropResponse> getCropRecommendations(List<CropRequest> requests) {
+        return cropBatch != null ? cropBatch.apply(requests) : requests.stream().map(crop).toList();
+    }
+
+    @Override
+    public CompletableFuture<CropResponse> getCropRecommendationAsync(CropRequest request) {
+        // Runs on this thread, but fails the future rather than throwing
+        return cropAsync != null ? cropAsync.apply(request) : CompletableFuture.supplyAsync(() -> crop.apply(request), Runnable::run);
+    }
+
+    @Override
+    public DiseaseResponse detectDisease(String fileName, byte[] image) {
+        return disease.apply(fileName, image);
+    }
+
+    @Override
+    public CompletableFuture<DiseaseResponse> detectDiseaseAsync(MultipartFile file) throws IOException {
+        if (diseaseAsync != null) {
+            return diseaseAsync.apply(file);
+        }
+        byte[] image = file.getBytes();
+        return CompletableFuture.supplyAsync(() -> disease.apply(file.getOriginalFilename(), image), Runnable::run);
+    }
+
+    @Override
+    public void shutdown() {
+        super.shutdown();
+        try {
+            gateway.destroy();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
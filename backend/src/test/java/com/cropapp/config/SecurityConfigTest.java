@@ -0,0 +1,43 @@
+package com.cropapp.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SecurityConfigTest {
+
+    @Test
+    void onlyListedAddressesMayScrapeMetrics() {
+        SecurityConfig config = new SecurityConfig();
+        ReflectionTestUtils.setField(config, "scrapeAddresses", List.of("127.0.0.1", " ::1", "10.0.0.0/8", ""));
+
+        assertTrue(config.isScraper(from("127.0.0.1")));
+        assertTrue(config.isScraper(from("0:0:0:0:0:0:0:1")));
+        assertTrue(config.isScraper(from("10.20.30.40")));
+        assertFalse(config.isScraper(from("127.0.0.2")));
+        assertFalse(config.isScraper(from("203.0.113.9")));
+
+        // A forwarded header from outside doesn't count, only the connecting address
+        MockHttpServletRequest forwarded = from("203.0.113.9");
+        forwarded.addHeader("X-Forwarded-For", "127.0.0.1");
+        assertFalse(config.isScraper(forwarded));
+    }
+
+    @Test
+    void nobodyMayScrapeWhenNoAddressIsListed() {
+        SecurityConfig config = new SecurityConfig();
+        ReflectionTestUtils.setField(config, "scrapeAddresses", List.of());
+
+        assertFalse(config.isScraper(from("127.0.0.1")));
+    }
+
+    private static MockHttpServletRequest from(String address) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/actuator/prometheus");
+        request.setRemoteAddr(address);
+        return request;
+    }
+}
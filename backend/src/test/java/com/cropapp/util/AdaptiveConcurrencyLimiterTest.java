@@ -0,0 +1,91 @@
+package com.cropapp.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private static final long MS = 1_000_000;
+
+    @Test
+    void rejectsCallsOverTheLimit() throws InterruptedException {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 1, 1, 10, new SimpleMeterRegistry());
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> limiter.execute(() -> {
+            started.countDown();
+            await(release);
+            return null;
+        }));
+        holder.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        assertThrows(AdaptiveConcurrencyLimiter.LimitExceededException.class, () -> limiter.execute(() -> "second"));
+
+        release.countDown();
+        holder.join();
+        assertEquals(0, limiter.getInFlight());
+        assertEquals("third", limiter.execute(() -> "third"));
+    }
+
+    @Test
+    void permitHoldsItsSlotUntilReleasedOnce() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 1, 1, 10, new SimpleMeterRegistry());
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.acquirePermit();
+
+        assertThrows(AdaptiveConcurrencyLimiter.LimitExceededException.class, limiter::acquirePermit);
+
+        permit.release(true);
+        permit.release(true);
+        assertEquals(0, limiter.getInFlight());
+        assertEquals("next", limiter.execute(() -> "next"));
+    }
+
+    @Test
+    void growsWhileLatencyIsSteadyAndShrinksWhenItRises() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 10, 1, 100, new SimpleMeterRegistry());
+        for (int i = 0; i < 50; i++) {
+            limiter.onSample(10 * MS, limiter.getLimit());
+        }
+        int grown = limiter.getLimit();
+        assertTrue(grown > 10, "limit should grow, was " + grown);
+
+        for (int i = 0; i < 50; i++) {
+            limiter.onSample(100 * MS, limiter.getLimit());
+        }
+        assertTrue(limiter.getLimit() < grown, "limit should shrink, was " + limiter.getLimit());
+    }
+
+    @Test
+    void doesNotGrowWhenMostlyIdle() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 10, 1, 100, new SimpleMeterRegistry());
+        for (int i = 0; i < 50; i++) {
+            limiter.onSample(10 * MS, 1);
+        }
+
+        assertEquals(10, limiter.getLimit());
+    }
+
+    @Test
+    void failuresBackOffToMinimum() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 10, 2, 100, new SimpleMeterRegistry());
+        for (int i = 0; i < 100; i++) {
+            limiter.onFailure();
+        }
+
+        assertEquals(2, limiter.getLimit());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
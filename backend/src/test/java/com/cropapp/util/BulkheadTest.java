@@ -0,0 +1,94 @@
+package com.cropapp.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkheadTest {
+
+    @Test
+    void rejectsWorkBeyondThreadsAndQueue() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        try (Bulkhead bulkhead = new Bulkhead("test", 1, 1, registry)) {
+            CountDownLatch release = new CountDownLatch(1);
+            CompletableFuture<String> running = bulkhead.submit(() -> {
+                await(release);
+                return "running";
+            });
+            CompletableFuture<String> queued = bulkhead.submit(() -> "queued");
+
+            CompletableFuture<String> refused = bulkhead.submit(() -> "refused");
+            assertTrue(refused.isCompletedExceptionally());
+            assertInstanceOf(RejectedExecutionException.class, assertThrows(CompletionException.class, refused::join).getCause());
+            assertEquals(1.0, registry.get("ml.bulkhead.queue_depth").gauge().value());
+
+            release.countDown();
+            assertEquals("running", running.get(5, TimeUnit.SECONDS));
+            assertEquals("queued", queued.get(5, TimeUnit.SECONDS));
+            assertEquals(1.0, registry.get("ml.bulkhead.rejected").counter().count());
+        }
+    }
+
+    @Test
+    void separateBulkheadsDoNotBlockEachOther() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        try (Bulkhead slow = new Bulkhead("slow", 1, 1, registry);
+             Bulkhead fast = new Bulkhead("fast", 1, 1, registry)) {
+            CountDownLatch release = new CountDownLatch(1);
+            slow.submit(() -> {
+                await(release);
+                return null;
+            });
+            slow.submit(() -> null);
+
+            assertEquals("fast", fast.submit(() -> "fast").get(5, TimeUnit.SECONDS));
+            release.countDown();
+        }
+    }
+
+    @Test
+    void submitOrRunRunsOnTheCallerWhenFull() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        try (Bulkhead bulkhead = new Bulkhead("test", 1, 1, registry)) {
+            CountDownLatch release = new CountDownLatch(1);
+            bulkhead.submit(() -> {
+                await(release);
+                return null;
+            });
+            bulkhead.submit(() -> null);
+
+            Thread caller = Thread.currentThread();
+            CompletableFuture<Boolean> overflow = bulkhead.submitOrRun(() -> Thread.currentThread() == caller);
+
+            assertTrue(overflow.isDone());
+            assertTrue(overflow.get());
+            assertEquals(0.0, registry.get("ml.bulkhead.rejected").counter().count());
+            release.countDown();
+        }
+    }
+
+    @Test
+    void propagatesTaskException() {
+        try (Bulkhead bulkhead = new Bulkhead("test", 1, 1, new SimpleMeterRegistry())) {
+            CompletableFuture<Object> failed = bulkhead.submit(() -> {
+                throw new IllegalStateException("boom");
+            });
+            assertInstanceOf(IllegalStateException.class, assertThrows(CompletionException.class, failed::join).getCause());
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
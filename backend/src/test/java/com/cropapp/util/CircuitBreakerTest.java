@@ -0,0 +1,74 @@
+package com.cropapp.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+
+    @Test
+    void opensOnFailureRateAndFailsFast() {
+        CircuitBreaker breaker = breaker(Duration.ofMinutes(1));
+        for (int i = 0; i < 4; i++) {
+            assertThrows(IllegalStateException.class, () -> breaker.execute(CircuitBreakerTest::fail));
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        AtomicInteger calls = new AtomicInteger();
+        CircuitBreaker.CallNotPermittedException rejected = assertThrows(CircuitBreaker.CallNotPermittedException.class,
+                () -> breaker.execute(calls::incrementAndGet));
+        assertEquals(0, calls.get());
+        assertTrue(rejected.getRetryAfter().toSeconds() > 0);
+    }
+
+    @Test
+    void staysClosedBelowMinimumCalls() {
+        CircuitBreaker breaker = breaker(Duration.ofMinutes(1));
+        for (int i = 0; i < 3; i++) {
+            assertThrows(IllegalStateException.class, () -> breaker.execute(CircuitBreakerTest::fail));
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void halfOpenProbesCloseTheBreaker() throws InterruptedException {
+        CircuitBreaker breaker = breaker(Duration.ofMillis(50));
+        for (int i = 0; i < 4; i++) {
+            assertThrows(IllegalStateException.class, () -> breaker.execute(CircuitBreakerTest::fail));
+        }
+        Thread.sleep(80);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        assertEquals("ok", breaker.execute(() -> "ok"));
+        assertEquals("ok", breaker.execute(() -> "ok"));
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void fallbackHandlesRejectionButNotIgnoredErrors() {
+        CircuitBreaker breaker = breaker(Duration.ofMinutes(1));
+        assertThrows(IllegalArgumentException.class,
+                () -> breaker.execute(() -> { throw new IllegalArgumentException("bad input"); }, ex -> "fallback"));
+        for (int i = 0; i < 4; i++) {
+            breaker.execute(CircuitBreakerTest::fail, ex -> "fallback");
+        }
+
+        assertEquals("fallback", breaker.execute(() -> "live", ex -> "fallback"));
+    }
+
+    private static CircuitBreaker breaker(Duration openDuration) {
+        // Window of 4, opens at 50% failures, 2 probes; IllegalArgumentException is a caller error
+        return new CircuitBreaker("test", 4, 4, 50, 100, Duration.ofMinutes(1), openDuration, 2,
+                ex -> !(ex instanceof IllegalArgumentException), new SimpleMeterRegistry());
+    }
+
+    private static String fail() {
+        throw new IllegalStateException("upstream down");
+    }
+}
@@ -0,0 +1,75 @@
+package com.cropapp.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InFlightWindowTest {
+
+    @Test
+    void neverRunsMoreThanTheWindowAndDeliversEveryResult() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            InFlightWindow<Long> window = new InFlightWindow<>(3);
+            AtomicInteger running = new AtomicInteger();
+            AtomicInteger maxRunning = new AtomicInteger();
+            List<Long> delivered = new ArrayList<>();
+            InFlightWindow.Sink<Long> sink = (index, result, failure) -> {
+                assertNull(failure);
+                assertEquals(index * 2, result);
+                delivered.add(index);
+            };
+
+            for (long i = 0; i < 50; i++) {
+                long index = i;
+                window.submit(index, () -> CompletableFuture.supplyAsync(() -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    sleep(1);
+                    running.decrementAndGet();
+                    return index * 2;
+                }, executor), sink);
+            }
+            window.finish(sink);
+
+            assertEquals(50, delivered.size());
+            assertEquals(50, delivered.stream().distinct().count());
+            assertTrue(maxRunning.get() <= 3, "ran " + maxRunning.get() + " at once");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void passesFailuresToTheSinkUnwrapped() throws Exception {
+        InFlightWindow<String> window = new InFlightWindow<>(2);
+        List<Throwable> failures = new ArrayList<>();
+        InFlightWindow.Sink<String> sink = (index, result, failure) -> failures.add(failure);
+
+        window.submit(1, () -> CompletableFuture.supplyAsync(() -> {
+            throw new IllegalStateException("model down");
+        }), sink);
+        window.submit(2, () -> {
+            throw new IllegalArgumentException("bad row");
+        }, sink);
+        window.finish(sink);
+
+        assertEquals(2, failures.size());
+        assertTrue(failures.stream().anyMatch(IllegalStateException.class::isInstance));
+        assertTrue(failures.stream().anyMatch(IllegalArgumentException.class::isInstance));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.cropapp.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtAuthenticationCacheTest {
+
+    private final JwtAuthenticationCache cache = new JwtAuthenticationCache(100, new SimpleMeterRegistry());
+
+    @Test
+    void servesTokenUntilItExpires() throws InterruptedException {
+        AuthenticatedUser user = user(1L);
+        cache.put("token", user, new Date(System.currentTimeMillis() + 100));
+
+        assertSame(user, cache.get("token"));
+        Thread.sleep(200);
+        assertNull(cache.get("token"));
+    }
+
+    @Test
+    void skipsTokensWithoutExpiry() {
+        cache.put("token", user(1L), null);
+
+        assertNull(cache.get("token"));
+    }
+
+    @Test
+    void invalidatesEveryTokenOfAUser() {
+        Date expiry = new Date(System.currentTimeMillis() + 60_000);
+        cache.put("a", user(1L), expiry);
+        cache.put("b", user(1L), expiry);
+        cache.put("c", user(2L), expiry);
+
+        cache.invalidateUser(1L);
+
+        assertNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+    }
+
+    @Test
+    void jwtUtilParsesOnceAndRejectsTampering() {
+        JwtUtil jwtUtil = new JwtUtil("mySecretKeyForJWT2025ThisIsAVeryLongSecretKeyThatIs256BitsOrMore");
+        String token = jwtUtil.generateToken(7L, "farmer@example.com");
+
+        assertEquals("farmer@example.com", jwtUtil.parseVerified(token).getSubject());
+        assertEquals(7, jwtUtil.parseVerified(token).get(JwtUtil.USER_ID_CLAIM, Number.class).intValue());
+        assertNull(jwtUtil.parseVerified(token.substring(0, token.length() - 2) + "xx"));
+        assertNull(jwtUtil.parseVerified("not-a-token"));
+    }
+
+    private static AuthenticatedUser user(Long id) {
+        return new AuthenticatedUser(id, "user" + id + "@example.com", "");
+    }
+}
@@ -0,0 +1,89 @@
+package com.cropapp.util;
+
+import com.cropapp.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtFilterTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final JwtUtil jwtUtil = new JwtUtil("mySecretKeyForJWT2025ThisIsAVeryLongSecretKeyThatIs256BitsOrMore");
+    private final JwtAuthenticationCache cache = new JwtAuthenticationCache(100, registry);
+
+    // id -> email of the accounts that exist
+    private final Map<Long, String> users = new ConcurrentHashMap<>();
+    private final AtomicInteger lookups = new AtomicInteger();
+    private final JwtFilter filter = new JwtFilter(jwtUtil,
+            new CustomUserDetailsService(userRepository(), registry), cache, registry);
+
+    @AfterEach
+    void clearContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void checksTheAccountOncePerToken() throws Exception {
+        users.put(7L, "farmer@example.com");
+        String token = jwtUtil.generateToken(7L, "farmer@example.com");
+
+        assertEquals(7L, ((AuthenticatedUser) authenticate(token).getPrincipal()).getId());
+        assertNotNull(authenticate(token));
+
+        assertEquals(1, lookups.get());
+    }
+
+    @Test
+    void deletedUserLosesAccessOnceTheCacheIsDropped() throws Exception {
+        users.put(7L, "farmer@example.com");
+        String token = jwtUtil.generateToken(7L, "farmer@example.com");
+        assertNotNull(authenticate(token));
+
+        // What UserChangeListener does when the row is removed
+        users.remove(7L);
+        cache.invalidateUser(7L);
+
+        assertNull(authenticate(token));
+        assertNull(cache.get(token));
+    }
+
+    @Test
+    void renamedUserLosesTokensIssuedForTheOldEmail() throws Exception {
+        users.put(7L, "renamed@example.com");
+
+        assertNull(authenticate(jwtUtil.generateToken(7L, "farmer@example.com")));
+        assertNotNull(authenticate(jwtUtil.generateToken(7L, "renamed@example.com")));
+    }
+
+    private Authentication authenticate(String token) throws Exception {
+        SecurityContextHolder.clearContext();
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/history");
+        request.addHeader("Authorization", "Bearer " + token);
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+        return SecurityContextHolder.getContext().getAuthentication();
+    }
+
+    // Only the existence check is needed here
+    private UserRepository userRepository() {
+        return (UserRepository) Proxy.newProxyInstance(UserRepository.class.getClassLoader(),
+                new Class<?>[] {UserRepository.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("existsByIdAndEmail")) {
+                        lookups.incrementAndGet();
+                        return args[1].equals(users.get((Long) args[0]));
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
@@ -0,0 +1,45 @@
+package com.cropapp.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LimitedInputStreamTest {
+
+    @Test
+    void readsUpToTheLimit() throws IOException {
+        try (InputStream in = new LimitedInputStream(new ByteArrayInputStream(new byte[100]), 100)) {
+            assertEquals(100, in.readAllBytes().length);
+        }
+    }
+
+    @Test
+    void failsAsSoonAsTheLimitIsPassed() {
+        CountingStream source = new CountingStream(10_000_000);
+        InputStream in = new LimitedInputStream(source, 1_000);
+
+        LimitedInputStream.LimitExceededException ex =
+                assertThrows(LimitedInputStream.LimitExceededException.class, in::readAllBytes);
+        assertEquals(1_000, ex.getMaxBytes());
+        assertTrue(source.served < 100_000, "read " + source.served + " bytes");
+    }
+
+    private static class CountingStream extends InputStream {
+
+        private final long size;
+        long served;
+
+        CountingStream(long size) {
+            this.size = size;
+        }
+
+        @Override
+        public int read() {
+            return served < size ? (int) (served++ & 0x7f) : -1;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.cropapp.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MicroBatcherTest {
+
+    @Test
+    void groupsQueuedItemsAndFansResultsBack() throws Exception {
+        List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        try (MicroBatcher<Integer, String> batcher = new MicroBatcher<>("test", items -> {
+            batchSizes.add(items.size());
+            return items.stream().map(i -> "r" + i).toList();
+        }, 10, 200, 100, 1, new SimpleMeterRegistry())) {
+
+            List<CompletableFuture<String>> results = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                results.add(batcher.submit(i));
+            }
+
+            for (int i = 0; i < 10; i++) {
+                assertEquals("r" + i, results.get(i).get(5, TimeUnit.SECONDS));
+            }
+            // 10 items submitted well inside one linger window -> far fewer calls than items
+            assertTrue(batchSizes.size() < 10, "expected batching, got " + batchSizes);
+            assertEquals(10, batchSizes.stream().mapToInt(Integer::intValue).sum());
+        }
+    }
+
+    @Test
+    void batchFailureFailsEveryCallerInIt() {
+        try (MicroBatcher<Integer, String> batcher = new MicroBatcher<>("test", items -> {
+            throw new IllegalStateException("model server down");
+        }, 4, 1, 10, 1, new SimpleMeterRegistry())) {
+
+            ExecutionException ex = assertThrows(ExecutionException.class,
+                    () -> batcher.submit(1).get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, ex.getCause());
+        }
+    }
+
+    @Test
+    void rejectsOnceClosed() {
+        MicroBatcher<Integer, String> batcher = new MicroBatcher<>("test", items -> List.of(), 1, 1, 1, 1, new SimpleMeterRegistry());
+        batcher.close();
+
+        ExecutionException ex = assertThrows(ExecutionException.class,
+                () -> batcher.submit(1).get(5, TimeUnit.SECONDS));
+        assertInstanceOf(RejectedExecutionException.class, ex.getCause());
+    }
+}
@@ -0,0 +1,76 @@
+package com.cropapp.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RandomForestModelTest {
+
+    @Test
+    void averagesLeafProbabilitiesAcrossTrees() throws IOException {
+        RandomForestModel model = RandomForestModel.read(new ByteArrayInputStream(twoTreeForest()));
+        double[] proba = new double[3];
+
+        // Tree 1: x0 <= 50 -> leaf [1, 0, 0]; tree 2: x1 <= 6.5 -> leaf [0, 0.5, 0.5]
+        model.predictProba(new double[]{10, 6.0}, proba);
+        assertArrayEquals(new double[]{0.5, 0.25, 0.25}, proba, 1e-12);
+
+        // Tree 1 right -> [0, 1, 0]; tree 2 right -> [0, 0, 1]
+        model.predictProba(new double[]{90, 7.0}, proba);
+        assertArrayEquals(new double[]{0.0, 0.5, 0.5}, proba, 1e-12);
+
+        assertEquals(3, model.classCount());
+        assertEquals("maize", model.className(1));
+    }
+
+    @Test
+    void comparesInputsAsFloat32LikeSklearn() throws IOException {
+        RandomForestModel model = RandomForestModel.read(new ByteArrayInputStream(twoTreeForest()));
+        double[] proba = new double[3];
+
+        // 6.5000001 rounds to 6.5f, so it must still go left at threshold 6.5
+        model.predictProba(new double[]{10, 6.5000001}, proba);
+        assertEquals(0.25, proba[1], 1e-12);
+    }
+
+    @Test
+    void rejectsForeignFiles() {
+        assertThrows(IOException.class,
+                () -> RandomForestModel.read(new ByteArrayInputStream("not a forest".getBytes(StandardCharsets.US_ASCII))));
+    }
+
+    private static byte[] twoTreeForest() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0x43524631);
+        out.writeInt(2);  // features
+        out.writeInt(3);  // classes
+        out.writeInt(2);  // trees
+        for (String name : new String[]{"rice", "maize", "jute"}) {
+            out.writeShort(name.length());
+            out.writeBytes(name);
+        }
+        writeStump(out, 0, 50.0, new double[]{1, 0, 0}, new double[]{0, 1, 0});
+        writeStump(out, 1, 6.5, new double[]{0, 0.5, 0.5}, new double[]{0, 0, 1});
+        return bytes.toByteArray();
+    }
+
+    // Root split plus two leaves, in the export_forest.py layout
+    private static void writeStump(DataOutputStream out, int feature, double threshold,
+                                   double[] leftLeaf, double[] rightLeaf) throws IOException {
+        out.writeInt(3);  // nodes
+        out.writeInt(2);  // leaves
+        for (int left : new int[]{1, ~0, ~1}) out.writeInt(left);
+        for (int right : new int[]{2, -1, -1}) out.writeInt(right);
+        for (int f : new int[]{feature, 0, 0}) out.writeInt(f);
+        for (double t : new double[]{threshold, -2, -2}) out.writeDouble(t);
+        for (double v : leftLeaf) out.writeDouble(v);
+        for (double v : rightLeaf) out.writeDouble(v);
+    }
+}
@@ -0,0 +1,53 @@
+package com.cropapp.util;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplicaBalancerTest {
+
+    @Test
+    void prefersLessBusyReplica() {
+        ReplicaBalancer balancer = new ReplicaBalancer(List.of("http://a/", "http://b"), new SimpleMeterRegistry());
+        ReplicaBalancer.Replica busy = balancer.acquire(null);
+
+        for (int i = 0; i < 10; i++) {
+            ReplicaBalancer.Replica next = balancer.acquire(null);
+            assertNotSame(busy, next);
+            next.release();
+        }
+        assertFalse(busy.baseUrl().endsWith("/"));
+    }
+
+    @Test
+    void excludeSkipsReplica() {
+        ReplicaBalancer balancer = new ReplicaBalancer(List.of("http://a", "http://b", "http://c"), new SimpleMeterRegistry());
+        ReplicaBalancer.Replica first = balancer.acquire(null);
+
+        for (int i = 0; i < 50; i++) {
+            ReplicaBalancer.Replica other = balancer.acquire(first);
+            assertNotSame(first, other);
+            other.release();
+        }
+        first.release();
+        assertEquals(0, first.outstanding());
+    }
+
+    @Test
+    void gaugesDoNotPublishReplicaUrls() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ReplicaBalancer balancer = new ReplicaBalancer(List.of("http://ml-a.internal:5000", "http://ml-b.internal:5000"), registry);
+        ReplicaBalancer.Replica replica = balancer.acquire(null);
+
+        List<String> tags = registry.find("ml.api.replica.outstanding").gauges().stream()
+                .map(gauge -> gauge.getId().getTag("replica")).sorted().toList();
+        assertEquals(List.of("0", "1"), tags);
+        assertEquals(1.0, registry.find("ml.api.replica.outstanding").gauges().stream()
+                .mapToDouble(Gauge::value).sum());
+        replica.release();
+    }
+}
@@ -0,0 +1,56 @@
+package com.cropapp.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final SingleFlight<String, String> flights = new SingleFlight<>("test", registry);
+
+    @Test
+    void concurrentCallersShareOneExecution() throws Exception {
+        AtomicInteger executions = new AtomicInteger();
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(flights.submit("same", () -> {
+                executions.incrementAndGet();
+                return upstream;
+            }));
+        }
+        assertEquals(7.0, registry.counter("ml.coalescer.calls", "name", "test", "role", "follower").count());
+        assertEquals(1.0, inFlight());
+
+        upstream.complete("rice");
+
+        for (CompletableFuture<String> result : results) {
+            assertEquals("rice", result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, executions.get());
+        assertEquals(0.0, inFlight());
+    }
+
+    @Test
+    void failuresPropagateAndAreNotRemembered() {
+        IllegalStateException boom = new IllegalStateException("upstream down");
+
+        CompletableFuture<String> failed = flights.submit("key", () -> { throw boom; });
+        assertSame(boom, assertThrows(CompletionException.class, failed::join).getCause());
+        assertEquals("ok", flights.submit("key", () -> CompletableFuture.completedFuture("ok")).join());
+    }
+
+    private double inFlight() {
+        return registry.get("ml.coalescer.in_flight").tag("name", "test").gauge().value();
+    }
+}
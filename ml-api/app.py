@@ -6,6 +6,7 @@ from tensorflow.keras import layers, models
 from PIL import Image
 import io
 import json
+import hashlib
 
 app = Flask(__name__)
 
@@ -50,7 +51,19 @@ disease_model = models.Sequential([
 # Note: We use .load_weights instead of .load_model
 disease_model.load_weights('plant_disease_model.h5')
 
-print("All models loaded successfully.")
+# D. Fingerprint the class list + weights. The backend caches disease results
+# per version, so a retrained model or a new class list invalidates them.
+def compute_model_version():
+    digest = hashlib.sha256()
+    for path in ('class_names.json', 'plant_disease_model.h5'):
+        with open(path, 'rb') as f:
+            for chunk in iter(lambda: f.read(1 << 20), b''):
+                digest.update(chunk)
+    return digest.hexdigest()[:16]
+
+MODEL_VERSION = compute_model_version()
+
+print(f"All models loaded successfully. (disease model version {MODEL_VERSION})")
 
 
 # ==========================================
@@ -70,6 +83,40 @@ def preprocess_image(image_bytes):
     img_array = np.expand_dims(img_array, axis=0)
     return img_array
 
+# The backend can do the decode + resize itself (ml.disease.preprocess=tensor)
+# and send the 224x224 RGB pixels as raw bytes, row by row, with this type.
+TENSOR_CONTENT_TYPE = 'application/x-rgb-tensor'
+
+def preprocess_upload(file):
+    data = file.read()
+    if file.mimetype != TENSOR_CONTENT_TYPE:
+        return preprocess_image(data)
+    if len(data) != IMG_SIZE * IMG_SIZE * 3:
+        raise ValueError(f"Expected {IMG_SIZE * IMG_SIZE * 3} bytes of RGB, got {len(data)}")
+    img_array = np.frombuffer(data, dtype=np.uint8).reshape(1, IMG_SIZE, IMG_SIZE, 3)
+    return img_array.astype('float32')
+
+
+# ==========================================
+# HELPERS: Crop features & Top-3 formatting
+# ==========================================
+CROP_FEATURES = ['N', 'P', 'K', 'temperature', 'humidity', 'ph', 'rainfall']
+
+def extract_crop_features(data):
+    return [data[name] for name in CROP_FEATURES]
+
+def format_top_crops(probabilities):
+    # The model stores the class names (e.g. 'rice', 'maize') in probability order
+    crop_scores = list(zip(crop_model.classes_, probabilities))
+    
+    # Sort by Score (Highest first) and keep the Top 3
+    top_3 = sorted(crop_scores, key=lambda x: x[1], reverse=True)[:3]
+    
+    return [{
+        "crop": crop,
+        "confidence": f"{score * 100:.2f}%" # Convert 0.95 to "95.00%"
+    } for crop, score in top_3]
+
 
 # ==========================================
 # ROUTE 1: Crop Recommendation
@@ -78,40 +125,27 @@ def preprocess_image(image_bytes):
 def predict_crop():
     data = request.get_json()
     
-    # 1. Extract features
-    features = [
-        data['N'], data['P'], data['K'], 
-        data['temperature'], data['humidity'], 
-        data['ph'], data['rainfall']
-    ]
-    
-    # 2. Get Probabilities instead of single prediction
     # predict_proba returns an array like [0.1, 0.0, 0.8, ...] for all classes
-    probabilities = crop_model.predict_proba([np.array(features)])[0]
+    probabilities = crop_model.predict_proba([np.array(extract_crop_features(data))])[0]
     
-    # 3. Get the class names (e.g., 'rice', 'maize') that correspond to probabilities
-    # The model stores these automatically
-    class_names = crop_model.classes_
-    
-    # 4. Create a list of (Crop, Score) tuples
-    # e.g., [('rice', 0.05), ('maize', 0.90), ...]
-    crop_scores = list(zip(class_names, probabilities))
-    
-    # 5. Sort them by Score (Highest first)
-    sorted_crops = sorted(crop_scores, key=lambda x: x[1], reverse=True)
-    
-    # 6. Take Top 3
-    top_3 = sorted_crops[:3]
+    return jsonify({'top_crops': format_top_crops(probabilities)})
+
+# ==========================================
+# ROUTE 1b: Crop Recommendation (batch)
+# ==========================================
+# Body is a JSON array of the same objects /predict accepts. One
+# predict_proba call scores the whole batch, which is far cheaper per item
+# than one call per request.
+@app.route('/predict_batch', methods=['POST'])
+def predict_crop_batch():
+    data = request.get_json()
+    if not isinstance(data, list) or len(data) == 0:
+        return jsonify({'error': 'Expected a non-empty JSON array'}), 400
     
-    # 7. Format for JSON response
-    result = []
-    for crop, score in top_3:
-        result.append({
-            "crop": crop,
-            "confidence": f"{score * 100:.2f}%" # Convert 0.95 to "95.00%"
-        })
+    features = np.array([extract_crop_features(item) for item in data])
+    probabilities = crop_model.predict_proba(features)
     
-    return jsonify({'top_crops': result})
+    return jsonify({'results': [{'top_crops': format_top_crops(row)} for row in probabilities]})
 
 # ==========================================
 # ROUTE 2: Disease Detection
@@ -126,21 +160,73 @@ def predict_disease():
     if file.filename == '':
         return jsonify({'error': 'No selected file'}), 400
     
+    # A file that can't be decoded is a bad request, not a broken model server:
+    # the backend's circuit breaker only counts 5xx answers as outages
+    try:
+        processed_img = preprocess_upload(file)
+    except Exception as e:
+        return jsonify({'error': str(e)}), 422
+    
     try:
-        processed_img = preprocess_image(file.read())
         predictions = disease_model.predict(processed_img)
         
         predicted_index = np.argmax(predictions[0])
         confidence = float(np.max(predictions[0]))
         result_class = disease_class_names[predicted_index]
         
-        return jsonify({
+        response = jsonify({
             'disease': result_class,
             'confidence': f"{confidence * 100:.2f}%"
         })
+        response.headers['X-Model-Version'] = MODEL_VERSION
+        return response
         
     except Exception as e:
         return jsonify({'error': str(e)}), 500
 
+# ==========================================
+# ROUTE 2b: Disease Detection (batch)
+# ==========================================
+# Multipart upload with one or more 'files' parts. All decodable images go
+# through the network in a single predict call; a bad image only fails
+# its own slot in 'results'.
+@app.route('/predict_disease_batch', methods=['POST'])
+def predict_disease_batch():
+    files = request.files.getlist('files')
+    if len(files) == 0:
+        return jsonify({'error': 'No file part'}), 400
+    
+    results = [None] * len(files)
+    images = []
+    positions = []
+    for i, file in enumerate(files):
+        try:
+            images.append(preprocess_upload(file))
+            positions.append(i)
+        except Exception as e:
+            results[i] = {'error': str(e)}
+    
+    if images:
+        predictions = disease_model.predict(np.concatenate(images, axis=0))
+        for i, prediction in zip(positions, predictions):
+            results[i] = {
+                'disease': disease_class_names[int(np.argmax(prediction))],
+                'confidence': f"{float(np.max(prediction)) * 100:.2f}%"
+            }
+    
+    response = jsonify({'results': results})
+    response.headers['X-Model-Version'] = MODEL_VERSION
+    return response
+
+# ==========================================
+# ROUTE 3: Model Info (used by the backend to invalidate its result cache)
+# ==========================================
+@app.route('/model_info', methods=['GET'])
+def model_info():
+    return jsonify({
+        'version': MODEL_VERSION,
+        'num_classes': num_classes
+    })
+
 if __name__ == '__main__':
     app.run(port=5000, debug=True)
\ No newline at end of file
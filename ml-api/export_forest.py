@@ -0,0 +1,87 @@
+import pickle
+import struct
+import sys
+
+import numpy as np
+import pandas as pd
+
+# ==========================================
+# Export crop_model.pkl for the backend's in-JVM engine
+# ==========================================
+# Writes the RandomForest as flat arrays (big-endian, read with Java's
+# DataInputStream):
+#
+#   "CRF1"
+#   int nFeatures, int nClasses, int nTrees
+#   nClasses x (ushort byteLength, utf-8 class name)
+#   per tree:
+#     int nodeCount, int leafCount
+#     int[nodeCount]    left child, or ~leafIndex for a leaf
+#     int[nodeCount]    right child
+#     int[nodeCount]    feature index
+#     double[nodeCount] threshold (go left when x <= threshold)
+#     double[leafCount * nClasses] class probabilities of each leaf
+#
+# It also writes crop_forest_parity.csv: every row of Crop_recommendation.csv
+# with the probabilities sklearn's predict_proba gives for it. The backend's
+# parity test replays those rows through the Java engine.
+#
+# Usage: python export_forest.py [crop_model.pkl] [crop_forest.bin]
+
+FEATURES = ['N', 'P', 'K', 'temperature', 'humidity', 'ph', 'rainfall']
+
+
+def export_forest(model, path):
+    classes = [str(c) for c in model.classes_]
+    with open(path, 'wb') as out:
+        out.write(b'CRF1')
+        out.write(struct.pack('>iii', model.n_features_in_, len(classes), len(model.estimators_)))
+        for name in classes:
+            encoded = name.encode('utf-8')
+            out.write(struct.pack('>H', len(encoded)))
+            out.write(encoded)
+
+        for estimator in model.estimators_:
+            tree = estimator.tree_
+            is_leaf = tree.children_left == -1
+            leaves = np.flatnonzero(is_leaf)
+
+            leaf_index = np.full(tree.node_count, -1, dtype=np.int64)
+            leaf_index[leaves] = np.arange(len(leaves))
+            left = np.where(is_leaf, ~leaf_index, tree.children_left)
+            feature = np.where(is_leaf, 0, tree.feature)
+
+            # Normalise counts to probabilities (newer sklearn already stores fractions)
+            values = tree.value[leaves, 0, :].astype(np.float64)
+            values = values / values.sum(axis=1, keepdims=True)
+
+            out.write(struct.pack('>ii', tree.node_count, len(leaves)))
+            out.write(left.astype('>i4').tobytes())
+            out.write(tree.children_right.astype('>i4').tobytes())
+            out.write(feature.astype('>i4').tobytes())
+            out.write(tree.threshold.astype('>f8').tobytes())
+            out.write(values.astype('>f8').tobytes())
+
+
+def export_parity(model, csv_path, out_path):
+    df = pd.read_csv(csv_path)
+    X = df[FEATURES]
+    probabilities = model.predict_proba(X)
+
+    parity = X.copy()
+    for i, name in enumerate(model.classes_):
+        parity[f'p_{name}'] = probabilities[:, i]
+    parity.to_csv(out_path, index=False, float_format='%.17g')
+
+
+if __name__ == '__main__':
+    model_path = sys.argv[1] if len(sys.argv) > 1 else 'crop_model.pkl'
+    out_path = sys.argv[2] if len(sys.argv) > 2 else 'crop_forest.bin'
+
+    with open(model_path, 'rb') as model_file:
+        crop_model = pickle.load(model_file)
+
+    export_forest(crop_model, out_path)
+    export_parity(crop_model, 'Crop_recommendation.csv', 'crop_forest_parity.csv')
+
+    print(f"Exported {len(crop_model.estimators_)} trees to {out_path}")
@@ -0,0 +1,32 @@
+import sys
+
+import numpy as np
+from PIL import Image
+
+# ==========================================
+# Reference output for the backend's image preprocessing
+# ==========================================
+# Runs an image through the same steps as preprocess_image in app.py and
+# writes the 224x224 RGB pixels as raw bytes, row by row. The backend's
+# fidelity test compares DiseaseImagePreprocessor against this file.
+#
+# Usage: python export_preprocess_reference.py [test_leaf.jpg] [test_leaf_224.rgb]
+
+IMG_SIZE = 224
+
+
+def reference_pixels(path):
+    img = Image.open(path)
+    if img.mode != "RGB":
+        img = img.convert("RGB")
+    img = img.resize((IMG_SIZE, IMG_SIZE))
+    return np.asarray(img, dtype=np.uint8)
+
+
+if __name__ == '__main__':
+    image_path = sys.argv[1] if len(sys.argv) > 1 else 'test_leaf.jpg'
+    out_path = sys.argv[2] if len(sys.argv) > 2 else 'test_leaf_224.rgb'
+
+    with open(out_path, 'wb') as out:
+        out.write(reference_pixels(image_path).tobytes())
+    print(f"Wrote {out_path}")